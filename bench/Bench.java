@@ -0,0 +1,409 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* =================================================================== //
+     BENCHMARKS. EACH ONE DRIVES PART OF THE RUNTIME DIRECTLY FROM JAVA,
+     SO THE PARSER AND THE INTERPRETER'S DISPATCH DO NOT HIDE WHAT IS
+     BEING MEASURED, AND PRINTS THE BEST OF SEVERAL TIMED ROUNDS AFTER A
+     WARM-UP. COMPILED WITH THE SOURCES:
+
+         javac --add-modules jdk.incubator.vector -d bin src/*.java bench/*.java
+         java --add-modules jdk.incubator.vector -cp bin Bench NAME
+
+         lexer      TOKENIZING GENERATED GEOMETRY SCRIPTS OF 280KB TO 9MB OF
+                    POINT LITERALS, SCANNING ALONE AND BUILDING THE TOKEN
+                    LIST; STEADY THROUGHPUT ACROSS SIZES MEANS LEXING IS
+                    LINEAR
+         parse      PARSING ARITHMETIC, COMPARISON AND LOGICAL EXPRESSIONS
+                    OF 125K TO 1M TOKENS; FLAT NANOSECONDS PER TOKEN MEANS
+                    PARSING IS LINEAR. RUN IT WITH -Xms2g -Xmx2g, OR
+                    COPYING THE LIVE TREE IN A SMALL YOUNG GENERATION
+                    INFLATES THE LARGEST SIZES
+         dispatch   TREE-WALKING 60K STATEMENTS OF ARITHMETIC, ASSIGNMENTS
+                    OR ARRAY LITERALS, PER RUN AND PER NODE. ArrayLiteral
+                    WAS LAST IN THE OLD instanceof CHAIN; NOW EACH KIND
+                    COSTS ONLY ITS OWN WORK, NOT ITS PLACE IN THE CHAIN
+         alloc      BYTES ALLOCATED PER ELEMENT BY SCRIPTS THAT map AND
+                    filter 200K ELEMENTS WITH FUNCTIONS FULL OF SMALL INT,
+                    BOOL AND null VALUES. RUN IT AGAIN WITH
+                    -Dtwofive.intcache.high=127 TO SEE WHAT THE LARGER
+                    INT CACHE SAVES
+         kernels    ELEMENTWISE ARITHMETIC AND REDUCTIONS ON 1M ELEMENTS:
+                    INT AND FLOAT HEAP ARRAYS AND AN OFF-HEAP FLOAT ARRAY.
+                    WITH -Dtwofive.simd=false THE SAME KERNELS RUN AS
+                    PLAIN LOOPS, SO RUNNING IT BOTH WAYS SHOWS WHAT SIMD
+                    BUYS
+         parallel   pmap, pfilter, preduce AND psort OVER 200K ELEMENTS
+                    WITH SCRIPT FUNCTIONS, ON -Dtwofive.parallelism CORES
+         hull       hull OF 1M POINTS DRAWN UNIFORMLY IN A SQUARE, ON A
+                    CIRCLE (EVERY POINT A VERTEX) AND IN GAUSSIAN
+                    CLUSTERS. -Dtwofive.hull.threshold=2147483647 TIMES
+                    THE SEQUENTIAL PATH FOR COMPARISON
+         kdtree     BULK-LOADING A kdtree OF 1M UNIFORM 2D POINTS, THEN
+                    THROUGHPUT OF 100K nearest (k = 1 AND 10), within,
+                    inside AND BATCHED pnearest QUERIES
+
+     Bench scaling NAME [CORES] RUNS BENCHMARK NAME IN A NEW JVM WITH
+     1, 2, 4, ... UP TO CORES WORKER THREADS (DEFAULT: EVERY CORE), SO
+     ITS TIMINGS CAN BE READ AS A SPEEDUP CURVE.
+// =================================================================== */
+public class Bench {
+    //Results are stored here so the JIT cannot drop the work that produced them
+    static volatile Object sink;
+
+    interface Body {
+        Object run();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String name = args.length > 0 ? args[0] : "";
+        switch (name) {
+            case "lexer":
+                lexer();
+                break;
+            case "parse":
+                parse();
+                break;
+            case "dispatch":
+                dispatch();
+                break;
+            case "alloc":
+                alloc();
+                break;
+            case "kernels":
+                kernels();
+                break;
+            case "parallel":
+                parallel();
+                break;
+            case "hull":
+                hull();
+                break;
+            case "kdtree":
+                kdtree();
+                break;
+            case "scaling":
+                if (args.length < 2) {
+                    usage();
+                }
+                scaling(args[1], args.length > 2 ? Integer.parseInt(args[2])
+                        : Runtime.getRuntime().availableProcessors());
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp bin Bench lexer|parse|dispatch|alloc|kernels|parallel|hull|kdtree");
+        System.err.println("       java -cp bin Bench scaling NAME [CORES]");
+        System.exit(1);
+    }
+
+    //Microseconds per run: the fastest of 'rounds' batches of 'batch' runs, after 'warmup' untimed ones
+    static double time(int warmup, int rounds, int batch, Body body) {
+        for (int i = 0; i < warmup; i++) {
+            sink = body.run();
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                sink = body.run();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / (double) batch);
+        }
+        return best / 1e3;
+    }
+
+    /* =================================================================== //
+                                     LEXER
+    // =================================================================== */
+    private static void lexer() {
+        System.out.println("Lexer on point-literal scripts, MB/s: scan alone, and tokenize building the token list:");
+        for (int points = 1 << 14; points <= 1 << 19; points <<= 1) {
+            String source = pointsSource(points);
+            int tokens = new Lexer().tokenize(source).size();
+            double scan = time(3, 5, 1, () -> {
+                Lexer lexer = new Lexer(source);
+                int count = 0;
+                while (lexer.scan() != TokenType.EOF) {
+                    count++;
+                }
+                return count;
+            });
+            double tokenize = time(3, 5, 1, () -> new Lexer().tokenize(source));
+            System.out.printf("    %6d KB %8d tokens %8.1f %8.1f%n", source.length() >> 10, tokens,
+                    source.length() / scan, source.length() / tokenize);
+        }
+    }
+
+    //A script like the generated geometry inputs: one points call over a literal list of 2D points
+    private static String pointsSource(int points) {
+        Random random = new Random(3);
+        StringBuilder source = new StringBuilder("var pts = points([");
+        for (int i = 0; i < points; i++) {
+            source.append(i == 0 ? "[" : ", [").append(random.nextInt(100_000) / 100.0)
+                    .append(", ").append(random.nextInt(100_000) / 100.0).append(']');
+        }
+        return source.append("]);\nlen(pts)").toString();
+    }
+
+    /* =================================================================== //
+                                     PARSE
+    // =================================================================== */
+    private static void parse() {
+        String line = "x = (x + 17) * y - z / 3 ^ 2 > w % 5 || not (a == b) && -c < 2.5\n";
+        int lineTokens = new Lexer().tokenize(line).size() - 1;
+        //Warm up on the largest input, so the small ones are not timed while the parser still compiles
+        String largest = line.repeat(1_000_000 / lineTokens);
+        time(10, 0, 1, () -> new Parser().produceAST(largest));
+        System.out.println("Parser.produceAST on expression statements:");
+        for (int lines = 125_000 / lineTokens; lines * lineTokens <= 1_000_000; lines *= 2) {
+            String source = line.repeat(lines);
+            int tokens = lines * lineTokens;
+            double millis = time(2, 7, 1, () -> new Parser().produceAST(source)) / 1e3;
+            System.out.printf("    %8d tokens %8.1f ms %8.1f ns/token%n", tokens, millis, millis * 1e6 / tokens);
+        }
+    }
+
+    /* =================================================================== //
+                                   DISPATCH
+    // =================================================================== */
+    private static void dispatch() {
+        String declarations = "var x = 1; var y = 2; var z = 3; var v = null;\n";
+        System.out.println("Interpreter.evaluate over 60000 statements:");
+        dispatch("arithmetic", declarations + "(x * 3 + y) % 1000 - z / 2\n".repeat(60_000));
+        dispatch("assignment", declarations + "x = y\ny = z\nz = x\n".repeat(20_000));
+        dispatch("array", declarations + "[x, 1, 2.5, y, [z, null]]\n".repeat(60_000));
+    }
+
+    //Unoptimized, so every node in the source is evaluated on each run
+    private static void dispatch(String label, String source) {
+        Program program = new Parser().produceAST(source);
+        new Resolver().resolve(program);
+        int nodes = Optimizer.countNodes(program);
+        Interpreter interpreter = new Interpreter();
+        double micros = time(20, 7, 1, () -> interpreter.evaluate(program, new Environment()));
+        System.out.printf("    %-14s %8.2f ms %8d nodes %8.1f ns/node%n", label, micros / 1e3, nodes, micros * 1e3 / nodes);
+    }
+
+    /* =================================================================== //
+                                     ALLOC
+    // =================================================================== */
+    private static void alloc() {
+        int n = 200_000;
+        int cached = Math.max(127, Integer.getInteger("twofive.intcache.high", 1023));
+        System.out.println("Bytes allocated per element, ints cached up to " + cached + ":");
+        alloc(n, "literals", "sum(map(range(" + n + "), func(x) { var a = 7; var b = null; var c = true; a + x % 3 }))");
+        alloc(n, "small ints", "len(filter(map(range(" + n + "), func(x) { x % 1000 }), func(x) { x < 500 }))");
+        alloc(n, "bools", "len(filter(range(" + n + "), func(x) { not (x % 7 == 0) == (x > 3) }))");
+        alloc(n, "nulls", "len(filter(map(range(" + n + "), func(x) { null }), func(x) { x == null }))");
+    }
+
+    //Allocation on this thread, so the sequential builtins must do the work rather than a pool
+    private static void alloc(int n, String label, String source) {
+        Resolver resolver = new Resolver();
+        Environment builtins = new Environment();
+        new Builtins(new OffHeapArena()).install(resolver, builtins);
+        Program program = new Parser().produceAST(source);
+        resolver.resolve(program);
+        Interpreter interpreter = new Interpreter();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int runs = 10;
+        time(5, 0, 1, () -> interpreter.evaluate(program, new Environment(builtins)));
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < runs; i++) {
+            sink = interpreter.evaluate(program, new Environment(builtins));
+        }
+        long bytes = threads.getThreadAllocatedBytes(thread) - before;
+        System.out.printf("    %-14s %8.1f%n", label, bytes / (double) runs / n);
+    }
+
+    /* =================================================================== //
+                                    KERNELS
+    // =================================================================== */
+    private static void kernels() {
+        int n = 1 << 20;
+        float[] fa = new float[n];
+        float[] fb = new float[n];
+        int[] ia = new int[n];
+        int[] ib = new int[n];
+        for (int i = 0; i < n; i++) {
+            fa[i] = i * 0.5f;
+            fb[i] = 1 + i % 7;
+            ia[i] = i;
+            ib[i] = i % 11;
+        }
+        ArrayVal a = new ArrayVal(new FloatStorage(fa, n));
+        ArrayVal b = new ArrayVal(new FloatStorage(fb, n));
+        ArrayVal ints = new ArrayVal(new IntStorage(ia, n));
+        ArrayVal moreInts = new ArrayVal(new IntStorage(ib, n));
+        FloatVal two = new FloatVal(2);
+        try (OffHeapArena arena = new OffHeapArena()) {
+            ArrayVal offHeap = arena.allocate(OffHeapStorage.Layout.FLOAT, n);
+            System.out.println("Kernels on " + n + " elements, " + (ArrayKernels.SIMD ? "SIMD" : "scalar")
+                    + ", microseconds per call:");
+            kernel("float a + b", () -> ArrayKernels.apply(a, b, Operator.ADD));
+            kernel("float a * 2", () -> ArrayKernels.apply(a, two, Operator.MULTIPLY));
+            kernel("float a / b", () -> ArrayKernels.apply(a, b, Operator.DIVIDE));
+            kernel("int a + b", () -> ArrayKernels.apply(ints, moreInts, Operator.ADD));
+            kernel("sum(float)", () -> ArrayKernels.reduce(a, ArrayKernels.Reduction.SUM));
+            kernel("min(float)", () -> ArrayKernels.reduce(a, ArrayKernels.Reduction.MIN));
+            kernel("sum(int)", () -> ArrayKernels.reduce(ints, ArrayKernels.Reduction.SUM));
+            kernel("dot(float)", () -> ArrayKernels.dot(a, b));
+            kernel("sum(off-heap)", () -> ArrayKernels.reduce(offHeap, ArrayKernels.Reduction.SUM));
+        }
+    }
+
+    private static void kernel(String label, Body body) {
+        System.out.printf("    %-14s %8.0f%n", label, time(200, 7, 50, body));
+    }
+
+    /* =================================================================== //
+                                   PARALLEL
+    // =================================================================== */
+    private static void parallel() {
+        int n = 200_000;
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = (int) ((i * 7919L) % 100_003);
+        }
+        ArrayVal array = new ArrayVal(new IntStorage(values, n));
+        RuntimeVal work = function("func(x) { var a = x * 3 + 1; var b = a * a % 1000; b * b % 977 + a % 13 }");
+        RuntimeVal third = function("func(x) { x % 3 == 0 }");
+        RuntimeVal add = function("func(x, y) { x + y }");
+        RuntimeVal greater = function("func(x, y) { x > y }");
+        System.out.println("Parallel builtins on " + n + " elements, " + Parallel.PARALLELISM
+                + " worker(s), milliseconds per call:");
+        task("pmap", () -> Parallel.map(array, work));
+        task("pfilter", () -> Parallel.filter(array, third));
+        task("preduce", () -> Parallel.reduce(array, add, IntVal.of(0)));
+        task("psort", () -> Parallel.sort(array, null));
+        task("psort(less)", () -> Parallel.sort(array, greater));
+    }
+
+    //The value of a one-expression program, such as a func
+    private static RuntimeVal function(String source) {
+        Program program = new Parser().produceAST(source);
+        new Resolver().resolve(program);
+        return new Interpreter().evaluate(program, new Environment());
+    }
+
+    private static void task(String label, Body body) {
+        System.out.printf("    %-14s %8.1f%n", label, time(3, 5, 1, body) / 1e3);
+    }
+
+    //Runs the benchmark once per worker count, each in a JVM started with this one's options
+    private static void scaling(String name, int cores) throws IOException, InterruptedException {
+        List<String> options = new ArrayList<>(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        options.removeIf(option -> option.startsWith("-Dtwofive.parallelism="));
+        for (int workers = 1; ; workers = Math.min(2 * workers, cores)) {
+            List<String> command = new ArrayList<>();
+            command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(options);
+            command.add("-Dtwofive.parallelism=" + workers);
+            command.addAll(List.of("-cp", System.getProperty("java.class.path"), "Bench", name));
+            int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exit != 0) {
+                System.exit(exit);
+            }
+            if (workers >= cores) {
+                break;
+            }
+        }
+    }
+
+    /* =================================================================== //
+                                     HULL
+    // =================================================================== */
+    private static void hull() {
+        int n = 1 << 20;
+        Random random = new Random(7);
+        double[][] centers = new double[16][];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = new double[]{random.nextDouble() * 100, random.nextDouble() * 100};
+        }
+        System.out.println("hull of " + n + " points, " + (n < Hull.THRESHOLD ? "sequential" : "parallel")
+                + ", " + Parallel.PARALLELISM + " worker(s), milliseconds per call:");
+        for (String distribution : new String[]{"uniform", "circle", "clustered"}) {
+            double[] coords = new double[2 * n];
+            for (int i = 0; i < n; i++) {
+                if (distribution.equals("uniform")) {
+                    coords[2 * i] = random.nextDouble() * 100;
+                    coords[2 * i + 1] = random.nextDouble() * 100;
+                } else if (distribution.equals("circle")) {
+                    double angle = random.nextDouble() * 2 * Math.PI;
+                    coords[2 * i] = 50 + 50 * Math.cos(angle);
+                    coords[2 * i + 1] = 50 + 50 * Math.sin(angle);
+                } else {
+                    double[] center = centers[random.nextInt(centers.length)];
+                    coords[2 * i] = center[0] + random.nextGaussian() * 3;
+                    coords[2 * i + 1] = center[1] + random.nextGaussian() * 3;
+                }
+            }
+            ArrayVal points = new ArrayVal(new PointStorage(false, 2, coords, n));
+            int vertices = Hull.hull(points).size();
+            System.out.printf("    %-14s %8.1f   (%d vertices)%n", distribution,
+                    time(3, 7, 1, () -> Hull.hull(points)) / 1e3, vertices);
+        }
+    }
+
+    /* =================================================================== //
+                                    KDTREE
+    // =================================================================== */
+    private static void kdtree() {
+        int n = 1 << 20;
+        int queries = 100_000;
+        Random random = new Random(5);
+        double[] coords = new double[2 * n];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = random.nextDouble() * 1000;
+        }
+        double[] qs = new double[2 * queries];
+        for (int i = 0; i < qs.length; i++) {
+            qs[i] = random.nextDouble() * 1000;
+        }
+        ArrayVal points = new ArrayVal(new PointStorage(false, 2, coords, n));
+        System.out.println("kdtree of " + n + " points, " + Parallel.PARALLELISM + " worker(s):");
+        System.out.printf("    %-14s %8.1f ms%n", "build", time(2, 5, 1, () -> KdTreeVal.build(points)) / 1e3);
+
+        KdTreeVal tree = KdTreeVal.build(points);
+        System.out.println("  thousands of queries per second:");
+        query(queries, "nearest k=1", () -> {
+            for (int i = 0; i < queries; i++) {
+                sink = tree.nearest(new double[]{qs[2 * i], qs[2 * i + 1]}, 1);
+            }
+            return null;
+        });
+        query(queries, "nearest k=10", () -> {
+            for (int i = 0; i < queries; i++) {
+                sink = tree.nearest(new double[]{qs[2 * i], qs[2 * i + 1]}, 10);
+            }
+            return null;
+        });
+        query(queries, "within r=5", () -> {
+            for (int i = 0; i < queries; i++) {
+                sink = tree.within(new double[]{qs[2 * i], qs[2 * i + 1]}, 5);
+            }
+            return null;
+        });
+        query(queries, "inside 10x10", () -> {
+            for (int i = 0; i < queries; i++) {
+                sink = tree.inside(new double[]{qs[2 * i], qs[2 * i + 1]},
+                        new double[]{qs[2 * i] + 10, qs[2 * i + 1] + 10});
+            }
+            return null;
+        });
+        query(queries, "pnearest k=1", () -> tree.batch(qs, queries, q -> tree.nearest(q, 1)));
+    }
+
+    private static void query(int queries, String label, Body body) {
+        System.out.printf("    %-14s %8.0f%n", label, queries / time(1, 3, 1, body) * 1e3);
+    }
+}
@@ -2,7 +2,8 @@ import java.util.List;
 
 //Base statement class
 abstract class Stmt {
-    private final NodeType kind;
+    //Package-visible so hot dispatch can read it without a virtual getKind() call
+    final NodeType kind;
 
     public Stmt(NodeType kind) {
         this.kind = kind;
@@ -98,6 +99,14 @@ class IfStatement extends Stmt {
         return test;
     }
 
+    public List<Stmt> getBody() {
+        return body;
+    }
+
+    public List<Stmt> getAlternate() {
+        return alternate;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -266,9 +275,11 @@ class AssignmentExpr extends Expr {
 class BinaryExpr extends Expr {
     private final Expr left;
     private final Expr right;
-    private final String operator;
+    private final Operator operator;
+    //Rewritten by the Interpreter as it observes operand types; see Specializations.java
+    private BinarySpecialization specialization = BinarySpecialization.UNINITIALIZED;
 
-    public BinaryExpr(Expr left, Expr right, String operator) {
+    public BinaryExpr(Expr left, Expr right, Operator operator) {
         super(NodeType.BINARYEXPR);
         this.left = left;
         this.right = right;
@@ -283,7 +294,44 @@ class BinaryExpr extends Expr {
         return right;
     }
 
-    public String getOperator() {
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public BinarySpecialization getSpecialization() {
+        return specialization;
+    }
+
+    public void setSpecialization(BinarySpecialization specialization) {
+        this.specialization = specialization;
+    }
+
+    @Override
+    public NodeType getKind() {
+        return super.getKind();
+    }
+
+    @Override
+    public String toString() {
+        return "Left: (" + left + "), right: (" + right + "), operator: (" + operator.getSymbol() + ")";
+    }
+}
+
+class UnaryExpr extends Expr {
+    private final Expr operand;
+    private final Operator operator;
+
+    public UnaryExpr(Expr operand, Operator operator) {
+        super(NodeType.UNARYEXPR);
+        this.operand = operand;
+        this.operator = operator;
+    }
+
+    public Expr getOperand() {
+        return operand;
+    }
+
+    public Operator getOperator() {
         return operator;
     }
 
@@ -294,7 +342,7 @@ class BinaryExpr extends Expr {
 
     @Override
     public String toString() {
-        return "Left: (" + left + "), right: (" + right + "), operator: (" + operator + ")";
+        return "Operand: (" + operand + "), operator: (" + operator.getSymbol() + ")";
     }
 }
 
@@ -327,10 +375,52 @@ class CallExpr extends Expr {
     }
 }
 
+//func(a, b) { ... }, an anonymous function; calling it evaluates to the value of its last statement
+class FuncExpr extends Expr {
+    private final List<Identifier> parameters;
+    private final List<Stmt> body;
+    //Slots a call's frame needs, counted by the Resolver
+    private int frameSize;
+
+    public FuncExpr(List<Identifier> parameters, List<Stmt> body) {
+        super(NodeType.FUNCEXPR);
+        this.parameters = parameters;
+        this.body = body;
+    }
+
+    public List<Identifier> getParameters() {
+        return parameters;
+    }
+
+    public List<Stmt> getBody() {
+        return body;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public void setFrameSize(int frameSize) {
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    public NodeType getKind() {
+        return super.getKind();
+    }
+
+    @Override
+    public String toString() {
+        return "FuncExpr, parameters: " + parameters + ", body: " + body;
+    }
+}
+
 class MemberExpr extends Expr {
     private final Expr object;
     private final Expr property;
     private final boolean computed;
+    //Inline cache for obj.key; see Shapes.java
+    private final PropertyCache cache = new PropertyCache();
 
     public MemberExpr(Expr object, Expr property, boolean computed) {
         super(NodeType.MEMBEREXPR);
@@ -351,6 +441,10 @@ class MemberExpr extends Expr {
         return computed;
     }
 
+    public PropertyCache getCache() {
+        return cache;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -365,6 +459,9 @@ class MemberExpr extends Expr {
 //Base identifier class
 class Identifier extends Expr {
     private final String symbol;
+    //Lexical address filled in by the Resolver: frames to walk up, then the slot in that frame
+    private int depth = -1;
+    private int slot = -1;
 
     public Identifier(String symbol) {
         super(NodeType.IDENTIFIER);
@@ -375,6 +472,19 @@ class Identifier extends Expr {
         return symbol;
     }
 
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void resolve(int depth, int slot) {
+        this.depth = depth;
+        this.slot = slot;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -388,16 +498,23 @@ class Identifier extends Expr {
 
 class IntLiteral extends Expr {
     private final int value;
+    //Built once here instead of on every evaluation
+    private final IntVal runtimeValue;
 
     public IntLiteral(int value) {
         super(NodeType.INTLITERAL);
         this.value = value;
+        this.runtimeValue = IntVal.of(value);
     }
 
     public int getValue() {
         return value;
     }
 
+    public IntVal getRuntimeValue() {
+        return runtimeValue;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -411,16 +528,22 @@ class IntLiteral extends Expr {
 
 class FloatLiteral extends Expr {
     private final float value;
+    private final FloatVal runtimeValue;
 
     public FloatLiteral(float value) {
         super(NodeType.FLOATLITERAL);
         this.value = value;
+        this.runtimeValue = new FloatVal(value);
     }
 
     public float getValue() {
         return value;
     }
 
+    public FloatVal getRuntimeValue() {
+        return runtimeValue;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -444,6 +567,10 @@ class BoolLiteral extends Expr {
         return value;
     }
 
+    public BoolVal getRuntimeValue() {
+        return BoolVal.of(value);
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -498,6 +625,10 @@ class Property extends Expr {
 
 class ObjLiteral extends Expr {
     private final List<Property> properties;
+    //Shape of every object the literal creates, and each property's slot in it; built on first use
+    //Written after 'slots', so a thread that sees the shape also sees the slots
+    private volatile Shape shape;
+    private int[] slots;
 
     public ObjLiteral(List<Property> properties) {
         super(NodeType.OBJLITERAL);
@@ -508,6 +639,29 @@ class ObjLiteral extends Expr {
         return properties;
     }
 
+    public Shape getShape() {
+        if (shape == null) {
+            Shape built = Shape.EMPTY;
+            int[] builtSlots = new int[properties.size()];
+            for (int i = 0; i < builtSlots.length; i++) {
+                String key = properties.get(i).getKey();
+                //A repeated key overwrites the earlier property's slot
+                if (built.slotOf(key) < 0) {
+                    built = built.with(key);
+                }
+                builtSlots[i] = built.slotOf(key);
+            }
+            slots = builtSlots;
+            shape = built;
+        }
+        return shape;
+    }
+
+    //Slot of each property, in source order; only valid after getShape
+    public int[] getSlots() {
+        return slots;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -544,16 +698,22 @@ class ArrayLiteral extends Expr {
 
 class StringLiteral extends Expr {
     private final String value;
+    private final StringVal runtimeValue;
 
     public StringLiteral(String value) {
         super(NodeType.STRINGLITERAL);
         this.value = value;
+        this.runtimeValue = new StringVal(value);
     }
 
     public String getValue() {
         return value;
     }
 
+    public StringVal getRuntimeValue() {
+        return runtimeValue;
+    }
+
     @Override
     public NodeType getKind() {
         return super.getKind();
@@ -0,0 +1,397 @@
+/* =================================================================== //
+     ELEMENTWISE + - * / BETWEEN NUMERIC ARRAYS, OR AN ARRAY AND A
+     NUMBER, AND THE sum, min, max AND dot REDUCTIONS. INT AND FLOAT
+     ARRAYS RUN AS BULK LOOPS OVER THEIR PRIMITIVE STORAGE: ON THE
+     VECTOR API WHEN THE jdk.incubator.vector MODULE IS ENABLED, AS
+     PLAIN LOOPS OTHERWISE. ANY OTHER ARRAY GOES ELEMENT BY ELEMENT
+     THROUGH THE Interpreter, SO RESULTS AND ERRORS MATCH IT EXACTLY.
+
+     MIXED INT AND FLOAT OPERANDS ARE PROMOTED TO FLOAT, AS FOR NUMBERS.
+     OFF-HEAP ARRAYS ARE READ IN CHUNKS, SO NO COPY OF THEM IS MADE.
+// =================================================================== */
+class ArrayKernels {
+    //Off with -Dtwofive.simd=false; SimdKernels is never loaded then
+    static final boolean SIMD = !"false".equals(System.getProperty("twofive.simd"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    //Elements per chunk for operands that must be converted or copied first
+    private static final int CHUNK = 4096;
+    private static final Interpreter INTERPRETER = new Interpreter();
+
+    enum Reduction { SUM, MIN, MAX }
+
+    //LHS op RHS with at least one array operand, or null if the operator does not work elementwise
+    static RuntimeVal apply(RuntimeVal LHS, RuntimeVal RHS, Operator operator) {
+        if (operator != Operator.ADD && operator != Operator.SUBTRACT
+                && operator != Operator.MULTIPLY && operator != Operator.DIVIDE) {
+            return null;
+        }
+        int size = LHS instanceof ArrayVal ? ((ArrayVal) LHS).size() : ((ArrayVal) RHS).size();
+        if (LHS instanceof ArrayVal && RHS instanceof ArrayVal && ((ArrayVal) RHS).size() != size) {
+            System.err.println("Value Error: Arrays of sizes " + size + " and " + ((ArrayVal) RHS).size()
+                    + " cannot be combined with \"" + operator.getSymbol() + "\"");
+            System.exit(1);
+        }
+        //Packed points and vectors have their own loops; see Geometry.java
+        ArrayVal points = Geometry.applyPacked(LHS, RHS, operator, size);
+        if (points != null) {
+            return points;
+        }
+        if (!isNumeric(LHS) || !isNumeric(RHS)) {
+            ArrayVal result = new ArrayVal();
+            for (int i = 0; i < size; i++) {
+                result.add(INTERPRETER.applyBinary(element(LHS, i), element(RHS, i), operator));
+            }
+            return result;
+        }
+        return isFloat(LHS) || isFloat(RHS)
+                ? applyFloats(LHS, RHS, operator, size)
+                : applyInts(LHS, RHS, operator, size);
+    }
+
+    private static ArrayVal applyInts(RuntimeVal LHS, RuntimeVal RHS, Operator operator, int size) {
+        int[] out = new int[size];
+        int step = isDirect(LHS, false) && isDirect(RHS, false) ? size : CHUNK;
+        int[] leftScratch = new int[scratchSize(LHS, false, step, size)];
+        int[] rightScratch = new int[scratchSize(RHS, false, step, size)];
+        int[] outScratch = step >= size ? out : new int[step];
+        int leftScalar = LHS instanceof IntVal ? ((IntVal) LHS).getValue() : 0;
+        int rightScalar = RHS instanceof IntVal ? ((IntVal) RHS).getValue() : 0;
+        for (int from = 0; from < size; from += step) {
+            int count = Math.min(step, size - from);
+            int[] left = intView(LHS, from, count, leftScratch);
+            int[] right = intView(RHS, from, count, rightScratch);
+            int zero;
+            //Ints have no vector division, so it stays scalar
+            if (SIMD && operator != Operator.DIVIDE) {
+                SimdKernels.ints(operator, left, leftScalar, right, rightScalar, outScratch, count);
+                zero = -1;
+            } else {
+                zero = scalarInts(operator, left, leftScalar, right, rightScalar, outScratch, 0, count);
+            }
+            if (zero >= 0) {
+                divisionByZero(LHS, RHS, from + zero);
+            }
+            if (outScratch != out) {
+                System.arraycopy(outScratch, 0, out, from, count);
+            }
+        }
+        return new ArrayVal(new IntStorage(out, size));
+    }
+
+    private static ArrayVal applyFloats(RuntimeVal LHS, RuntimeVal RHS, Operator operator, int size) {
+        float[] out = new float[size];
+        int step = isDirect(LHS, true) && isDirect(RHS, true) ? size : CHUNK;
+        float[] leftScratch = new float[scratchSize(LHS, true, step, size)];
+        float[] rightScratch = new float[scratchSize(RHS, true, step, size)];
+        float[] outScratch = step >= size ? out : new float[step];
+        float leftScalar = scalar(LHS);
+        float rightScalar = scalar(RHS);
+        for (int from = 0; from < size; from += step) {
+            int count = Math.min(step, size - from);
+            float[] left = floatView(LHS, from, count, leftScratch);
+            float[] right = floatView(RHS, from, count, rightScratch);
+            int zero = SIMD
+                    ? SimdKernels.floats(operator, left, leftScalar, right, rightScalar, outScratch, count)
+                    : scalarFloats(operator, left, leftScalar, right, rightScalar, outScratch, 0, count);
+            if (zero >= 0) {
+                divisionByZero(LHS, RHS, from + zero);
+            }
+            if (outScratch != out) {
+                System.arraycopy(outScratch, 0, out, from, count);
+            }
+        }
+        return new ArrayVal(new FloatStorage(out, size));
+    }
+
+    //Division by zero is reported by the Interpreter, with its exact message
+    private static void divisionByZero(RuntimeVal LHS, RuntimeVal RHS, int index) {
+        INTERPRETER.applyBinary(element(LHS, index), element(RHS, index), Operator.DIVIDE);
+    }
+
+    /* =================================================================== //
+                                  REDUCTIONS
+    // =================================================================== */
+    static RuntimeVal reduce(ArrayVal array, Reduction reduction) {
+        int size = array.size();
+        if (size == 0 && reduction != Reduction.SUM) {
+            System.err.println("Value Error: " + reduction.name().toLowerCase() + " of an empty array");
+            System.exit(1);
+        }
+        if (!isNumeric(array)) {
+            RuntimeVal result = reduction == Reduction.SUM ? IntVal.of(0) : array.get(0);
+            for (int i = reduction == Reduction.SUM ? 0 : 1; i < size; i++) {
+                result = fold(result, array.get(i), reduction);
+            }
+            return result;
+        }
+        int step = isDirect(array, isFloat(array)) ? size : CHUNK;
+        if (!isFloat(array)) {
+            int[] scratch = new int[scratchSize(array, false, step, size)];
+            int result = reduction == Reduction.SUM ? 0 : ((IntVal) array.get(0)).getValue();
+            for (int from = 0; from < size; from += step) {
+                int count = Math.min(step, size - from);
+                int[] values = intView(array, from, count, scratch);
+                int chunk = SIMD ? SimdKernels.reduceInts(reduction, values, count) : scalarReduceInts(reduction, values, count);
+                result = switch (reduction) {
+                    case SUM -> result + chunk;
+                    case MIN -> Math.min(result, chunk);
+                    case MAX -> Math.max(result, chunk);
+                };
+            }
+            return IntVal.of(result);
+        }
+        float[] scratch = new float[scratchSize(array, true, step, size)];
+        float result = reduction == Reduction.SUM ? 0 : ((FloatVal) array.get(0)).getValue();
+        for (int from = 0; from < size; from += step) {
+            int count = Math.min(step, size - from);
+            float[] values = floatView(array, from, count, scratch);
+            float chunk = SIMD ? SimdKernels.reduceFloats(reduction, values, count) : scalarReduceFloats(reduction, values, count);
+            result = switch (reduction) {
+                case SUM -> result + chunk;
+                case MIN -> Math.min(result, chunk);
+                case MAX -> Math.max(result, chunk);
+            };
+        }
+        return new FloatVal(result);
+    }
+
+    //The same reductions over a lazy sequence, folded as its elements stream past
+    static RuntimeVal reduce(SeqVal seq, Reduction reduction, Interpreter interpreter) {
+        Cursor cursor = seq.seq().cursor(interpreter);
+        RuntimeVal result = reduction == Reduction.SUM ? IntVal.of(0) : cursor.next();
+        if (result == null) {
+            System.err.println("Value Error: " + reduction.name().toLowerCase() + " of an empty sequence");
+            System.exit(1);
+        }
+        for (RuntimeVal value = cursor.next(); value != null; value = cursor.next()) {
+            result = fold(result, value, reduction);
+        }
+        return result;
+    }
+
+    static RuntimeVal dot(ArrayVal LHS, ArrayVal RHS) {
+        int size = LHS.size();
+        if (RHS.size() != size) {
+            System.err.println("Value Error: Cannot take the dot product of arrays of sizes " + size + " and " + RHS.size());
+            System.exit(1);
+        }
+        if (!isNumeric(LHS) || !isNumeric(RHS)) {
+            RuntimeVal result = IntVal.of(0);
+            for (int i = 0; i < size; i++) {
+                result = INTERPRETER.applyBinary(result,
+                        INTERPRETER.applyBinary(LHS.get(i), RHS.get(i), Operator.MULTIPLY), Operator.ADD);
+            }
+            return result;
+        }
+        boolean floats = isFloat(LHS) || isFloat(RHS);
+        int step = isDirect(LHS, floats) && isDirect(RHS, floats) ? size : CHUNK;
+        if (!floats) {
+            int[] leftScratch = new int[scratchSize(LHS, false, step, size)];
+            int[] rightScratch = new int[scratchSize(RHS, false, step, size)];
+            int result = 0;
+            for (int from = 0; from < size; from += step) {
+                int count = Math.min(step, size - from);
+                int[] left = intView(LHS, from, count, leftScratch);
+                int[] right = intView(RHS, from, count, rightScratch);
+                result += SIMD ? SimdKernels.dotInts(left, right, count) : scalarDotInts(left, right, count);
+            }
+            return IntVal.of(result);
+        }
+        float[] leftScratch = new float[scratchSize(LHS, true, step, size)];
+        float[] rightScratch = new float[scratchSize(RHS, true, step, size)];
+        float result = 0;
+        for (int from = 0; from < size; from += step) {
+            int count = Math.min(step, size - from);
+            float[] left = floatView(LHS, from, count, leftScratch);
+            float[] right = floatView(RHS, from, count, rightScratch);
+            result += SIMD ? SimdKernels.dotFloats(left, right, count) : scalarDotFloats(left, right, count);
+        }
+        return new FloatVal(result);
+    }
+
+    private static RuntimeVal fold(RuntimeVal result, RuntimeVal value, Reduction reduction) {
+        return switch (reduction) {
+            case SUM -> INTERPRETER.applyBinary(result, value, Operator.ADD);
+            case MIN -> INTERPRETER.expectBool(INTERPRETER.applyBinary(value, result, Operator.LESSER), Operator.LESSER)
+                    ? value : result;
+            case MAX -> INTERPRETER.expectBool(INTERPRETER.applyBinary(value, result, Operator.GREATER), Operator.GREATER)
+                    ? value : result;
+        };
+    }
+
+    /* =================================================================== //
+                                   OPERANDS
+    // =================================================================== */
+    //A number, or an array whose storage the bulk loops can read
+    private static boolean isNumeric(RuntimeVal value) {
+        if (value instanceof IntVal || value instanceof FloatVal) {
+            return true;
+        }
+        if (!(value instanceof ArrayVal)) {
+            return false;
+        }
+        return switch (((ArrayVal) value).storage().kind()) {
+            case EMPTY, INT, FLOAT, OFFHEAP -> true;
+            //Persistent elements may be of any type, so those arrays take the elementwise path
+            case OBJECT, PERSISTENT, POINT -> false;
+        };
+    }
+
+    private static boolean isFloat(RuntimeVal value) {
+        if (value instanceof ArrayVal) {
+            ArrayStorage storage = ((ArrayVal) value).storage();
+            return storage instanceof FloatStorage
+                    || (storage instanceof OffHeapStorage && ((OffHeapStorage) storage).layout() != OffHeapStorage.Layout.INT);
+        }
+        return value instanceof FloatVal;
+    }
+
+    //True if the operand can be read in place, without converting or copying it first
+    private static boolean isDirect(RuntimeVal value, boolean floats) {
+        if (!(value instanceof ArrayVal)) {
+            return true;
+        }
+        ArrayStorage storage = ((ArrayVal) value).storage();
+        return storage == ArrayStorage.EMPTY || (floats ? storage instanceof FloatStorage : storage instanceof IntStorage);
+    }
+
+    //Scratch space an operand's views need; none if it is read in place in a single step
+    private static int scratchSize(RuntimeVal value, boolean floats, int step, int size) {
+        if (!(value instanceof ArrayVal) || (step >= size && isDirect(value, floats))) {
+            return 0;
+        }
+        return Math.min(step, size);
+    }
+
+    private static float scalar(RuntimeVal value) {
+        if (value instanceof IntVal) {
+            return ((IntVal) value).getValue();
+        }
+        return value instanceof FloatVal ? ((FloatVal) value).getValue() : 0;
+    }
+
+    //Elements [from, from + count) of an array operand, starting at index 0 of the result; null for a number
+    private static int[] intView(RuntimeVal value, int from, int count, int[] scratch) {
+        if (!(value instanceof ArrayVal)) {
+            return null;
+        }
+        ArrayStorage storage = ((ArrayVal) value).storage();
+        if (storage instanceof IntStorage) {
+            if (from == 0) {
+                return ((IntStorage) storage).values();
+            }
+            System.arraycopy(((IntStorage) storage).values(), from, scratch, 0, count);
+        } else if (storage instanceof OffHeapStorage) {
+            ((OffHeapStorage) storage).readInts(from, scratch, count);
+        }
+        return scratch;
+    }
+
+    private static float[] floatView(RuntimeVal value, int from, int count, float[] scratch) {
+        if (!(value instanceof ArrayVal)) {
+            return null;
+        }
+        ArrayStorage storage = ((ArrayVal) value).storage();
+        if (storage instanceof FloatStorage) {
+            if (from == 0) {
+                return ((FloatStorage) storage).values();
+            }
+            System.arraycopy(((FloatStorage) storage).values(), from, scratch, 0, count);
+        } else if (storage instanceof IntStorage) {
+            int[] values = ((IntStorage) storage).values();
+            for (int i = 0; i < count; i++) {
+                scratch[i] = values[from + i];
+            }
+        } else if (storage instanceof OffHeapStorage) {
+            ((OffHeapStorage) storage).readFloats(from, scratch, count);
+        }
+        return scratch;
+    }
+
+    private static RuntimeVal element(RuntimeVal value, int index) {
+        return value instanceof ArrayVal ? ((ArrayVal) value).get(index) : value;
+    }
+
+    /* =================================================================== //
+                                 SCALAR LOOPS
+    // =================================================================== */
+    //out[i] = a[i] op b[i] for i in [from, to), where a null array stands for its scalar; returns the index
+    //of the first zero divisor, or -1
+    static int scalarInts(Operator operator, int[] a, int as, int[] b, int bs, int[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int LHS = a != null ? a[i] : as;
+            int RHS = b != null ? b[i] : bs;
+            switch (operator) {
+                case ADD -> out[i] = LHS + RHS;
+                case SUBTRACT -> out[i] = LHS - RHS;
+                case MULTIPLY -> out[i] = LHS * RHS;
+                default -> {
+                    if (RHS == 0) {
+                        return i;
+                    }
+                    out[i] = LHS / RHS;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static int scalarFloats(Operator operator, float[] a, float as, float[] b, float bs, float[] out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            float LHS = a != null ? a[i] : as;
+            float RHS = b != null ? b[i] : bs;
+            switch (operator) {
+                case ADD -> out[i] = LHS + RHS;
+                case SUBTRACT -> out[i] = LHS - RHS;
+                case MULTIPLY -> out[i] = LHS * RHS;
+                default -> {
+                    if (RHS == 0) {
+                        return i;
+                    }
+                    out[i] = LHS / RHS;
+                }
+            }
+        }
+        return -1;
+    }
+
+    static int scalarReduceInts(Reduction reduction, int[] values, int count) {
+        int result = reduction == Reduction.SUM ? 0 : values[0];
+        for (int i = 0; i < count; i++) {
+            result = switch (reduction) {
+                case SUM -> result + values[i];
+                case MIN -> Math.min(result, values[i]);
+                case MAX -> Math.max(result, values[i]);
+            };
+        }
+        return result;
+    }
+
+    static float scalarReduceFloats(Reduction reduction, float[] values, int count) {
+        float result = reduction == Reduction.SUM ? 0 : values[0];
+        for (int i = 0; i < count; i++) {
+            result = switch (reduction) {
+                case SUM -> result + values[i];
+                case MIN -> Math.min(result, values[i]);
+                case MAX -> Math.max(result, values[i]);
+            };
+        }
+        return result;
+    }
+
+    static int scalarDotInts(int[] a, int[] b, int count) {
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    static float scalarDotFloats(float[] a, float[] b, int count) {
+        float result = 0;
+        for (int i = 0; i < count; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+}
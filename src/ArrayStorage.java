@@ -0,0 +1,227 @@
+import java.util.Arrays;
+
+/* =================================================================== //
+     STORAGE STRATEGIES FOR ArrayVal. AN ARRAY WHOSE ELEMENTS ARE ALL
+     INTS OR ALL FLOATS KEEPS THEM IN A PRIMITIVE ARRAY; THE FIRST
+     ELEMENT OF ANY OTHER TYPE GENERALIZES IT, FOR GOOD, TO OBJECT
+     STORAGE. ELEMENTS ARE BOXED AGAIN ONLY WHEN THEY ARE READ.
+
+     set AND add RETURN THE STORAGE TO USE FROM THEN ON, WHICH IS
+     EITHER THE SAME ONE OR ITS GENERALIZED COPY. OFF-HEAP STORAGE IS
+     IN OffHeap.java, IMMUTABLE const STORAGE IN Persistent.java AND
+     PACKED POINTS AND VECTORS IN Geometry.java.
+// =================================================================== */
+abstract class ArrayStorage {
+    enum Kind { EMPTY, INT, FLOAT, OBJECT, OFFHEAP, PERSISTENT, POINT }
+
+    static final ArrayStorage EMPTY = new EmptyStorage();
+
+    abstract Kind kind();
+
+    abstract int size();
+
+    abstract RuntimeVal get(int index);
+
+    abstract ArrayStorage set(int index, RuntimeVal value);
+
+    abstract ArrayStorage add(RuntimeVal value);
+
+    //Storage for values that no strategy so far can hold
+    ObjectStorage generalize() {
+        RuntimeVal[] values = new RuntimeVal[Math.max(this.size() * 2, 4)];
+        for (int i = 0; i < this.size(); i++) {
+            values[i] = this.get(i);
+        }
+        return new ObjectStorage(values, this.size());
+    }
+
+    static int grow(int capacity) {
+        return Math.max(capacity * 2, 4);
+    }
+
+    //No elements yet; the first one picks the strategy
+    private static final class EmptyStorage extends ArrayStorage {
+        @Override
+        Kind kind() {
+            return Kind.EMPTY;
+        }
+
+        @Override
+        int size() {
+            return 0;
+        }
+
+        @Override
+        RuntimeVal get(int index) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        ArrayStorage set(int index, RuntimeVal value) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        @Override
+        ArrayStorage add(RuntimeVal value) {
+            ArrayStorage storage;
+            if (value instanceof IntVal) {
+                storage = new IntStorage(new int[4], 0);
+            } else if (value instanceof FloatVal) {
+                storage = new FloatStorage(new float[4], 0);
+            } else if (value instanceof GeomVal) {
+                GeomVal first = (GeomVal) value;
+                storage = new PointStorage(first.isVector(), first.dims, new double[4 * first.dims], 0);
+            } else {
+                storage = new ObjectStorage(new RuntimeVal[4], 0);
+            }
+            return storage.add(value);
+        }
+    }
+}
+
+final class IntStorage extends ArrayStorage {
+    private int[] values;
+    private int size;
+
+    IntStorage(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    //The elements themselves, for kernels that work on the whole array; only the first size() are in use
+    int[] values() {
+        return values;
+    }
+
+    @Override
+    Kind kind() {
+        return Kind.INT;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    RuntimeVal get(int index) {
+        return IntVal.of(values[index]);
+    }
+
+    @Override
+    ArrayStorage set(int index, RuntimeVal value) {
+        if (value instanceof IntVal) {
+            values[index] = ((IntVal) value).getValue();
+            return this;
+        }
+        return this.generalize().set(index, value);
+    }
+
+    @Override
+    ArrayStorage add(RuntimeVal value) {
+        if (!(value instanceof IntVal)) {
+            return this.generalize().add(value);
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size++] = ((IntVal) value).getValue();
+        return this;
+    }
+}
+
+//Floats in this language are 32 bit, so a float[] holds them exactly
+final class FloatStorage extends ArrayStorage {
+    private float[] values;
+    private int size;
+
+    FloatStorage(float[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    float[] values() {
+        return values;
+    }
+
+    @Override
+    Kind kind() {
+        return Kind.FLOAT;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    RuntimeVal get(int index) {
+        return new FloatVal(values[index]);
+    }
+
+    @Override
+    ArrayStorage set(int index, RuntimeVal value) {
+        if (value instanceof FloatVal) {
+            values[index] = ((FloatVal) value).getValue();
+            return this;
+        }
+        return this.generalize().set(index, value);
+    }
+
+    @Override
+    ArrayStorage add(RuntimeVal value) {
+        if (!(value instanceof FloatVal)) {
+            return this.generalize().add(value);
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size++] = ((FloatVal) value).getValue();
+        return this;
+    }
+}
+
+final class ObjectStorage extends ArrayStorage {
+    private RuntimeVal[] values;
+    private int size;
+
+    ObjectStorage(RuntimeVal[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    Kind kind() {
+        return Kind.OBJECT;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    RuntimeVal get(int index) {
+        return values[index];
+    }
+
+    @Override
+    ArrayStorage set(int index, RuntimeVal value) {
+        values[index] = value;
+        return this;
+    }
+
+    @Override
+    ArrayStorage add(RuntimeVal value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, grow(values.length));
+        }
+        values[size++] = value;
+        return this;
+    }
+
+    @Override
+    ObjectStorage generalize() {
+        return this;
+    }
+}
@@ -0,0 +1,428 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* =================================================================== //
+     ON-DISK CACHE OF PARSED PROGRAMS, KEYED BY A SHA-256 OF THE SOURCE.
+     A HIT IS READ STRAIGHT FROM A MEMORY MAPPING, SKIPPING THE LEXER
+     AND PARSER ENTIRELY. ENTRIES FROM ANOTHER FORMAT VERSION ARE MISSES.
+// =================================================================== */
+class AstCache {
+    //"25AS" in ASCII
+    static final int MAGIC = 0x32354153;
+    //Bump whenever the encoding of any node changes, or the parser reads the same source differently
+    static final int VERSION = 5;
+
+    private final Path directory;
+
+    public AstCache() {
+        this(Path.of(System.getProperty("twofive.cache",
+                Path.of(System.getProperty("user.home"), ".25", "cache").toString())));
+    }
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    //Cached AST for the script, parsing it (and caching the result) on a miss
+    public Program load(Path script, Parser parser) throws IOException {
+        Path entry = directory.resolve(hash(script) + ".ast");
+        Program cached = read(entry);
+        if (cached != null) {
+            return cached;
+        }
+        Program program = parser.produceAST(script);
+        write(entry, program);
+        return program;
+    }
+
+    private Program read(Path entry) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            return (Program) new AstReader(buffer).readStmt();
+        } catch (IOException | RuntimeException e) {
+            //A damaged entry is just a miss; it is overwritten after the reparse
+            return null;
+        }
+    }
+
+    private void write(Path entry, Program program) {
+        try {
+            Files.createDirectories(directory);
+            AstWriter writer = new AstWriter();
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            writer.writeStmt(program);
+            //Write to a temp file first so a concurrent reader never sees half an entry
+            Path temp = Files.createTempFile(directory, "ast", ".tmp");
+            Files.write(temp, writer.toByteArray());
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //Caching is best-effort; the parsed program is still usable
+            System.err.println("Warning: unable to write AST cache entry " + entry + ": " + e.getMessage());
+        }
+    }
+
+    private static String hash(Path script) throws IOException {
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            long size = channel.size();
+            //Digest through mappings so large scripts are never copied onto the heap
+            for (long offset = 0; offset < size; offset += Integer.MAX_VALUE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(Integer.MAX_VALUE, size - offset)));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is unavailable", e);
+        }
+    }
+}
+
+/* =================================================================== //
+    ENCODING: EACH NODE IS ITS NodeType ORDINAL FOLLOWED BY ITS FIELDS.
+    INTS AND LENGTHS ARE VARINTS, AND STRINGS GO THROUGH A POOL SO EACH
+    DISTINCT NAME IS STORED ONCE AND REFERENCED BY INDEX AFTERWARDS.
+// =================================================================== */
+class AstWriter {
+    static final int NULL_NODE = 0xFF;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    public void writeInt(int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private void writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    //Zigzag so small negative ints stay short
+    private void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private void writeBoolean(boolean value) {
+        out.write(value ? 1 : 0);
+    }
+
+    //0 introduces a new string, n > 0 refers to pooled string n - 1. A null string is written as a new empty marker
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            writeVarInt(0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+        strings.put(value, strings.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(0);
+        writeVarInt(bytes.length + 1);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private void writeStrings(List<String> values) {
+        writeVarInt(values == null ? 0 : values.size() + 1);
+        if (values != null) {
+            for (String value : values) {
+                writeString(value);
+            }
+        }
+    }
+
+    private void writeStmts(List<? extends Stmt> stmts) {
+        writeVarInt(stmts == null ? 0 : stmts.size() + 1);
+        if (stmts != null) {
+            for (Stmt stmt : stmts) {
+                writeStmt(stmt);
+            }
+        }
+    }
+
+    public void writeStmt(Stmt node) {
+        if (node == null) {
+            out.write(NULL_NODE);
+            return;
+        }
+        out.write(node.getKind().ordinal());
+        switch (node.getKind()) {
+            case PROGRAM -> writeStmts(((Program) node).getBody());
+            case VARIABLEDECLARATION -> {
+                VariableDeclaration declaration = (VariableDeclaration) node;
+                writeBoolean(declaration.isConstant());
+                writeStmt(declaration.getIdentifier());
+                writeStmt(declaration.getValue());
+            }
+            case FUNCDECLARATION -> {
+                FuncDeclaration declaration = (FuncDeclaration) node;
+                writeStrings(declaration.getParameters());
+                writeString(declaration.getName());
+                writeStrings(declaration.getBody());
+            }
+            case IFSTATEMENT -> {
+                IfStatement statement = (IfStatement) node;
+                writeStmt(statement.getTest());
+                writeStmts(statement.getBody());
+                writeStmts(statement.getAlternate());
+            }
+            case FORSTATEMENT -> {
+                ForStatement statement = (ForStatement) node;
+                writeStmt(statement.getInit());
+                writeStmt(statement.getTest());
+                writeStmt(statement.getUpdate());
+                writeStmts(statement.getBody());
+            }
+            case WHILESTATEMENT -> {
+                WhileStatement statement = (WhileStatement) node;
+                writeStmt(statement.getTest());
+                writeStmts(statement.getBody());
+            }
+            case TRYCATCHSTATEMENT -> {
+                TryCatchStatement statement = (TryCatchStatement) node;
+                writeStmts(statement.getBody());
+                writeStmts(statement.getAlternate());
+            }
+            case ASSIGNMENTEXPR -> {
+                AssignmentExpr expr = (AssignmentExpr) node;
+                writeStmt(expr.getAssignee());
+                writeStmt(expr.getValue());
+            }
+            case BINARYEXPR -> {
+                BinaryExpr expr = (BinaryExpr) node;
+                writeString(expr.getOperator().name());
+                writeStmt(expr.getLeft());
+                writeStmt(expr.getRight());
+            }
+            case UNARYEXPR -> {
+                UnaryExpr expr = (UnaryExpr) node;
+                writeString(expr.getOperator().name());
+                writeStmt(expr.getOperand());
+            }
+            case MEMBEREXPR -> {
+                MemberExpr expr = (MemberExpr) node;
+                writeStmt(expr.getObject());
+                writeStmt(expr.getProperty());
+                writeBoolean(expr.isComputed());
+            }
+            case CALLEXPR -> {
+                CallExpr expr = (CallExpr) node;
+                writeStmts(expr.getArgs());
+                writeStmt(expr.getCaller());
+            }
+            case FUNCEXPR -> {
+                FuncExpr expr = (FuncExpr) node;
+                writeStmts(expr.getParameters());
+                writeStmts(expr.getBody());
+            }
+            case IDENTIFIER -> writeString(((Identifier) node).getSymbol());
+            case INTLITERAL -> writeSignedVarInt(((IntLiteral) node).getValue());
+            case FLOATLITERAL -> writeInt(Float.floatToRawIntBits(((FloatLiteral) node).getValue()));
+            case BOOLLITERAL -> writeBoolean(((BoolLiteral) node).getValue());
+            case STRINGLITERAL -> writeString(((StringLiteral) node).getValue());
+            case NULLLITERAL -> writeString(((NullLiteral) node).getValue());
+            case OBJLITERAL -> writeStmts(((ObjLiteral) node).getProperties());
+            case PROPERTY -> {
+                Property property = (Property) node;
+                writeString(property.getKey());
+                writeStmt(property.getValue());
+            }
+            case ARRAYLITERAL -> writeStmts(((ArrayLiteral) node).getValues());
+        }
+    }
+}
+
+class AstReader {
+    private static final NodeType[] KINDS = NodeType.values();
+
+    private final ByteBuffer in;
+    private final List<String> strings = new ArrayList<>();
+
+    public AstReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    private int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in AST cache entry");
+    }
+
+    private int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private boolean readBoolean() {
+        return in.get() != 0;
+    }
+
+    private String readString() {
+        int index = readVarInt();
+        if (index > 0) {
+            return strings.get(index - 1);
+        }
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        strings.add(value);
+        return value;
+    }
+
+    private List<String> readStrings() {
+        int count = readVarInt();
+        if (count == 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count - 1);
+        for (int i = 0; i < count - 1; i++) {
+            values.add(readString());
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Stmt> List<T> readStmts() {
+        int count = readVarInt();
+        if (count == 0) {
+            return null;
+        }
+        List<T> stmts = new ArrayList<>(count - 1);
+        for (int i = 0; i < count - 1; i++) {
+            stmts.add((T) readStmt());
+        }
+        return stmts;
+    }
+
+    private Expr readExpr() {
+        return (Expr) readStmt();
+    }
+
+    public Stmt readStmt() {
+        int tag = in.get() & 0xFF;
+        if (tag == AstWriter.NULL_NODE) {
+            return null;
+        }
+        if (tag >= KINDS.length) {
+            throw new IllegalStateException("Unknown node tag " + tag + " in AST cache entry");
+        }
+        return switch (KINDS[tag]) {
+            case PROGRAM -> new Program(readStmts());
+            case VARIABLEDECLARATION -> {
+                boolean constant = readBoolean();
+                Identifier identifier = (Identifier) readStmt();
+                yield new VariableDeclaration(constant, identifier, readExpr());
+            }
+            case FUNCDECLARATION -> {
+                List<String> parameters = readStrings();
+                String name = readString();
+                yield new FuncDeclaration(parameters, name, readStrings());
+            }
+            case IFSTATEMENT -> {
+                Expr test = readExpr();
+                List<Stmt> body = readStmts();
+                yield new IfStatement(test, body, readStmts());
+            }
+            case FORSTATEMENT -> {
+                VariableDeclaration init = (VariableDeclaration) readStmt();
+                Expr test = readExpr();
+                AssignmentExpr update = (AssignmentExpr) readStmt();
+                yield new ForStatement(init, test, update, readStmts());
+            }
+            case WHILESTATEMENT -> {
+                Expr test = readExpr();
+                yield new WhileStatement(test, readStmts());
+            }
+            case TRYCATCHSTATEMENT -> {
+                List<Stmt> body = readStmts();
+                yield new TryCatchStatement(body, readStmts());
+            }
+            case ASSIGNMENTEXPR -> {
+                Expr assignee = readExpr();
+                yield new AssignmentExpr(assignee, readExpr());
+            }
+            case BINARYEXPR -> {
+                Operator operator = Operator.valueOf(readString());
+                Expr left = readExpr();
+                yield new BinaryExpr(left, readExpr(), operator);
+            }
+            case UNARYEXPR -> {
+                Operator operator = Operator.valueOf(readString());
+                yield new UnaryExpr(readExpr(), operator);
+            }
+            case MEMBEREXPR -> {
+                Expr object = readExpr();
+                Expr property = readExpr();
+                yield new MemberExpr(object, property, readBoolean());
+            }
+            case CALLEXPR -> {
+                List<Expr> args = readStmts();
+                yield new CallExpr(args, readExpr());
+            }
+            case FUNCEXPR -> {
+                List<Identifier> parameters = readStmts();
+                yield new FuncExpr(parameters, readStmts());
+            }
+            case IDENTIFIER -> new Identifier(readString());
+            case INTLITERAL -> new IntLiteral(readSignedVarInt());
+            case FLOATLITERAL -> new FloatLiteral(Float.intBitsToFloat(in.getInt()));
+            case BOOLLITERAL -> new BoolLiteral(readBoolean());
+            case STRINGLITERAL -> new StringLiteral(readString());
+            case NULLLITERAL -> new NullLiteral(readString());
+            case OBJLITERAL -> new ObjLiteral(readStmts());
+            case PROPERTY -> {
+                String key = readString();
+                yield new Property(key, readExpr());
+            }
+            case ARRAYLITERAL -> new ArrayLiteral(readStmts());
+        };
+    }
+}
@@ -0,0 +1,443 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* =================================================================== //
+     FUNCTIONS IMPLEMENTED IN JAVA. EACH ONE IS A CONSTANT IN A SCOPE OF
+     ITS OWN THAT ENCLOSES THE PROGRAM'S GLOBALS, SO A PROGRAM CAN STILL
+     DECLARE A VARIABLE NAMED sum OR point, WHICH HIDES THE BUILTIN FROM
+     THEN ON. NAMES ARE LETTERS ONLY, LIKE EVERY IDENTIFIER.
+// =================================================================== */
+class Builtins {
+    private final Map<String, NativeFn> functions = new LinkedHashMap<>();
+    //Owns the off-heap arrays scripts allocate or map
+    private final OffHeapArena arena;
+
+    public Builtins(OffHeapArena arena) {
+        this.arena = arena;
+
+        functions.put("len", (interpreter, args) -> {
+            expectArgs("len", args, 1);
+            if (args[0] instanceof SeqVal) {
+                return IntVal.of(((SeqVal) args[0]).size(interpreter));
+            }
+            return IntVal.of(expectArray("len", args[0]).size());
+        });
+
+        //Lazy sequences, over arrays or other sequences; see Sequences.java
+        functions.put("range", (interpreter, args) -> {
+            if (args.length < 1 || args.length > 3) {
+                System.err.println("Error: range expects 1 to 3 argument(s), got " + args.length);
+                System.exit(1);
+            }
+            int start = args.length == 1 ? 0 : expectInt("range", args[0]);
+            int end = expectInt("range", args[args.length == 1 ? 0 : 1]);
+            int step = args.length == 3 ? expectInt("range", args[2]) : 1;
+            if (step == 0) {
+                System.err.println("Value Error: range step cannot be 0");
+                System.exit(1);
+            }
+            return new SeqVal(new RangeSeq(start, end, step));
+        });
+        functions.put("map", (interpreter, args) -> {
+            expectArgs("map", args, 2);
+            return new SeqVal(new MapSeq(expectSeq("map", args[0]), args[1]));
+        });
+        functions.put("filter", (interpreter, args) -> {
+            expectArgs("filter", args, 2);
+            return new SeqVal(new FilterSeq(expectSeq("filter", args[0]), args[1]));
+        });
+        functions.put("zip", (interpreter, args) -> {
+            expectArgs("zip", args, 2);
+            return new SeqVal(new ZipSeq(expectSeq("zip", args[0]), expectSeq("zip", args[1])));
+        });
+        functions.put("take", (interpreter, args) -> {
+            expectArgs("take", args, 2);
+            int count = expectInt("take", args[1]);
+            if (count < 0) {
+                System.err.println("Value Error: take expects a count of at least 0, got " + count);
+                System.exit(1);
+            }
+            return new SeqVal(new TakeSeq(expectSeq("take", args[0]), count));
+        });
+
+        //The same over arrays, eagerly and on every core; see Parallel.java
+        functions.put("pmap", (interpreter, args) -> {
+            expectArgs("pmap", args, 2);
+            return Parallel.map(expectElements("pmap", args[0], interpreter), args[1]);
+        });
+        functions.put("pfilter", (interpreter, args) -> {
+            expectArgs("pfilter", args, 2);
+            return Parallel.filter(expectElements("pfilter", args[0], interpreter), args[1]);
+        });
+        functions.put("preduce", (interpreter, args) -> {
+            expectArgs("preduce", args, 3);
+            return Parallel.reduce(expectElements("preduce", args[0], interpreter), args[1], args[2]);
+        });
+        functions.put("psort", (interpreter, args) -> {
+            if (args.length != 1 && args.length != 2) {
+                System.err.println("Error: psort expects 1 or 2 argument(s), got " + args.length);
+                System.exit(1);
+            }
+            return Parallel.sort(expectElements("psort", args[0], interpreter), args.length == 2 ? args[1] : null);
+        });
+
+        //Changed copies of an array, sharing structure with it; see Persistent.java
+        functions.put("push", (interpreter, args) -> {
+            expectArgs("push", args, 2);
+            return new ArrayVal(PersistentStorage.of(expectArray("push", args[0])).push(args[1]));
+        });
+        functions.put("update", (interpreter, args) -> {
+            expectArgs("update", args, 3);
+            ArrayVal array = expectArray("update", args[0]);
+            int index = expectInt("update", args[1]);
+            expectIndex(index, array.size() - 1, array.size());
+            return new ArrayVal(PersistentStorage.of(array).update(index, args[2]));
+        });
+        functions.put("slice", (interpreter, args) -> {
+            expectArgs("slice", args, 3);
+            ArrayVal array = expectArray("slice", args[0]);
+            int from = expectInt("slice", args[1]);
+            int to = expectInt("slice", args[2]);
+            expectIndex(from, array.size(), array.size());
+            expectIndex(to, array.size(), array.size());
+            if (to < from) {
+                System.err.println("Value Error: slice expects from <= to, got " + from + " and " + to);
+                System.exit(1);
+            }
+            return new ArrayVal(PersistentStorage.of(array).slice(from, to));
+        });
+        functions.put("concat", (interpreter, args) -> {
+            expectArgs("concat", args, 2);
+            PersistentStorage result = PersistentStorage.of(expectArray("concat", args[0]));
+            ArrayVal tail = expectArray("concat", args[1]);
+            for (int i = 0; i < tail.size(); i++) {
+                result = result.push(tail.get(i));
+            }
+            return new ArrayVal(result);
+        });
+
+        //Reductions over numeric arrays, or over sequences as they stream; see ArrayKernels.java
+        functions.put("sum", (interpreter, args) -> {
+            expectArgs("sum", args, 1);
+            if (args[0] instanceof SeqVal) {
+                return ArrayKernels.reduce((SeqVal) args[0], ArrayKernels.Reduction.SUM, interpreter);
+            }
+            return ArrayKernels.reduce(expectArray("sum", args[0]), ArrayKernels.Reduction.SUM);
+        });
+        functions.put("min", (interpreter, args) -> {
+            expectArgs("min", args, 1);
+            if (args[0] instanceof SeqVal) {
+                return ArrayKernels.reduce((SeqVal) args[0], ArrayKernels.Reduction.MIN, interpreter);
+            }
+            return ArrayKernels.reduce(expectArray("min", args[0]), ArrayKernels.Reduction.MIN);
+        });
+        functions.put("max", (interpreter, args) -> {
+            expectArgs("max", args, 1);
+            if (args[0] instanceof SeqVal) {
+                return ArrayKernels.reduce((SeqVal) args[0], ArrayKernels.Reduction.MAX, interpreter);
+            }
+            return ArrayKernels.reduce(expectArray("max", args[0]), ArrayKernels.Reduction.MAX);
+        });
+        functions.put("dot", (interpreter, args) -> {
+            expectArgs("dot", args, 2);
+            if (args[0] instanceof VecVal) {
+                return new FloatVal((float) Geometry.dot((VecVal) args[0], expectVec("dot", args[1])));
+            }
+            return ArrayKernels.dot(expectArray("dot", args[0]), expectArray("dot", args[1]));
+        });
+
+        //Points and vectors; see Geometry.java
+        functions.put("point", (interpreter, args) -> coordinates("point", args, false));
+        functions.put("vec", (interpreter, args) -> coordinates("vec", args, true));
+        functions.put("cross", (interpreter, args) -> {
+            expectArgs("cross", args, 2);
+            return Geometry.cross(expectVec("cross", args[0]), expectVec("cross", args[1]));
+        });
+        functions.put("length", (interpreter, args) -> {
+            expectArgs("length", args, 1);
+            return new FloatVal((float) Geometry.length(expectVec("length", args[0])));
+        });
+        //A packed array of points from arrays of their x, y (and z) coordinates
+        functions.put("points", (interpreter, args) -> {
+            if (args.length != 2 && args.length != 3) {
+                System.err.println("Error: points expects 2 or 3 argument(s), got " + args.length);
+                System.exit(1);
+            }
+            ArrayVal[] axes = new ArrayVal[args.length];
+            for (int axis = 0; axis < axes.length; axis++) {
+                axes[axis] = expectArray("points", args[axis]);
+                if (axes[axis].size() != axes[0].size()) {
+                    System.err.println("Value Error: points expects coordinate arrays of one size, got "
+                            + axes[0].size() + " and " + axes[axis].size());
+                    System.exit(1);
+                }
+            }
+            int size = axes[0].size();
+            double[] coords = new double[size * axes.length];
+            for (int i = 0; i < size; i++) {
+                for (int axis = 0; axis < axes.length; axis++) {
+                    coords[i * axes.length + axis] = expectNumber("points", axes[axis].get(i));
+                }
+            }
+            return new ArrayVal(new PointStorage(false, axes.length, coords, size));
+        });
+        //Vertices of the convex hull, counter-clockwise; see Hull.java
+        functions.put("hull", (interpreter, args) -> {
+            expectArgs("hull", args, 1);
+            return Hull.hull(expectArray("hull", args[0]));
+        });
+
+        //Exact signs of orientation and in-circle determinants, -1, 0 or 1; see Predicates.java
+        functions.put("orient", (interpreter, args) -> {
+            if (args.length != 3 && args.length != 4) {
+                System.err.println("Error: orient expects 3 or 4 argument(s), got " + args.length);
+                System.exit(1);
+            }
+            double[][] p = expectPoints("orient", args, args.length - 1);
+            if (args.length == 3) {
+                return sign(Predicates.orient2d(p[0][0], p[0][1], p[1][0], p[1][1], p[2][0], p[2][1]));
+            }
+            return sign(Predicates.orient3d(p[0][0], p[0][1], p[0][2], p[1][0], p[1][1], p[1][2],
+                    p[2][0], p[2][1], p[2][2], p[3][0], p[3][1], p[3][2]));
+        });
+        functions.put("incircle", (interpreter, args) -> {
+            expectArgs("incircle", args, 4);
+            double[][] p = expectPoints("incircle", args, 2);
+            return sign(Predicates.incircle(p[0][0], p[0][1], p[1][0], p[1][1], p[2][0], p[2][1], p[3][0], p[3][1]));
+        });
+        functions.put("insphere", (interpreter, args) -> {
+            expectArgs("insphere", args, 5);
+            double[][] p = expectPoints("insphere", args, 3);
+            return sign(Predicates.insphere(p[0][0], p[0][1], p[0][2], p[1][0], p[1][1], p[1][2],
+                    p[2][0], p[2][1], p[2][2], p[3][0], p[3][1], p[3][2], p[4][0], p[4][1], p[4][2]));
+        });
+
+        //Spatial index over points; see KdTree.java
+        functions.put("kdtree", (interpreter, args) -> {
+            expectArgs("kdtree", args, 1);
+            return KdTreeVal.build(expectArray("kdtree", args[0]));
+        });
+        functions.put("nearest", (interpreter, args) -> {
+            expectArgs("nearest", args, 3);
+            KdTreeVal tree = expectTree("nearest", args[0]);
+            return tree.nearest(expectPoint("nearest", args[1], tree.dims()), expectCount("nearest", args[2]));
+        });
+        functions.put("within", (interpreter, args) -> {
+            expectArgs("within", args, 3);
+            KdTreeVal tree = expectTree("within", args[0]);
+            return tree.within(expectPoint("within", args[1], tree.dims()), expectRadius("within", args[2]));
+        });
+        functions.put("inside", (interpreter, args) -> {
+            expectArgs("inside", args, 3);
+            KdTreeVal tree = expectTree("inside", args[0]);
+            return tree.inside(expectPoint("inside", args[1], tree.dims()), expectPoint("inside", args[2], tree.dims()));
+        });
+        functions.put("pnearest", (interpreter, args) -> {
+            expectArgs("pnearest", args, 3);
+            KdTreeVal tree = expectTree("pnearest", args[0]);
+            ArrayVal queries = expectArray("pnearest", args[1]);
+            int k = expectCount("pnearest", args[2]);
+            return tree.batch(Geometry.coordinates("pnearest", queries, tree.dims()), queries.size(),
+                    q -> tree.nearest(q, k));
+        });
+        functions.put("pwithin", (interpreter, args) -> {
+            expectArgs("pwithin", args, 3);
+            KdTreeVal tree = expectTree("pwithin", args[0]);
+            ArrayVal queries = expectArray("pwithin", args[1]);
+            double radius = expectRadius("pwithin", args[2]);
+            return tree.batch(Geometry.coordinates("pwithin", queries, tree.dims()), queries.size(),
+                    q -> tree.within(q, radius));
+        });
+
+        //Off-heap arrays: zeroed ones of a given length, or a binary file mapped read-only; doubles read as floats
+        functions.put("allocints", (interpreter, args) -> allocate("allocints", args, OffHeapStorage.Layout.INT));
+        functions.put("allocfloats", (interpreter, args) -> allocate("allocfloats", args, OffHeapStorage.Layout.FLOAT));
+        functions.put("allocdoubles", (interpreter, args) -> allocate("allocdoubles", args, OffHeapStorage.Layout.DOUBLE));
+        functions.put("mapints", (interpreter, args) -> map("mapints", args, OffHeapStorage.Layout.INT));
+        functions.put("mapfloats", (interpreter, args) -> map("mapfloats", args, OffHeapStorage.Layout.FLOAT));
+        functions.put("mapdoubles", (interpreter, args) -> map("mapdoubles", args, OffHeapStorage.Layout.DOUBLE));
+        functions.put("free", (interpreter, args) -> {
+            expectArgs("free", args, 1);
+            ArrayStorage storage = expectArray("free", args[0]).storage();
+            if (!(storage instanceof OffHeapStorage)) {
+                System.err.println("Type Error: free expects an off-heap array");
+                System.exit(1);
+            }
+            arena.free((OffHeapStorage) storage);
+            return NullVal.NULL;
+        });
+    }
+
+    //Declare every builtin in the resolver's outermost scope and define it in 'frame', which
+    //every global frame then extends; the resolver is left in a new scope for the globals
+    public void install(Resolver resolver, Environment frame) {
+        for (String name : functions.keySet()) {
+            Identifier identifier = new Identifier(name);
+            resolver.declare(identifier, true);
+            frame.declareVar(identifier.getSlot(), new NativeFnVal(name, functions.get(name)));
+        }
+        resolver.beginScope();
+    }
+
+    private static RuntimeVal coordinates(String name, RuntimeVal[] args, boolean vector) {
+        if (args.length != 2 && args.length != 3) {
+            System.err.println("Error: " + name + " expects 2 or 3 argument(s), got " + args.length);
+            System.exit(1);
+        }
+        double x = expectNumber(name, args[0]);
+        double y = expectNumber(name, args[1]);
+        double z = args.length == 3 ? expectNumber(name, args[2]) : 0;
+        return GeomVal.of(vector, args.length, x, y, z);
+    }
+
+    private RuntimeVal allocate(String name, RuntimeVal[] args, OffHeapStorage.Layout layout) {
+        expectArgs(name, args, 1);
+        int size = expectInt(name, args[0]);
+        if (size < 0) {
+            System.err.println("Value Error: " + name + " expects a length of at least 0, got " + size);
+            System.exit(1);
+        }
+        return arena.allocate(layout, size);
+    }
+
+    private RuntimeVal map(String name, RuntimeVal[] args, OffHeapStorage.Layout layout) {
+        expectArgs(name, args, 1);
+        String file = expectString(name, args[0]);
+        try {
+            return arena.map(layout, Path.of(file));
+        } catch (IOException e) {
+            System.err.println("Unable to map " + file + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /* =================================================================== //
+                                   ARGUMENTS
+    // =================================================================== */
+    private static void expectArgs(String name, RuntimeVal[] args, int count) {
+        if (args.length != count) {
+            System.err.println("Error: " + name + " expects " + count + " argument(s), got " + args.length);
+            System.exit(1);
+        }
+    }
+
+    private static int expectInt(String name, RuntimeVal value) {
+        if (!(value instanceof IntVal)) {
+            wrongType(name, "an IntVal", value);
+        }
+        return ((IntVal) value).getValue();
+    }
+
+    //An index from 0 up to and including last
+    private static void expectIndex(int index, int last, int size) {
+        if (index < 0 || index > last) {
+            System.err.println("Index Error: Index " + index + " out of bounds for array of size " + size);
+            System.exit(1);
+        }
+    }
+
+    private static double expectNumber(String name, RuntimeVal value) {
+        if (value instanceof IntVal) {
+            return ((IntVal) value).getValue();
+        }
+        if (!(value instanceof FloatVal)) {
+            wrongType(name, "a number", value);
+        }
+        return ((FloatVal) value).getValue();
+    }
+
+    private static KdTreeVal expectTree(String name, RuntimeVal value) {
+        if (!(value instanceof KdTreeVal)) {
+            wrongType(name, "a KdTreeVal", value);
+        }
+        return (KdTreeVal) value;
+    }
+
+    //The coordinates of a point with as many as the tree it queries
+    private static double[] expectPoint(String name, RuntimeVal value, int dims) {
+        if (!(value instanceof PointVal)) {
+            wrongType(name, "a PointVal", value);
+        }
+        PointVal point = (PointVal) value;
+        if (point.dims != dims) {
+            System.err.println("Value Error: " + name + " expects a " + dims + "D point, got " + point);
+            System.exit(1);
+        }
+        return new double[]{point.x, point.y, point.z};
+    }
+
+    private static double[][] expectPoints(String name, RuntimeVal[] args, int dims) {
+        double[][] points = new double[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            points[i] = expectPoint(name, args[i], dims);
+        }
+        return points;
+    }
+
+    private static IntVal sign(double value) {
+        return IntVal.of(value > 0 ? 1 : value < 0 ? -1 : 0);
+    }
+
+    private static int expectCount(String name, RuntimeVal value) {
+        int count = expectInt(name, value);
+        if (count < 0) {
+            System.err.println("Value Error: " + name + " expects a count of at least 0, got " + count);
+            System.exit(1);
+        }
+        return count;
+    }
+
+    private static double expectRadius(String name, RuntimeVal value) {
+        double radius = expectNumber(name, value);
+        if (!(radius >= 0)) {
+            System.err.println("Value Error: " + name + " expects a radius of at least 0, got " + value);
+            System.exit(1);
+        }
+        return radius;
+    }
+
+    private static VecVal expectVec(String name, RuntimeVal value) {
+        if (!(value instanceof VecVal)) {
+            wrongType(name, "a VecVal", value);
+        }
+        return (VecVal) value;
+    }
+
+    private static String expectString(String name, RuntimeVal value) {
+        if (!(value instanceof StringVal)) {
+            wrongType(name, "a StringVal", value);
+        }
+        return ((StringVal) value).getValue();
+    }
+
+    private static ArrayVal expectArray(String name, RuntimeVal value) {
+        if (!(value instanceof ArrayVal)) {
+            wrongType(name, "an ArrayVal", value);
+        }
+        return (ArrayVal) value;
+    }
+
+    //The stages of a sequence, or an array's elements as one
+    private static Seq expectSeq(String name, RuntimeVal value) {
+        if (value instanceof SeqVal) {
+            return ((SeqVal) value).seq();
+        }
+        return new ArraySeq(expectArray(name, value));
+    }
+
+    //An array, or a sequence materialized into one by the calling interpreter
+    private static ArrayVal expectElements(String name, RuntimeVal value, Interpreter interpreter) {
+        if (value instanceof SeqVal) {
+            return ((SeqVal) value).materialize(interpreter);
+        }
+        return expectArray(name, value);
+    }
+
+    private static void wrongType(String name, String expected, RuntimeVal value) {
+        System.err.println("Type Error: " + name + " expects " + expected + ", got " + value.getClass().getSimpleName());
+        System.exit(1);
+    }
+}
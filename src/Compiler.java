@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* =================================================================== //
+    INSTRUCTION SET FOR THE STACK VM. EACH OPCODE IS FOLLOWED IN THE
+    CODE ARRAY BY THE NUMBER OF int OPERANDS NOTED BESIDE IT.
+// =================================================================== */
+final class Opcodes {
+    static final int CONST = 0; //          index into the constant pool
+    static final int LOAD = 1; //           depth, slot
+    static final int STORE = 2; //          depth, slot (value stays on the stack)
+    static final int DEFINE = 3; //         slot (value stays on the stack)
+    static final int POP = 4;
+    static final int ADD = 5;
+    static final int SUBTRACT = 6;
+    static final int MULTIPLY = 7;
+    static final int DIVIDE = 8;
+    static final int MODULO = 9;
+    static final int POWER = 10;
+    static final int EQUALS = 11;
+    static final int NOTEQUALS = 12;
+    static final int LESSER = 13;
+    static final int GREATER = 14;
+    static final int NEGATE = 15;
+    static final int NOT = 16;
+    static final int JUMP_IF_FALSE = 17; // target; jumps if the bool on top is false, leaving it there
+    static final int JUMP_IF_TRUE = 18; //  target; jumps if the bool on top is true, leaving it there
+    static final int CHECK_BOOL = 19; //    1 for "&&", 0 for "||"; type checks the top of the stack
+    static final int ARRAY = 20; //         element count
+    static final int FREEZE = 21; //        replaces a mutable array on top with its persistent copy
+    static final int RETURN = 22;
+
+    //Source operator for each arithmetic opcode, used when the VM falls back to the Interpreter's semantics
+    static final Operator[] OPERATORS = new Operator[RETURN + 1];
+    //Opcode for each Operator, by ordinal; -1 for operators compiled to jumps
+    private static final int[] OPCODES = new int[Operator.values().length];
+    static {
+        OPERATORS[ADD] = Operator.ADD;
+        OPERATORS[SUBTRACT] = Operator.SUBTRACT;
+        OPERATORS[MULTIPLY] = Operator.MULTIPLY;
+        OPERATORS[DIVIDE] = Operator.DIVIDE;
+        OPERATORS[MODULO] = Operator.MODULO;
+        OPERATORS[POWER] = Operator.POWER;
+        OPERATORS[EQUALS] = Operator.EQUALS;
+        OPERATORS[NOTEQUALS] = Operator.NOTEQUALS;
+        OPERATORS[LESSER] = Operator.LESSER;
+        OPERATORS[GREATER] = Operator.GREATER;
+        OPERATORS[NEGATE] = Operator.NEGATE;
+        OPERATORS[NOT] = Operator.NOT;
+
+        Arrays.fill(OPCODES, -1);
+        for (int op = ADD; op <= NOT; op++) {
+            OPCODES[OPERATORS[op].ordinal()] = op;
+        }
+    }
+
+    private Opcodes() {
+    }
+
+    static int of(Operator operator) {
+        return OPCODES[operator.ordinal()];
+    }
+}
+
+//A compiled program: instructions, the constants they refer to and the deepest operand stack they need
+class Chunk {
+    final int[] code;
+    final RuntimeVal[] constants;
+    final int maxStack;
+
+    Chunk(int[] code, RuntimeVal[] constants, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.maxStack = maxStack;
+    }
+}
+
+/* =================================================================== //
+      COMPILES A RESOLVED Program TO A Chunk. RETURNS NULL FOR ANY NODE
+      THE VM DOES NOT SUPPORT, SO CALLERS CAN FALL BACK TO THE INTERPRETER.
+// =================================================================== */
+class Compiler {
+    private int[] code;
+    private int size;
+    private List<RuntimeVal> constants;
+    private int depth;
+    private int maxDepth;
+    private boolean supported;
+
+    public Chunk compile(Program program) {
+        this.code = new int[64];
+        this.size = 0;
+        this.constants = new ArrayList<>();
+        this.depth = 0;
+        this.maxDepth = 0;
+        this.supported = true;
+
+        List<Stmt> body = program.getBody();
+        if (body.isEmpty()) {
+            emitConstant(NullVal.NULL);
+        }
+        for (int i = 0; i < body.size() && supported; i++) {
+            compileStmt(body.get(i));
+            //Only the last statement's value is the program's result
+            if (i < body.size() - 1) {
+                emit(Opcodes.POP, -1);
+            }
+        }
+        emit(Opcodes.RETURN, -1);
+        if (!supported) {
+            return null;
+        }
+        return new Chunk(Arrays.copyOf(code, size), constants.toArray(new RuntimeVal[0]), maxDepth);
+    }
+
+    /* =================================================================== //
+                                   EMITTING
+    // =================================================================== */
+    //Emit one opcode; stackEffect is how much it changes the operand stack depth
+    private void emit(int op, int stackEffect, int... operands) {
+        if (size + 1 + operands.length > code.length) {
+            code = Arrays.copyOf(code, code.length * 2 + operands.length);
+        }
+        code[size++] = op;
+        for (int operand : operands) {
+            code[size++] = operand;
+        }
+        depth += stackEffect;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    private void emitConstant(RuntimeVal value) {
+        constants.add(value);
+        emit(Opcodes.CONST, 1, constants.size() - 1);
+    }
+
+    private void patchJump(int operandIndex) {
+        code[operandIndex] = size;
+    }
+
+    /* =================================================================== //
+                                   COMPILING
+    // =================================================================== */
+    private void compileStmt(Stmt node) {
+        switch (node.kind) {
+            case INTLITERAL -> emitConstant(((IntLiteral) node).getRuntimeValue());
+            case FLOATLITERAL -> emitConstant(((FloatLiteral) node).getRuntimeValue());
+            case BOOLLITERAL -> emitConstant(((BoolLiteral) node).getRuntimeValue());
+            case NULLLITERAL -> emitConstant(NullVal.NULL);
+            case IDENTIFIER -> {
+                Identifier identifier = (Identifier) node;
+                emit(Opcodes.LOAD, 1, identifier.getDepth(), identifier.getSlot());
+            }
+            case VARIABLEDECLARATION -> {
+                VariableDeclaration declaration = (VariableDeclaration) node;
+                if (declaration.getValue() != null) {
+                    compileStmt(declaration.getValue());
+                } else {
+                    emitConstant(NullVal.NULL);
+                }
+                if (declaration.isConstant()) {
+                    emit(Opcodes.FREEZE, 0);
+                }
+                emit(Opcodes.DEFINE, 0, declaration.getIdentifier().getSlot());
+            }
+            case ASSIGNMENTEXPR -> {
+                AssignmentExpr assignment = (AssignmentExpr) node;
+                if (!(assignment.getAssignee() instanceof Identifier)) {
+                    supported = false;
+                    return;
+                }
+                Identifier target = (Identifier) assignment.getAssignee();
+                compileStmt(assignment.getValue());
+                emit(Opcodes.STORE, 0, target.getDepth(), target.getSlot());
+            }
+            case BINARYEXPR -> compileBinaryExpr((BinaryExpr) node);
+            case UNARYEXPR -> {
+                UnaryExpr unary = (UnaryExpr) node;
+                compileStmt(unary.getOperand());
+                emit(Opcodes.of(unary.getOperator()), 0);
+            }
+            case ARRAYLITERAL -> {
+                List<Expr> values = ((ArrayLiteral) node).getValues();
+                for (Expr value : values) {
+                    compileStmt(value);
+                }
+                emit(Opcodes.ARRAY, 1 - values.size(), values.size());
+            }
+            default -> supported = false;
+        }
+    }
+
+    private void compileBinaryExpr(BinaryExpr binaryExpr) {
+        Operator operator = binaryExpr.getOperator();
+        compileStmt(binaryExpr.getLeft());
+        if (operator == Operator.AND || operator == Operator.OR) {
+            //Short-circuit: the left bool is the result if it decides the outcome, otherwise the right one is
+            emit(operator == Operator.AND ? Opcodes.JUMP_IF_FALSE : Opcodes.JUMP_IF_TRUE, 0, -1);
+            int jump = size - 1;
+            emit(Opcodes.POP, -1);
+            compileStmt(binaryExpr.getRight());
+            emit(Opcodes.CHECK_BOOL, 0, operator == Operator.AND ? 1 : 0);
+            patchJump(jump);
+            return;
+        }
+        int op = Opcodes.of(operator);
+        if (op < 0) {
+            supported = false;
+            return;
+        }
+        compileStmt(binaryExpr.getRight());
+        emit(op, -1);
+    }
+}
@@ -1,63 +1,167 @@
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
+/*
+ * A runtime frame. Variables are addressed by the (depth, slot) pairs the
+ * Resolver assigns, so a lookup is a walk of 'depth' parents and an array load.
+ * Names, redeclaration and constness are all checked by the Resolver.
+ */
 public class Environment {
 
+    //Tags for slots the TaggedVM keeps unboxed; a REF slot's value is in 'slots', any other is in 'raw'
+    static final byte REF = 0;
+    static final byte INT = 1;
+    static final byte FLOAT = 2; //Float.floatToRawIntBits of the value
+
     private final Environment parent;
-    private final Map<String, RuntimeVal> variables;
-    private final Set<String> constants;
+    //Set on the views parallel tasks read their enclosing frames through
+    private final boolean readOnly;
+    //The frame a view reads; read through rather than copied, since growing a frame or unboxing a slot swaps its arrays
+    private final Environment source;
+    //The parallel task's interpreter whose call created this frame, which that task may write; otherwise null
+    private final Interpreter owner;
+    private RuntimeVal[] slots;
+    //Allocated the first time a slot is stored unboxed, so other engines never pay for them
+    private byte[] tags;
+    private long[] raw;
 
     public Environment() {
         this(null);
     }
 
     public Environment(Environment parentENV) {
+        this(parentENV, 8);
+    }
+
+    public Environment(Environment parentENV, int size) {
+        this(parentENV, size, null);
+    }
+
+    Environment(Environment parentENV, int size, Interpreter owner) {
         this.parent = parentENV;
-        this.variables = new HashMap<>();
-        this.constants = new HashSet<>();
+        this.readOnly = false;
+        this.source = null;
+        this.owner = owner;
+        this.slots = new RuntimeVal[Math.max(size, 1)];
+    }
+
+    //A view reading this frame's slots that rejects writes; 'parentView' stands in for this frame's parent
+    private Environment(Environment source, Environment parentView) {
+        this.parent = parentView;
+        this.readOnly = true;
+        this.source = source;
+        this.owner = null;
+    }
+
+    Environment readOnlyView(Environment parentView) {
+        return new Environment(this, parentView);
     }
 
-    public RuntimeVal declareVar(String varName, RuntimeVal value, boolean constant) {
-        if (this.variables.containsKey(varName)) {
-            System.err.println("Cannot declare variable with name: "
-                    + varName + ". It is already defined.");
-            System.exit(1);
+    Environment parent() {
+        return parent;
+    }
+
+    Interpreter owner() {
+        return owner;
+    }
+
+    public RuntimeVal declareVar(int slot, RuntimeVal value) {
+        this.grow(slot + 1);
+        this.set(slot, value);
+        return value;
+    }
+
+    //The backing array, grown to hold at least 'size' slots; compiled code reads and writes it directly
+    RuntimeVal[] frame(int size) {
+        this.grow(size);
+        //Callers only understand boxed slots
+        if (tags != null) {
+            for (int slot = 0; slot < tags.length; slot++) {
+                slots[slot] = this.get(slot);
+                tags[slot] = REF;
+            }
         }
+        return slots;
+    }
 
-        this.variables.put(varName, value);
-        if (constant) {
-            this.constants.add(varName);
+    private void grow(int size) {
+        //The global frame keeps growing as REPL lines declare more variables
+        if (size > slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slots.length * 2, size));
+            if (tags != null) {
+                tags = Arrays.copyOf(tags, slots.length);
+                raw = Arrays.copyOf(raw, slots.length);
+            }
         }
+    }
+
+    public RuntimeVal lookupVar(int depth, int slot) {
+        return this.ancestor(depth).get(slot);
+    }
+
+    public RuntimeVal assignVar(int depth, int slot, RuntimeVal value) {
+        this.ancestor(depth).set(slot, value);
         return value;
     }
 
-    public RuntimeVal lookupVar(String varName) {
-        Environment env = this.resolve(varName);
-        return env.variables.get(varName);
+    //Boxed value of a slot in this frame
+    RuntimeVal get(int slot) {
+        if (source != null) {
+            return source.get(slot);
+        }
+        if (tags == null || tags[slot] == REF) {
+            return slots[slot];
+        }
+        return tags[slot] == INT ? IntVal.of((int) raw[slot]) : new FloatVal(Float.intBitsToFloat((int) raw[slot]));
     }
 
-    public RuntimeVal assignVar(String varName, RuntimeVal value) {
-        Environment env = this.resolve(varName);
+    void set(int slot, RuntimeVal value) {
+        if (readOnly) {
+            readOnlyError();
+        }
+        slots[slot] = value;
+        if (tags != null) {
+            tags[slot] = REF;
+        }
+    }
 
-        if (env.constants.contains(varName)) {
-            System.err.println("Error: Unable to reassign variable " + varName + "; variable a constant value.");
-            System.exit(1);
+    byte tag(int slot) {
+        if (source != null) {
+            return source.tag(slot);
         }
+        return tags == null ? REF : tags[slot];
+    }
 
-        env.variables.put(varName, value);
-        return value;
+    long raw(int slot) {
+        return source != null ? source.raw(slot) : raw[slot];
+    }
+
+    //Store an unboxed INT or FLOAT; 'size' is the frame size a DEFINE needs, or 0 for a plain store
+    void setRaw(int slot, byte tag, long value, int size) {
+        if (readOnly) {
+            readOnlyError();
+        }
+        this.grow(size);
+        if (tags == null) {
+            tags = new byte[slots.length];
+            raw = new long[slots.length];
+        }
+        slots[slot] = null;
+        tags[slot] = tag;
+        raw[slot] = value;
     }
 
-    public Environment resolve(String varName) {
-        if (this.variables.containsKey(varName))
-            return this;
+    //Synchronized: when several tasks fail at once, the first prints the error and exits while the rest wait
+    private static synchronized void readOnlyError() {
+        System.err.println("Error: Functions run by pmap, pfilter, preduce or psort cannot assign variables "
+                + "outside their own body");
+        System.exit(1);
+    }
 
-        if (this.parent == null) {
-            System.err.println("Could not resolve " + varName + "; a variable with this name does not exist.");
-            System.exit(1);
+    public Environment ancestor(int depth) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) {
+            env = env.parent;
         }
-        return this.parent.resolve(varName);
+        return env;
     }
-}
\ No newline at end of file
+}
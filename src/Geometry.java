@@ -0,0 +1,371 @@
+import java.util.Arrays;
+
+/* =================================================================== //
+     POINTS AND VECTORS, IN 2D OR 3D, WITH DOUBLE COORDINATES HELD IN
+     PRIMITIVE FIELDS. BOTH ARE IMMUTABLE VALUES, EQUAL WHEN THEIR
+     COORDINATES ARE. ARITHMETIC FOLLOWS AFFINE GEOMETRY:
+
+         point + vec, vec + point, point - vec  ->  point
+         point - point, vec + vec, vec - vec    ->  vec
+         vec * number, number * vec, vec / number, -vec  ->  vec
+
+     ANYTHING ELSE, OR MIXING 2D WITH 3D, IS AN ERROR. COORDINATES ARE
+     READ AS p.x, p.y AND p.z, AS FLOATS LIKE EVERY OTHER NUMBER.
+
+     AN ARRAY WHOSE ELEMENTS ARE ALL POINTS, OR ALL VECTORS, OF ONE
+     DIMENSION PACKS THEIR COORDINATES INTO A SINGLE double[] (SEE
+     PointStorage), AND ARITHMETIC BETWEEN SUCH ARRAYS AND A POINT,
+     VECTOR OR NUMBER RUNS OVER THAT ARRAY WITHOUT BOXING ANY ELEMENT.
+// =================================================================== */
+abstract class GeomVal extends RuntimeVal {
+    final int dims;
+    final double x;
+    final double y;
+    final double z; //0 in 2D
+
+    GeomVal(ValueType type, int dims, double x, double y, double z) {
+        super(type);
+        this.dims = dims;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    static GeomVal of(boolean vector, int dims, double x, double y, double z) {
+        return vector ? new VecVal(dims, x, y, z) : new PointVal(dims, x, y, z);
+    }
+
+    abstract boolean isVector();
+
+    double coordinate(int axis) {
+        return axis == 0 ? x : axis == 1 ? y : z;
+    }
+
+    //p.x, p.y or p.z
+    RuntimeVal property(String key) {
+        int axis = switch (key) {
+            case "x" -> 0;
+            case "y" -> 1;
+            case "z" -> 2;
+            default -> dims;
+        };
+        if (axis >= dims) {
+            System.err.println("Reference Error: " + this.getClass().getSimpleName() + " has no property " + key);
+            System.exit(1);
+        }
+        return new FloatVal((float) this.coordinate(axis));
+    }
+
+    boolean sameAs(GeomVal other) {
+        return this.isVector() == other.isVector() && dims == other.dims
+                && x == other.x && y == other.y && z == other.z;
+    }
+
+    @Override
+    public String toString() {
+        String name = this.isVector() ? "vec(" : "point(";
+        return name + x + ", " + y + (dims == 3 ? ", " + z : "") + ")";
+    }
+}
+
+final class PointVal extends GeomVal {
+    PointVal(int dims, double x, double y, double z) {
+        super(ValueType.POINT, dims, x, y, z);
+    }
+
+    @Override
+    boolean isVector() {
+        return false;
+    }
+}
+
+final class VecVal extends GeomVal {
+    VecVal(int dims, double x, double y, double z) {
+        super(ValueType.VECTOR, dims, x, y, z);
+    }
+
+    @Override
+    boolean isVector() {
+        return true;
+    }
+}
+
+/* =================================================================== //
+                                  ARITHMETIC
+// =================================================================== */
+final class Geometry {
+    private Geometry() {
+    }
+
+    //What an operand is, for deciding the result of an operation once per array rather than per element
+    enum Operand { POINT, VECTOR, NUMBER }
+
+    //'operator' applied to points, vectors and numbers, at least one of them geometric; null if unsupported
+    static RuntimeVal apply(RuntimeVal LHS, RuntimeVal RHS, Operator operator) {
+        Operand result = result(operand(LHS), operand(RHS), operator);
+        if (result == null) {
+            return null;
+        }
+        int dims = sameDims(dims(LHS), dims(RHS), operator);
+        if (operator == Operator.DIVIDE && number(RHS) == 0) {
+            divisionByZero(LHS);
+        }
+        double[] out = new double[3];
+        for (int axis = 0; axis < dims; axis++) {
+            out[axis] = combine(coordinate(LHS, axis), coordinate(RHS, axis), operator);
+        }
+        return GeomVal.of(result == Operand.VECTOR, dims, out[0], out[1], out[2]);
+    }
+
+    static VecVal negate(VecVal vector) {
+        return new VecVal(vector.dims, -vector.x, -vector.y, -vector.z);
+    }
+
+    /*
+     * Elementwise arithmetic where at least one side is a packed point array and the other a packed array of
+     * the same size, a point, a vector or a number; null if the operands are anything else, so the caller
+     * can fall back to combining boxed elements.
+     */
+    static ArrayVal applyPacked(RuntimeVal LHS, RuntimeVal RHS, Operator operator, int size) {
+        PointStorage left = packed(LHS);
+        PointStorage right = packed(RHS);
+        if (left == null && right == null) {
+            return null;
+        }
+        //Any other array on the other side is combined element by element
+        if ((left == null && LHS instanceof ArrayVal) || (right == null && RHS instanceof ArrayVal)) {
+            return null;
+        }
+        Operand result = result(left != null ? left.operand() : operand(LHS),
+                right != null ? right.operand() : operand(RHS), operator);
+        if (result == null) {
+            return null;
+        }
+        int dims = sameDims(left != null ? left.dims() : dims(LHS), right != null ? right.dims() : dims(RHS), operator);
+        double[] a = left != null ? left.coords() : null;
+        double[] b = right != null ? right.coords() : null;
+        double[] out = new double[size * dims];
+        for (int i = 0; i < size; i++) {
+            for (int axis = 0; axis < dims; axis++) {
+                int at = i * dims + axis;
+                double divisor = b != null ? b[at] : coordinate(RHS, axis);
+                if (operator == Operator.DIVIDE && divisor == 0) {
+                    divisionByZero(((ArrayVal) LHS).get(i));
+                }
+                out[at] = combine(a != null ? a[at] : coordinate(LHS, axis), divisor, operator);
+            }
+        }
+        return new ArrayVal(new PointStorage(result == Operand.VECTOR, dims, out, size));
+    }
+
+    private static Operand operand(RuntimeVal value) {
+        if (value instanceof PointVal) {
+            return Operand.POINT;
+        } else if (value instanceof VecVal) {
+            return Operand.VECTOR;
+        } else if (value instanceof IntVal || value instanceof FloatVal) {
+            return Operand.NUMBER;
+        }
+        return null;
+    }
+
+    private static Operand result(Operand left, Operand right, Operator operator) {
+        if (left == null || right == null) {
+            return null;
+        }
+        switch (operator) {
+            case ADD:
+                if (left == Operand.NUMBER || right == Operand.NUMBER) {
+                    return null;
+                }
+                return left == Operand.POINT && right == Operand.POINT ? null
+                        : left == Operand.POINT || right == Operand.POINT ? Operand.POINT : Operand.VECTOR;
+            case SUBTRACT:
+                if (left == Operand.NUMBER || right == Operand.NUMBER || (left == Operand.VECTOR && right == Operand.POINT)) {
+                    return null;
+                }
+                return left == right ? Operand.VECTOR : Operand.POINT;
+            case MULTIPLY:
+                return (left == Operand.VECTOR && right == Operand.NUMBER)
+                        || (left == Operand.NUMBER && right == Operand.VECTOR) ? Operand.VECTOR : null;
+            case DIVIDE:
+                return left == Operand.VECTOR && right == Operand.NUMBER ? Operand.VECTOR : null;
+            default:
+                return null;
+        }
+    }
+
+    private static double combine(double a, double b, Operator operator) {
+        return switch (operator) {
+            case ADD -> a + b;
+            case SUBTRACT -> a - b;
+            case MULTIPLY -> a * b;
+            default -> a / b;
+        };
+    }
+
+    //A geometric operand's coordinate, or a number, which applies to every axis
+    private static double coordinate(RuntimeVal value, int axis) {
+        return value instanceof GeomVal ? ((GeomVal) value).coordinate(axis) : number(value);
+    }
+
+    private static double number(RuntimeVal value) {
+        if (value instanceof IntVal) {
+            return ((IntVal) value).getValue();
+        }
+        return value instanceof FloatVal ? ((FloatVal) value).getValue() : Double.NaN;
+    }
+
+    //Dimension of a geometric operand; 0 for a number, which fits either
+    private static int dims(RuntimeVal value) {
+        return value instanceof GeomVal ? ((GeomVal) value).dims : 0;
+    }
+
+    private static int sameDims(int a, int b, Operator operator) {
+        if (a != 0 && b != 0 && a != b) {
+            System.err.println("Value Error: Cannot combine " + a + "D and " + b + "D values with \""
+                    + operator.getSymbol() + "\"");
+            System.exit(1);
+        }
+        return Math.max(a, b);
+    }
+
+    //x0, y0, (z0,) x1, ... of an array of 'dims'-dimensional points; a packed array's own, which are only read
+    static double[] coordinates(String name, ArrayVal points, int dims) {
+        PointStorage storage = packed(points);
+        if (storage != null && !storage.vectors() && storage.dims() == dims) {
+            return storage.coords();
+        }
+        double[] coords = new double[points.size() * dims];
+        for (int i = 0; i < points.size(); i++) {
+            RuntimeVal value = points.get(i);
+            if (!(value instanceof PointVal) || ((PointVal) value).dims != dims) {
+                System.err.println("Type Error: " + name + " expects an array of " + dims + "D points, got " + value);
+                System.exit(1);
+            }
+            for (int axis = 0; axis < dims; axis++) {
+                coords[i * dims + axis] = ((PointVal) value).coordinate(axis);
+            }
+        }
+        return coords;
+    }
+
+    private static PointStorage packed(RuntimeVal value) {
+        if (value instanceof ArrayVal && ((ArrayVal) value).storage() instanceof PointStorage) {
+            return (PointStorage) ((ArrayVal) value).storage();
+        }
+        return null;
+    }
+
+    private static void divisionByZero(RuntimeVal dividend) {
+        System.err.println("Arithmetic Error: Division by zero. " + dividend + " / 0");
+        System.exit(1);
+    }
+
+    /* =================================================================== //
+                                   PRODUCTS
+    // =================================================================== */
+    static double dot(VecVal a, VecVal b) {
+        sameDims(a.dims, b.dims, Operator.MULTIPLY);
+        return a.x * b.x + a.y * b.y + a.z * b.z;
+    }
+
+    //The z component in 2D, where the cross product is a number; a vector in 3D
+    static RuntimeVal cross(VecVal a, VecVal b) {
+        sameDims(a.dims, b.dims, Operator.MULTIPLY);
+        if (a.dims == 2) {
+            return new FloatVal((float) (a.x * b.y - a.y * b.x));
+        }
+        return new VecVal(3, a.y * b.z - a.z * b.y, a.z * b.x - a.x * b.z, a.x * b.y - a.y * b.x);
+    }
+
+    static double length(VecVal v) {
+        return Math.sqrt(v.x * v.x + v.y * v.y + v.z * v.z);
+    }
+}
+
+/* =================================================================== //
+     ArrayVal STORAGE FOR POINTS OR VECTORS OF ONE DIMENSION: ELEMENT i
+     IS coords[i * dims] TO coords[i * dims + dims - 1]. ANY OTHER
+     ELEMENT GENERALIZES IT TO OBJECT STORAGE.
+// =================================================================== */
+final class PointStorage extends ArrayStorage {
+    private final boolean vectors;
+    private final int dims;
+    private double[] coords;
+    private int size;
+
+    PointStorage(boolean vectors, int dims, double[] coords, int size) {
+        this.vectors = vectors;
+        this.dims = dims;
+        this.coords = coords;
+        this.size = size;
+    }
+
+    boolean vectors() {
+        return vectors;
+    }
+
+    Geometry.Operand operand() {
+        return vectors ? Geometry.Operand.VECTOR : Geometry.Operand.POINT;
+    }
+
+    int dims() {
+        return dims;
+    }
+
+    //The coordinates themselves; only the first size() * dims() are in use
+    double[] coords() {
+        return coords;
+    }
+
+    @Override
+    Kind kind() {
+        return Kind.POINT;
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    RuntimeVal get(int index) {
+        int at = index * dims;
+        return GeomVal.of(vectors, dims, coords[at], coords[at + 1], dims == 3 ? coords[at + 2] : 0);
+    }
+
+    @Override
+    ArrayStorage set(int index, RuntimeVal value) {
+        if (!this.fits(value)) {
+            return this.generalize().set(index, value);
+        }
+        this.write(index, (GeomVal) value);
+        return this;
+    }
+
+    @Override
+    ArrayStorage add(RuntimeVal value) {
+        if (!this.fits(value)) {
+            return this.generalize().add(value);
+        }
+        if ((size + 1) * dims > coords.length) {
+            coords = Arrays.copyOf(coords, grow(coords.length / dims) * dims);
+        }
+        this.write(size++, (GeomVal) value);
+        return this;
+    }
+
+    private boolean fits(RuntimeVal value) {
+        return value instanceof GeomVal && ((GeomVal) value).isVector() == vectors && ((GeomVal) value).dims == dims;
+    }
+
+    private void write(int index, GeomVal value) {
+        int at = index * dims;
+        coords[at] = value.x;
+        coords[at + 1] = value.y;
+        if (dims == 3) {
+            coords[at + 2] = value.z;
+        }
+    }
+}
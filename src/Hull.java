@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/* =================================================================== //
+     hull(points): THE CONVEX HULL OF AN ARRAY OF 2D POINTS, AS A PACKED
+     POINT ARRAY OF ITS VERTICES IN COUNTER-CLOCKWISE ORDER, STARTING AT
+     THE LOWEST x (THEN THE LOWEST y). POINTS ON AN EDGE AND REPEATED
+     POINTS ARE NOT VERTICES.
+
+     BELOW THRESHOLD POINTS THIS IS ANDREW'S MONOTONE CHAIN: SORT A COPY
+     OF THE COORDINATES BY x THEN y, THEN ONE PASS EACH FOR THE LOWER AND
+     THE UPPER CHAIN. SORTING THE COORDINATES THEMSELVES RATHER THAN
+     INDICES TO THEM KEEPS EVERY PASS READING MEMORY IN ORDER. LARGER
+     INPUTS RUN IN PIECES ON Parallel's POOL FIRST:
+
+       1. AKL-TOUSSAINT: THE POINTS EXTREME IN x, y, x + y AND x - y
+          SPAN A POLYGON INSIDE THE HULL, AND EVERY POINT STRICTLY
+          INSIDE IT IS DROPPED. UNIFORM INPUTS KEEP WELL UNDER 1%.
+       2. THE SURVIVORS ARE SORTED BY A PARALLEL MERGE SORT.
+       3. THE SORTED SURVIVORS ARE CUT INTO STRIPS AND THE STRIPS'
+          HULLS ARE FOUND IN PARALLEL; THE MONOTONE CHAIN THEN RUNS
+          OVER THEIR VERTICES ONLY.
+
+     TURNS ARE DECIDED BY THE EXACT orient2d PREDICATE, SO NEARLY
+     COLLINEAR POINTS NEVER MAKE A WRONG TURN. THE HULL IS THE SAME ON
+     ANY NUMBER OF CORES.
+
+     TUNING:
+         -Dtwofive.hull.threshold=N  SMALLEST INPUT HULLED IN PARALLEL (50000)
+// =================================================================== */
+final class Hull {
+    static final int THRESHOLD = Integer.getInteger("twofive.hull.threshold", 50_000);
+    //Fewest points worth a piece of their own, and the largest run the merge sort sorts on one thread
+    private static final int MIN_PIECE = 8192;
+    //Runs this short are sorted by insertion
+    private static final int INSERTION = 32;
+
+    private Hull() {
+    }
+
+    static ArrayVal hull(ArrayVal points) {
+        double[] coords = Geometry.coordinates("hull", points, 2);
+        int size = points.size();
+        double[] sorted;
+        if (size == 0 || size < THRESHOLD) {
+            sorted = Arrays.copyOf(coords, 2 * size);
+            sort(sorted, new double[2 * size], 0, size);
+        } else {
+            sorted = candidates(coords, size);
+        }
+        int[] vertices = chain(sorted, 0, sorted.length / 2);
+        double[] out = new double[vertices.length * 2];
+        for (int i = 0; i < vertices.length; i++) {
+            out[2 * i] = sorted[2 * vertices[i]];
+            out[2 * i + 1] = sorted[2 * vertices[i] + 1];
+        }
+        return new ArrayVal(new PointStorage(false, 2, out, vertices.length));
+    }
+
+    /* =================================================================== //
+                                PARALLEL STEPS
+    // =================================================================== */
+    //The coordinates of the points that may be vertices, sorted
+    private static double[] candidates(double[] c, int size) {
+        double[] polygon = enclosed(c, size);
+        double[] s = polygon.length < 8 ? Arrays.copyOf(c, 2 * size) : outside(c, size, polygon);
+
+        int count = s.length / 2;
+        Parallel.POOL.invoke(new SortTask(s, new double[s.length], 0, count));
+
+        //Only a strip's own hull vertices can be vertices of the whole hull
+        boolean[] vertex = new boolean[count];
+        Parallel.inPieces(count, MIN_PIECE, (piece, from, to) -> {
+            for (int i : chain(s, from, to)) {
+                vertex[i] = true;
+            }
+        });
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (vertex[i]) {
+                s[2 * kept] = s[2 * i];
+                s[2 * kept + 1] = s[2 * i + 1];
+                kept++;
+            }
+        }
+        return Arrays.copyOf(s, 2 * kept);
+    }
+
+    //Step 1: the hull of the points with the least and greatest x, y, x + y and x - y, as closed polygon coordinates
+    private static double[] enclosed(double[] c, int size) {
+        int[][] extremes = new int[Parallel.pieces(size, MIN_PIECE)][];
+        Parallel.inPieces(size, MIN_PIECE, (piece, from, to) -> {
+            int[] best = new int[8];
+            double[] keys = new double[8];
+            Arrays.fill(best, from);
+            for (int k = 0; k < 4; k++) {
+                keys[2 * k] = keys[2 * k + 1] = key(c, from, k);
+            }
+            for (int i = from + 1; i < to; i++) {
+                for (int k = 0; k < 4; k++) {
+                    double key = key(c, i, k);
+                    if (key < keys[2 * k]) {
+                        keys[2 * k] = key;
+                        best[2 * k] = i;
+                    } else if (key > keys[2 * k + 1]) {
+                        keys[2 * k + 1] = key;
+                        best[2 * k + 1] = i;
+                    }
+                }
+            }
+            extremes[piece] = best;
+        });
+        int[] corners = extremes[0].clone();
+        for (int[] best : extremes) {
+            for (int k = 0; k < 4; k++) {
+                if (key(c, best[2 * k], k) < key(c, corners[2 * k], k)) {
+                    corners[2 * k] = best[2 * k];
+                }
+                if (key(c, best[2 * k + 1], k) > key(c, corners[2 * k + 1], k)) {
+                    corners[2 * k + 1] = best[2 * k + 1];
+                }
+            }
+        }
+        double[] s = new double[2 * corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            s[2 * i] = c[2 * corners[i]];
+            s[2 * i + 1] = c[2 * corners[i] + 1];
+        }
+        sort(s, new double[s.length], 0, corners.length);
+        int[] vertices = chain(s, 0, corners.length);
+        double[] polygon = new double[2 * vertices.length + 2];
+        for (int i = 0; i <= vertices.length; i++) {
+            polygon[2 * i] = s[2 * vertices[i % vertices.length]];
+            polygon[2 * i + 1] = s[2 * vertices[i % vertices.length] + 1];
+        }
+        return polygon;
+    }
+
+    //x, y, x + y or x - y of point i
+    private static double key(double[] c, int i, int k) {
+        double x = c[2 * i];
+        double y = c[2 * i + 1];
+        return k == 0 ? x : k == 1 ? y : k == 2 ? x + y : x - y;
+    }
+
+    //Step 1, continued: the coordinates of the points not strictly inside the counter-clockwise polygon
+    private static double[] outside(double[] c, int size, double[] polygon) {
+        double[][] kept = new double[Parallel.pieces(size, MIN_PIECE)][];
+        Parallel.inPieces(size, MIN_PIECE, (piece, from, to) -> {
+            double[] s = new double[2 * (to - from)];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (!inside(polygon, c[2 * i], c[2 * i + 1])) {
+                    s[2 * count] = c[2 * i];
+                    s[2 * count + 1] = c[2 * i + 1];
+                    count++;
+                }
+            }
+            kept[piece] = Arrays.copyOf(s, 2 * count);
+        });
+        int total = 0;
+        for (double[] s : kept) {
+            total += s.length;
+        }
+        double[] survivors = new double[total];
+        int at = 0;
+        for (double[] s : kept) {
+            System.arraycopy(s, 0, survivors, at, s.length);
+            at += s.length;
+        }
+        return survivors;
+    }
+
+    //The polygon's first vertex is repeated after its last, so edge k runs from vertex k to vertex k + 1
+    private static boolean inside(double[] polygon, double x, double y) {
+        for (int k = 0; k + 3 < polygon.length; k += 2) {
+            if (orient(polygon[k], polygon[k + 1], polygon[k + 2], polygon[k + 3], x, y) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Step 2: halves sorted in parallel, then merged
+    private static final class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] s;
+        private final double[] buffer;
+        private final int from;
+        private final int to;
+
+        SortTask(double[] s, double[] buffer, int from, int to) {
+            this.s = s;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_PIECE) {
+                sort(s, buffer, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            SortTask left = new SortTask(s, buffer, from, middle);
+            left.fork();
+            new SortTask(s, buffer, middle, to).compute();
+            left.join();
+            merge(s, buffer, from, middle, to);
+        }
+    }
+
+    /* =================================================================== //
+             SORT AND CHAIN, OVER POINTS i = from .. to - 1 OF A
+             COORDINATE ARRAY s: x AT s[2 * i] AND y AT s[2 * i + 1]
+    // =================================================================== */
+    //Merge sort by x then y; buffer is scratch space of the same length as s
+    private static void sort(double[] s, double[] buffer, int from, int to) {
+        if (to - from <= INSERTION) {
+            for (int i = from + 1; i < to; i++) {
+                double x = s[2 * i];
+                double y = s[2 * i + 1];
+                int j = i;
+                while (j > from && before(x, y, s, j - 1)) {
+                    s[2 * j] = s[2 * j - 2];
+                    s[2 * j + 1] = s[2 * j - 1];
+                    j--;
+                }
+                s[2 * j] = x;
+                s[2 * j + 1] = y;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(s, buffer, from, middle);
+        sort(s, buffer, middle, to);
+        merge(s, buffer, from, middle, to);
+    }
+
+    private static void merge(double[] s, double[] buffer, int from, int middle, int to) {
+        if (!before(s[2 * middle], s[2 * middle + 1], s, middle - 1)) {
+            return; //Already in order
+        }
+        System.arraycopy(s, 2 * from, buffer, 2 * from, 2 * (to - from));
+        int i = from;
+        int j = middle;
+        for (int at = from; at < to; at++) {
+            int next = j == to || (i < middle && !before(buffer[2 * j], buffer[2 * j + 1], buffer, i)) ? i++ : j++;
+            s[2 * at] = buffer[2 * next];
+            s[2 * at + 1] = buffer[2 * next + 1];
+        }
+    }
+
+    //Whether (x, y) sorts before point i
+    private static boolean before(double x, double y, double[] s, int i) {
+        return x < s[2 * i] || (x == s[2 * i] && y < s[2 * i + 1]);
+    }
+
+    private static boolean same(double[] s, int a, int b) {
+        return s[2 * a] == s[2 * b] && s[2 * a + 1] == s[2 * b + 1];
+    }
+
+    //Positive if p is left of a -> b, and exactly 0 if the three are collinear
+    private static double orient(double ax, double ay, double bx, double by, double px, double py) {
+        return Predicates.orient2d(ax, ay, bx, by, px, py);
+    }
+
+    private static double orient(double[] s, int a, int b, int p) {
+        return orient(s[2 * a], s[2 * a + 1], s[2 * b], s[2 * b + 1], s[2 * p], s[2 * p + 1]);
+    }
+
+    //Andrew's monotone chain over sorted points: the hull's vertices, counter-clockwise
+    private static int[] chain(double[] s, int from, int to) {
+        if (from == to) {
+            return new int[0];
+        }
+        int[] hull = new int[2 * (to - from)];
+        int k = 0;
+        for (int i = from; i < to; i++) {
+            if (i > from && same(s, i, i - 1)) {
+                continue;
+            }
+            while (k >= 2 && orient(s, hull[k - 2], hull[k - 1], i) <= 0) {
+                k--;
+            }
+            hull[k++] = i;
+        }
+        int lower = k + 1;
+        for (int i = to - 2; i >= from; i--) {
+            if (same(s, i, i + 1)) {
+                continue;
+            }
+            while (k >= lower && orient(s, hull[k - 2], hull[k - 1], i) <= 0) {
+                k--;
+            }
+            hull[k++] = i;
+        }
+        //The upper chain ends where the lower one began; a single point has no upper chain
+        return Arrays.copyOf(hull, Math.max(1, k - 1));
+    }
+}
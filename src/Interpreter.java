@@ -1,34 +1,62 @@
-import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Interpreter {
+    //For a parallel task's interpreter, the read-only view of each frame its functions enclose; otherwise null
+    private final Map<Environment, Environment> readOnlyViews;
+
+    public Interpreter() {
+        this.readOnlyViews = null;
+    }
+
+    private Interpreter(Map<Environment, Environment> readOnlyViews) {
+        this.readOnlyViews = readOnlyViews;
+    }
+
+    //An interpreter for one parallel task, whose functions can read but not assign the variables around them
+    static Interpreter forTask() {
+        return new Interpreter(new IdentityHashMap<>());
+    }
+
+    //One switch over the node's kind, so every node type costs the same to dispatch
     public RuntimeVal evaluate(Stmt astNode, Environment env) {
-        if (astNode instanceof IntLiteral) {
-            IntLiteral intLiteral = (IntLiteral) astNode;
-            return new IntVal(intLiteral.getValue());
-        } else if (astNode instanceof FloatLiteral) {
-            FloatLiteral floatLiteral = (FloatLiteral) astNode;
-            return new FloatVal(floatLiteral.getValue());
-        } else if (astNode instanceof NullLiteral) {
-            return new NullVal();
-        } else if (astNode instanceof BoolLiteral) {
-            BoolLiteral boolLiteral = (BoolLiteral) astNode;
-            return new BoolVal(boolLiteral.getValue());
-        } else if (astNode instanceof BinaryExpr) {
-            BinaryExpr binaryExpr = (BinaryExpr) astNode;
-            return evaluateBinaryExpr(binaryExpr, env);
-        } else if (astNode instanceof Program) {
-            return evaluateProgram((Program) astNode, env);
-        } else if (astNode instanceof Identifier) {
-            return evalIdentifier((Identifier) astNode, env);
-        } else if (astNode instanceof VariableDeclaration) {
-            return evalVarDeclaration((VariableDeclaration) astNode, env);
-        } else if (astNode instanceof AssignmentExpr) {
-            return evalAssignment((AssignmentExpr) astNode, env);
-        } else if (astNode instanceof ArrayLiteral) {
-            return evalArrayExpr((ArrayLiteral) astNode, env);
-        } else {
-            System.err.println("Unknown AST Node: " + astNode.getKind());
-            System.exit(1);
+        switch (astNode.kind) {
+            case INTLITERAL:
+                return ((IntLiteral) astNode).getRuntimeValue();
+            case FLOATLITERAL:
+                return ((FloatLiteral) astNode).getRuntimeValue();
+            case NULLLITERAL:
+                return NullVal.NULL;
+            case BOOLLITERAL:
+                return ((BoolLiteral) astNode).getRuntimeValue();
+            case STRINGLITERAL:
+                return ((StringLiteral) astNode).getRuntimeValue();
+            case BINARYEXPR:
+                return evaluateBinaryExpr((BinaryExpr) astNode, env);
+            case UNARYEXPR:
+                return evaluateUnaryExpr((UnaryExpr) astNode, env);
+            case PROGRAM:
+                return evaluateProgram((Program) astNode, env);
+            case IDENTIFIER:
+                return evalIdentifier((Identifier) astNode, env);
+            case VARIABLEDECLARATION:
+                return evalVarDeclaration((VariableDeclaration) astNode, env);
+            case ASSIGNMENTEXPR:
+                return evalAssignment((AssignmentExpr) astNode, env);
+            case ARRAYLITERAL:
+                return evalArrayExpr((ArrayLiteral) astNode, env);
+            case OBJLITERAL:
+                return evalObjectExpr((ObjLiteral) astNode, env);
+            case MEMBEREXPR:
+                return evalMemberExpr((MemberExpr) astNode, env);
+            case CALLEXPR:
+                return evalCallExpr((CallExpr) astNode, env);
+            case FUNCEXPR:
+                return new FunctionVal((FuncExpr) astNode, env);
+            default:
+                System.err.println("Unknown AST Node: " + astNode.getKind());
+                System.exit(1);
         }
         return null;
     }
@@ -36,7 +64,7 @@ public class Interpreter {
     int variable;
 
     public RuntimeVal evaluateProgram(Program program, Environment env) {
-        RuntimeVal lastEvaluated = new NullVal();
+        RuntimeVal lastEvaluated = NullVal.NULL;
         for (Stmt statement : program.getBody()) {
             lastEvaluated = evaluate(statement, env);
         }
@@ -44,35 +72,230 @@ public class Interpreter {
     }
 
     public RuntimeVal evalVarDeclaration(VariableDeclaration declaration, Environment env) {
-        RuntimeVal value = (declaration.getValue() != null) ? evaluate(declaration.getValue(), env) : new NullVal();
-        return env.declareVar(declaration.identifierToString(), value, declaration.isConstant());
+        Expr initializer = declaration.getValue();
+        RuntimeVal value;
+        if (initializer == null) {
+            value = NullVal.NULL;
+        } else if (declaration.isConstant() && initializer.getKind() == NodeType.ARRAYLITERAL) {
+            //Built straight into persistent storage, without a mutable array to copy from
+            PersistentStorage.Builder builder = new PersistentStorage.Builder();
+            for (Expr element : ((ArrayLiteral) initializer).getValues()) {
+                builder.add(evaluate(element, env));
+            }
+            value = new ArrayVal(builder.build());
+        } else {
+            value = evaluate(initializer, env);
+            //A const array never changes, so it must not alias an array something else can still mutate
+            if (declaration.isConstant()) {
+                value = PersistentStorage.freeze(value);
+            }
+        }
+        return env.declareVar(declaration.getIdentifier().getSlot(), value);
     }
 
     public RuntimeVal evalArrayExpr(ArrayLiteral obj, Environment env) {
-        ArrayVal arr = new ArrayVal(new ArrayList<>());
+        //Elements are appended as they are evaluated; the storage strategy follows their types
+        ArrayVal arr = new ArrayVal();
 
         for (Expr value : obj.getValues()) {
             RuntimeVal runtimeVal = evaluate(value, env);
-            arr.values.add(runtimeVal);
+            arr.add(runtimeVal);
         }
 
         return arr;
     }
 
     public RuntimeVal evalAssignment(AssignmentExpr node, Environment env) {
+        if (node.getAssignee().getKind() == NodeType.MEMBEREXPR) {
+            return evalMemberAssignment((MemberExpr) node.getAssignee(), node.getValue(), env);
+        }
         if (node.getAssignee().getKind() != NodeType.IDENTIFIER) {
             System.err.println("Error: Invalid LHS inside assignment expression " + node.getAssignee());
             System.exit(1);
         }
 
-        String varName = ((Identifier)(node.getAssignee())).getSymbol();
-        return env.assignVar(varName, evaluate(node.getValue(), env));
+        Identifier target = (Identifier) node.getAssignee();
+        return env.assignVar(target.getDepth(), target.getSlot(), evaluate(node.getValue(), env));
+    }
+
+    //a[i] = value, obj.key = value or obj["key"] = value; assigning a key the object lacks adds it
+    private RuntimeVal evalMemberAssignment(MemberExpr target, Expr valueExpr, Environment env) {
+        RuntimeVal object = evaluate(target.getObject(), env);
+        if (object instanceof ObjectVal) {
+            ObjectVal obj = (ObjectVal) object;
+            String key = propertyKey(target, env);
+            RuntimeVal value = evaluate(valueExpr, env);
+            int slot = target.isComputed() ? obj.getShape().slotOf(key) : target.getCache().slot(obj.getShape(), key);
+            if (slot >= 0) {
+                obj.setSlot(slot, value);
+            } else {
+                obj.put(key, value);
+            }
+            return value;
+        }
+        if (object instanceof GeomVal) {
+            System.err.println("Type Error: Cannot assign a property of " + object.getClass().getSimpleName()
+                    + "; points and vectors are immutable");
+            System.exit(1);
+        }
+        ArrayVal array = expectArray(object, target);
+        int index = expectIndex(evaluate(target.getProperty(), env), array);
+        RuntimeVal value = evaluate(valueExpr, env);
+        array.set(index, value);
+        return value;
+    }
+
+    public RuntimeVal evalMemberExpr(MemberExpr member, Environment env) {
+        RuntimeVal object = evaluate(member.getObject(), env);
+        if (object instanceof ObjectVal) {
+            ObjectVal obj = (ObjectVal) object;
+            String key = propertyKey(member, env);
+            //obj.key goes through the site's inline cache; a computed key can differ every time
+            int slot = member.isComputed() ? obj.getShape().slotOf(key) : member.getCache().slot(obj.getShape(), key);
+            if (slot < 0) {
+                System.err.println("Reference Error: Object has no property " + key);
+                System.exit(1);
+            }
+            return obj.getSlot(slot);
+        }
+        if (object instanceof GeomVal) {
+            return ((GeomVal) object).property(propertyKey(member, env));
+        }
+        if (object instanceof SeqVal) {
+            //Indexing is random access, which a lazy sequence only offers once it is an array
+            object = ((SeqVal) object).materialize(this);
+        }
+        ArrayVal array = expectArray(object, member);
+        return array.get(expectIndex(evaluate(member.getProperty(), env), array));
+    }
+
+    public RuntimeVal evalObjectExpr(ObjLiteral literal, Environment env) {
+        Shape shape = literal.getShape();
+        int[] slots = literal.getSlots();
+        List<Property> properties = literal.getProperties();
+        RuntimeVal[] values = new RuntimeVal[shape.size()];
+        for (int i = 0; i < slots.length; i++) {
+            values[slots[i]] = evaluate(properties.get(i).getValue(), env);
+        }
+        return new ObjectVal(shape, values);
+    }
+
+    //The key of obj.key, or the string obj["key"] computes
+    private String propertyKey(MemberExpr member, Environment env) {
+        if (!member.isComputed()) {
+            return ((Identifier) member.getProperty()).getSymbol();
+        }
+        RuntimeVal key = evaluate(member.getProperty(), env);
+        if (!(key instanceof StringVal)) {
+            System.err.println("Type Error: Object key must be a StringVal, got " + key.getClass().getSimpleName());
+            System.exit(1);
+        }
+        return ((StringVal) key).getValue();
+    }
+
+    public RuntimeVal evalCallExpr(CallExpr call, Environment env) {
+        RuntimeVal caller = evaluate(call.getCaller(), env);
+        List<Expr> argExprs = call.getArgs();
+        RuntimeVal[] args = new RuntimeVal[argExprs.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = evaluate(argExprs.get(i), env);
+        }
+        return call(caller, args);
+    }
+
+    //Call a builtin or a func value; builtins that take functions call them through here
+    public RuntimeVal call(RuntimeVal callee, RuntimeVal[] args) {
+        if (callee instanceof NativeFnVal) {
+            return ((NativeFnVal) callee).call(this, args);
+        }
+        if (!(callee instanceof FunctionVal)) {
+            System.err.println("Type Error: " + callee.getClass().getSimpleName() + " is not callable");
+            System.exit(1);
+        }
+        FunctionVal function = (FunctionVal) callee;
+        FuncExpr node = function.getFunction();
+        List<Identifier> parameters = node.getParameters();
+        if (args.length != parameters.size()) {
+            System.err.println("Error: " + function + " expects " + parameters.size()
+                    + " argument(s), got " + args.length);
+            System.exit(1);
+        }
+        Environment closure = readOnlyViews != null ? this.readOnlyView(function.getClosure()) : function.getClosure();
+        Environment frame = new Environment(closure, node.getFrameSize(), readOnlyViews != null ? this : null);
+        for (int i = 0; i < args.length; i++) {
+            frame.declareVar(parameters.get(i).getSlot(), args[i]);
+        }
+        RuntimeVal result = NullVal.NULL;
+        for (Stmt statement : node.getBody()) {
+            result = evaluate(statement, frame);
+        }
+        return result;
+    }
+
+    //Frames this task created are its own to write, and already enclose only views
+    private Environment readOnlyView(Environment env) {
+        if (env == null || env.owner() == this) {
+            return env;
+        }
+        Environment view = readOnlyViews.get(env);
+        if (view == null) {
+            view = env.readOnlyView(this.readOnlyView(env.parent()));
+            readOnlyViews.put(env, view);
+        }
+        return view;
+    }
+
+    //Arrays can only be indexed, with a computed index
+    private ArrayVal expectArray(RuntimeVal value, MemberExpr member) {
+        if (!member.isComputed() || !(value instanceof ArrayVal)) {
+            System.err.println("Type Error: Cannot read a member of " + value.getClass().getSimpleName());
+            System.exit(1);
+        }
+        return (ArrayVal) value;
+    }
+
+    private int expectIndex(RuntimeVal value, ArrayVal array) {
+        if (!(value instanceof IntVal)) {
+            System.err.println("Type Error: Array index must be an IntVal, got " + value.getClass().getSimpleName());
+            System.exit(1);
+        }
+        int index = ((IntVal) value).getValue();
+        if (index < 0 || index >= array.size()) {
+            System.err.println("Index Error: Index " + index + " out of bounds for array of size " + array.size());
+            System.exit(1);
+        }
+        return index;
     }
+
     public RuntimeVal evaluateBinaryExpr(BinaryExpr binaryExpr, Environment env) {
+        Operator operator = binaryExpr.getOperator();
+        //Logical operators short-circuit, so their right side is evaluated separately
+        if (operator == Operator.AND || operator == Operator.OR) {
+            return evaluateLogicalExpr(binaryExpr, env);
+        }
         RuntimeVal LHS = evaluate(binaryExpr.getLeft(), env);
         RuntimeVal RHS = evaluate(binaryExpr.getRight(), env);
-        String operator = binaryExpr.getOperator();
 
+        BinarySpecialization node = binaryExpr.getSpecialization();
+        RuntimeVal result = node.execute(LHS, RHS, this);
+        if (result != null) {
+            return result;
+        }
+        //Guard failed: specialize on first use, otherwise the types changed and the node goes generic
+        node = node == BinarySpecialization.UNINITIALIZED
+                ? BinarySpecialization.specialize(operator, LHS, RHS)
+                : new BinarySpecialization.Generic(operator);
+        result = node.execute(LHS, RHS, this);
+        if (result == null) {
+            node = new BinarySpecialization.Generic(operator);
+            result = node.execute(LHS, RHS, this);
+        }
+        binaryExpr.setSpecialization(node);
+        return result;
+    }
+
+    //Arithmetic, comparison and equality on already evaluated operands; shared with the VM
+    public RuntimeVal applyBinary(RuntimeVal LHS, RuntimeVal RHS, Operator operator) {
         if (LHS instanceof IntVal && RHS instanceof IntVal) {
             return evaluateIntBinaryExpr((IntVal)LHS, (IntVal)RHS, operator);
         } else if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
@@ -81,77 +304,165 @@ public class Interpreter {
             return evaluateFloatBinaryExpr(new FloatVal(((IntVal)LHS).getValue()), (FloatVal)RHS, operator);
         } else if (LHS instanceof FloatVal && RHS instanceof IntVal) {
             return evaluateFloatBinaryExpr((FloatVal)LHS, new FloatVal(((IntVal)RHS).getValue()), operator);
-        } else {
-            System.err.println("Type Error: Unsupported operand types for \"" + operator + "\": " +
-                    LHS.getClass().getSimpleName() + " and " + RHS.getClass().getSimpleName());
-            System.exit(1);
+        } else if (operator == Operator.EQUALS) {
+            return BoolVal.of(valuesEqual(LHS, RHS));
+        } else if (operator == Operator.NOTEQUALS) {
+            return BoolVal.of(!valuesEqual(LHS, RHS));
+        } else if (LHS instanceof ArrayVal || RHS instanceof ArrayVal) {
+            //Elementwise arithmetic runs as bulk kernels; see ArrayKernels.java
+            RuntimeVal result = ArrayKernels.apply(LHS, RHS, operator);
+            if (result != null) {
+                return result;
+            }
+        } else if (LHS instanceof GeomVal || RHS instanceof GeomVal) {
+            //Point and vector arithmetic; see Geometry.java
+            RuntimeVal result = Geometry.apply(LHS, RHS, operator);
+            if (result != null) {
+                return result;
+            }
+        }
+        return unsupportedOperands(LHS, RHS, operator);
+    }
+
+    public RuntimeVal evaluateLogicalExpr(BinaryExpr binaryExpr, Environment env) {
+        boolean isAnd = binaryExpr.getOperator() == Operator.AND;
+        boolean left = expectBool(evaluate(binaryExpr.getLeft(), env), binaryExpr.getOperator());
+        if (left != isAnd) {
+            return BoolVal.of(left);
+        }
+        return BoolVal.of(expectBool(evaluate(binaryExpr.getRight(), env), binaryExpr.getOperator()));
+    }
+
+    public RuntimeVal evaluateUnaryExpr(UnaryExpr unaryExpr, Environment env) {
+        return applyUnary(evaluate(unaryExpr.getOperand(), env), unaryExpr.getOperator());
+    }
+
+    public RuntimeVal applyUnary(RuntimeVal operand, Operator operator) {
+        if (operator == Operator.NOT) {
+            return BoolVal.of(!expectBool(operand, operator));
+        } else if (operand instanceof IntVal) {
+            return IntVal.of(-((IntVal) operand).getValue());
+        } else if (operand instanceof FloatVal) {
+            return new FloatVal(-((FloatVal) operand).getValue());
+        } else if (operand instanceof VecVal) {
+            return Geometry.negate((VecVal) operand);
         }
+        System.err.println("Type Error: Unsupported operand type for unary \"" + operator.getSymbol() + "\": " +
+                operand.getClass().getSimpleName());
+        System.exit(1);
         return null;
     }
 
     public RuntimeVal evalIdentifier(Identifier ident, Environment env) {
-        return env.lookupVar(ident.getSymbol());
+        return env.lookupVar(ident.getDepth(), ident.getSlot());
     }
 
     /* =================================================================== //
                           REPETITIVE EVALUATION BLOCKS
     // =================================================================== */
-    public RuntimeVal evaluateIntBinaryExpr(IntVal LHS, IntVal RHS, String operator) {
-        int result;
-        switch (operator) {
-            case "+":
-                result = LHS.getValue() + RHS.getValue();
-                break;
-            case "-":
-                result = LHS.getValue() - RHS.getValue();
-                break;
-            case "*":
-                result = LHS.getValue() * RHS.getValue();
-                break;
-            case "/":
-                if (RHS.getValue() == 0) {
-                    System.err.println("Arithmetic Error: Division by zero ==> "
-                            + LHS.getValue() + " / 0");
-                    System.exit(1);
-                }
-                result = LHS.getValue() / RHS.getValue();
-                break;
-            case "%":
-                result = LHS.getValue() % RHS.getValue();
-                break;
-            default:
-                result = 0;
-                break;
-        }
-        return new IntVal(result);
-    }
-
-    public FloatVal evaluateFloatBinaryExpr(FloatVal LHS, FloatVal RHS, String operator) {
-        float result;
-        switch (operator) {
-            case "+":
-                result = LHS.getValue() + RHS.getValue();
-                break;
-            case "-":
-                result = LHS.getValue() - RHS.getValue();
-                break;
-            case "*":
-                result = LHS.getValue() * RHS.getValue();
-                break;
-            case "/":
-                if (RHS.getValue() == 0) {
-                    System.err.println("Arithmetic Error: Division by zero. " + LHS.getValue() + " / 0");
-                    System.exit(1);
-                }
-                result = LHS.getValue() / RHS.getValue();
-                break;
-            case "%":
-                result = LHS.getValue() % RHS.getValue();
-            default:
-                result = 0;
-                break;
+    //Kernels indexed by Operator ordinal, so an operation is one array load and call rather than a String switch
+    private static final IntKernel[] INT_KERNELS = new IntKernel[Operator.values().length];
+    private static final FloatKernel[] FLOAT_KERNELS = new FloatKernel[Operator.values().length];
+    static {
+        INT_KERNELS[Operator.EQUALS.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS == RHS);
+        INT_KERNELS[Operator.NOTEQUALS.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS != RHS);
+        INT_KERNELS[Operator.LESSER.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS < RHS);
+        INT_KERNELS[Operator.GREATER.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS > RHS);
+        INT_KERNELS[Operator.ADD.ordinal()] = (LHS, RHS) -> IntVal.of(LHS + RHS);
+        INT_KERNELS[Operator.SUBTRACT.ordinal()] = (LHS, RHS) -> IntVal.of(LHS - RHS);
+        INT_KERNELS[Operator.MULTIPLY.ordinal()] = (LHS, RHS) -> IntVal.of(LHS * RHS);
+        INT_KERNELS[Operator.DIVIDE.ordinal()] = (LHS, RHS) -> {
+            if (RHS == 0) {
+                System.err.println("Arithmetic Error: Division by zero ==> " + LHS + " / 0");
+                System.exit(1);
+            }
+            return IntVal.of(LHS / RHS);
+        };
+        INT_KERNELS[Operator.MODULO.ordinal()] = (LHS, RHS) -> {
+            if (RHS == 0) {
+                System.err.println("Arithmetic Error: Modulo by zero ==> " + LHS + " % 0");
+                System.exit(1);
+            }
+            return IntVal.of(LHS % RHS);
+        };
+        INT_KERNELS[Operator.POWER.ordinal()] = (LHS, RHS) -> IntVal.of((int) Math.pow(LHS, RHS));
+
+        FLOAT_KERNELS[Operator.EQUALS.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS == RHS);
+        FLOAT_KERNELS[Operator.NOTEQUALS.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS != RHS);
+        FLOAT_KERNELS[Operator.LESSER.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS < RHS);
+        FLOAT_KERNELS[Operator.GREATER.ordinal()] = (LHS, RHS) -> BoolVal.of(LHS > RHS);
+        FLOAT_KERNELS[Operator.ADD.ordinal()] = (LHS, RHS) -> new FloatVal(LHS + RHS);
+        FLOAT_KERNELS[Operator.SUBTRACT.ordinal()] = (LHS, RHS) -> new FloatVal(LHS - RHS);
+        FLOAT_KERNELS[Operator.MULTIPLY.ordinal()] = (LHS, RHS) -> new FloatVal(LHS * RHS);
+        FLOAT_KERNELS[Operator.DIVIDE.ordinal()] = (LHS, RHS) -> {
+            if (RHS == 0) {
+                System.err.println("Arithmetic Error: Division by zero. " + LHS + " / 0");
+                System.exit(1);
+            }
+            return new FloatVal(LHS / RHS);
+        };
+        FLOAT_KERNELS[Operator.MODULO.ordinal()] = (LHS, RHS) -> new FloatVal(LHS % RHS);
+        FLOAT_KERNELS[Operator.POWER.ordinal()] = (LHS, RHS) -> new FloatVal((float) Math.pow(LHS, RHS));
+    }
+
+    public RuntimeVal evaluateIntBinaryExpr(IntVal LHS, IntVal RHS, Operator operator) {
+        IntKernel kernel = INT_KERNELS[operator.ordinal()];
+        if (kernel == null) {
+            return unsupportedOperands(LHS, RHS, operator);
+        }
+        return kernel.apply(LHS.getValue(), RHS.getValue());
+    }
+
+    public RuntimeVal evaluateFloatBinaryExpr(FloatVal LHS, FloatVal RHS, Operator operator) {
+        FloatKernel kernel = FLOAT_KERNELS[operator.ordinal()];
+        if (kernel == null) {
+            return unsupportedOperands(LHS, RHS, operator);
+        }
+        return kernel.apply(LHS.getValue(), RHS.getValue());
+    }
+
+    private RuntimeVal unsupportedOperands(RuntimeVal LHS, RuntimeVal RHS, Operator operator) {
+        System.err.println("Type Error: Unsupported operand types for \"" + operator.getSymbol() + "\": " +
+                LHS.getClass().getSimpleName() + " and " + RHS.getClass().getSimpleName());
+        System.exit(1);
+        return null;
+    }
+
+    boolean expectBool(RuntimeVal value, Operator operator) {
+        if (!(value instanceof BoolVal)) {
+            System.err.println("Type Error: Operator \"" + operator.getSymbol() + "\" expects a boolean, got " +
+                    value.getClass().getSimpleName());
+            System.exit(1);
+        }
+        return ((BoolVal) value).getValue();
+    }
+
+    //Equality for operands that are not both numbers
+    private boolean valuesEqual(RuntimeVal LHS, RuntimeVal RHS) {
+        if (LHS instanceof BoolVal && RHS instanceof BoolVal) {
+            return ((BoolVal) LHS).getValue() == ((BoolVal) RHS).getValue();
+        }
+        if (LHS instanceof NullVal || RHS instanceof NullVal) {
+            return LHS instanceof NullVal && RHS instanceof NullVal;
+        }
+        //Strings are compared by content, since every literal and every array read makes its own StringVal
+        if (LHS instanceof StringVal && RHS instanceof StringVal) {
+            return ((StringVal) LHS).getValue().equals(((StringVal) RHS).getValue());
         }
-        return new FloatVal(result);
+        //Points and vectors are values, and packed arrays box a new one on every read
+        if (LHS instanceof GeomVal && RHS instanceof GeomVal) {
+            return ((GeomVal) LHS).sameAs((GeomVal) RHS);
+        }
+        return LHS == RHS;
     }
     // =================================================================== */
-}
\ No newline at end of file
+}
+
+//Arithmetic or comparison on two unboxed operands of the same type
+interface IntKernel {
+    RuntimeVal apply(int LHS, int RHS);
+}
+
+interface FloatKernel {
+    RuntimeVal apply(float LHS, float RHS);
+}
@@ -0,0 +1,706 @@
+import java.io.ByteArrayOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/* =================================================================== //
+     TIER THAT TRANSLATES A RESOLVED Program INTO A REAL JVM CLASS,
+     DEFINED AS A HIDDEN CLASS SO C2 CAN INLINE AND OPTIMIZE IT LIKE
+     ANY OTHER JAVA CODE. EVERY GLOBAL THE PROGRAM TOUCHES BECOMES A
+     STATIC FIELD OF A FIXED PRIMITIVE TYPE, LOADED FROM THE Environment
+     FRAME ON ENTRY AND BOXED BACK INTO IT ON EXIT.
+
+     STATEMENTS ARE SPLIT ACROSS SMALL part METHODS, SINCE HOTSPOT WILL
+     NOT COMPILE A METHOD OVER 8000 BYTES OF BYTECODE AND THE CLASS FILE
+     FORMAT CAPS ONE AT 64KB.
+
+     ONLY STRAIGHT-LINE NUMERIC AND BOOLEAN CODE IS SUPPORTED. THE
+     GENERATED METHODS HAVE NO BRANCHES, SO THEY NEED NO StackMapTable;
+     CHECKS THAT COULD FAIL LIVE IN JitRuntime AND REPORT THE SAME ERRORS
+     AS THE Interpreter.
+
+     A FAILED COMPILE RETURNS NULL AND DEFINES NO CLASS. THAT HAPPENS FOR
+     FUNCTIONS, CALLS, ARRAYS, OBJECTS, STRINGS AND null, FOR && AND ||
+     THE Optimizer DID NOT FOLD (THEY NEED A BRANCH), FOR A GLOBAL WHOSE
+     TYPE CHANGES, FOR VARIABLES OUTSIDE THE GLOBAL FRAME AND FOR
+     PROGRAMS TOO LARGE FOR ONE CLASS. THE CALLER THEN RUNS THE PROGRAM
+     ON THE TREE-WALKING Interpreter INSTEAD, SO ITS RESULT IS THE SAME
+     BUT NOTHING IS COMPILED; --engine=check REPORTS THE JIT AS NOT
+     CHECKED FOR SUCH A PROGRAM.
+// =================================================================== */
+class JitCompiler {
+
+    //Start a new part method once the current one grows past this, well under HotSpot's 8000 byte limit
+    private static final int PART_SIZE = 6000;
+    private static final int MAX_METHOD_SIZE = 65535;
+    //Every variable costs about 15 bytes in each of run's prologue and epilogue
+    private static final int MAX_VARIABLES = 1500;
+
+    //Static type of a field or operand
+    private enum JitType { INT, FLOAT, BOOL }
+
+    //Thrown internally when the program uses something this tier cannot compile
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType RUN_TYPE = MethodType.methodType(RuntimeVal.class, RuntimeVal[].class);
+
+    private ClassFileBuilder classFile;
+    private Bytecode body;
+    private Environment env;
+    //Frame slot -> type of its field, in the order the slots were first touched
+    private Map<Integer, JitType> types;
+    //Slots that must be read from the frame on entry
+    private List<Integer> loaded;
+    //Frame slot -> constant pool index of its field
+    private Map<Integer, Integer> fieldRefs;
+
+    //Compiled form of the program, or null if it uses anything the tier does not support
+    public CompiledProgram compile(Program program, Environment env) {
+        this.classFile = new ClassFileBuilder("JitProgram");
+        this.env = env;
+        this.types = new LinkedHashMap<>();
+        this.loaded = new ArrayList<>();
+        this.fieldRefs = new HashMap<>();
+
+        try {
+            List<Stmt> statements = program.getBody();
+            if (statements.isEmpty()) {
+                return null;
+            }
+            int parts = 0;
+            JitType result = null;
+            body = new Bytecode();
+            for (int i = 0; i < statements.size(); i++) {
+                result = compileStmt(statements.get(i));
+                if (i < statements.size() - 1) {
+                    body.op(Bytecode.POP, -1);
+                } else {
+                    //Only the last statement's value is the program's result
+                    body.u2op(Bytecode.PUTSTATIC, classFile.fieldRef("JitProgram", "result", descriptor(result)), -1);
+                }
+                if (body.size() > MAX_METHOD_SIZE) {
+                    throw new Unsupported();
+                }
+                if (body.size() > PART_SIZE || i == statements.size() - 1) {
+                    body.op(Bytecode.RETURN, 0);
+                    classFile.addStaticMethod("part" + parts++, "()V", body, 0);
+                    body = new Bytecode();
+                }
+            }
+            if (types.size() > MAX_VARIABLES || parts * 3 > MAX_METHOD_SIZE / 2 || classFile.poolSize() > 60000) {
+                throw new Unsupported();
+            }
+            for (Map.Entry<Integer, JitType> entry : types.entrySet()) {
+                classFile.addStaticField(field(entry.getKey()), descriptor(entry.getValue()));
+            }
+            classFile.addStaticField("result", descriptor(result));
+
+            Bytecode run = new Bytecode();
+            emitPrologue(run);
+            for (int i = 0; i < parts; i++) {
+                run.u2op(Bytecode.INVOKESTATIC, classFile.methodRef("JitProgram", "part" + i, "()V"), 0);
+            }
+            emitEpilogue(run);
+            box(run, result, "result");
+            run.op(Bytecode.ARETURN, -1);
+            classFile.addStaticMethod("run", "([LRuntimeVal;)LRuntimeVal;", run, 1);
+
+            int frameSize = types.keySet().stream().mapToInt(Integer::intValue).max().orElse(-1) + 1;
+            Class<?> hidden = LOOKUP.defineHiddenClass(classFile.toByteArray(), true).lookupClass();
+            MethodHandle handle = LOOKUP.findStatic(hidden, "run", RUN_TYPE);
+            return new CompiledProgram(handle, frameSize);
+        } catch (Unsupported e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to define compiled program", e);
+        }
+    }
+
+    /* =================================================================== //
+                                  VARIABLES
+    // =================================================================== */
+    private static String field(int slot) {
+        return "v" + slot;
+    }
+
+    private int fieldRef(int slot) {
+        return fieldRefs.computeIfAbsent(slot,
+                key -> classFile.fieldRef("JitProgram", field(key), descriptor(types.get(key))));
+    }
+
+    private JitType typeOf(RuntimeVal value) {
+        if (value instanceof IntVal) {
+            return JitType.INT;
+        } else if (value instanceof FloatVal) {
+            return JitType.FLOAT;
+        } else if (value instanceof BoolVal) {
+            return JitType.BOOL;
+        }
+        throw new Unsupported();
+    }
+
+    private int read(Identifier identifier) {
+        //Slots are pushed with sipush, so they must fit in a short
+        if (identifier.getDepth() != 0 || identifier.getSlot() > Short.MAX_VALUE) {
+            throw new Unsupported();
+        }
+        int slot = identifier.getSlot();
+        if (!types.containsKey(slot)) {
+            //First touched by a read, so its current value comes from the frame
+            types.put(slot, typeOf(env.lookupVar(0, slot)));
+            loaded.add(slot);
+        }
+        return slot;
+    }
+
+    private int write(Identifier identifier, JitType type) {
+        if (identifier.getDepth() != 0 || identifier.getSlot() > Short.MAX_VALUE) {
+            throw new Unsupported();
+        }
+        int slot = identifier.getSlot();
+        JitType current = types.putIfAbsent(slot, type);
+        //A slot that changes type cannot live in one primitive field
+        if (current != null && current != type) {
+            throw new Unsupported();
+        }
+        return slot;
+    }
+
+    private void emitPrologue(Bytecode method) {
+        for (int slot : loaded) {
+            JitType type = types.get(slot);
+            String owner = boxClass(type);
+            method.op(Bytecode.ALOAD_0, 1);
+            method.sipush(slot);
+            method.op(Bytecode.AALOAD, -1);
+            method.u2op(Bytecode.CHECKCAST, classFile.classRef(owner), 0);
+            method.u2op(Bytecode.INVOKEVIRTUAL,
+                    classFile.methodRef(owner, "getValue", "()" + descriptor(type)), 0);
+            method.u2op(Bytecode.PUTSTATIC, fieldRef(slot), -1);
+        }
+    }
+
+    //Box every field back into its frame slot, so later programs see the results
+    private void emitEpilogue(Bytecode method) {
+        for (Map.Entry<Integer, JitType> entry : types.entrySet()) {
+            method.op(Bytecode.ALOAD_0, 1);
+            method.sipush(entry.getKey());
+            box(method, entry.getValue(), field(entry.getKey()));
+            method.op(Bytecode.AASTORE, -3);
+        }
+    }
+
+    private void box(Bytecode method, JitType type, String field) {
+        String owner = boxClass(type);
+        int value = classFile.fieldRef("JitProgram", field, descriptor(type));
+        if (type == JitType.FLOAT) {
+            method.u2op(Bytecode.NEW, classFile.classRef(owner), 1);
+            method.op(Bytecode.DUP, 1);
+            method.u2op(Bytecode.GETSTATIC, value, 1);
+            method.u2op(Bytecode.INVOKESPECIAL, classFile.methodRef(owner, "<init>", "(F)V"), -2);
+        } else {
+            //Ints and bools go through their caches, like every other engine
+            method.u2op(Bytecode.GETSTATIC, value, 1);
+            method.u2op(Bytecode.INVOKESTATIC,
+                    classFile.methodRef(owner, "of", "(" + descriptor(type) + ")L" + owner + ";"), 0);
+        }
+    }
+
+    private static String boxClass(JitType type) {
+        return switch (type) {
+            case INT -> "IntVal";
+            case FLOAT -> "FloatVal";
+            case BOOL -> "BoolVal";
+        };
+    }
+
+    private static String descriptor(JitType type) {
+        return switch (type) {
+            case INT -> "I";
+            case FLOAT -> "F";
+            case BOOL -> "Z";
+        };
+    }
+
+    /* =================================================================== //
+                                  STATEMENTS
+    // =================================================================== */
+    //Emit code leaving the statement's value on the stack, and return its type
+    private JitType compileStmt(Stmt node) {
+        switch (node.kind) {
+            case INTLITERAL:
+                body.u2op(Bytecode.LDC_W, classFile.intConstant(((IntLiteral) node).getValue()), 1);
+                return JitType.INT;
+            case FLOATLITERAL:
+                body.u2op(Bytecode.LDC_W, classFile.floatConstant(((FloatLiteral) node).getValue()), 1);
+                return JitType.FLOAT;
+            case BOOLLITERAL:
+                body.op(((BoolLiteral) node).getValue() ? Bytecode.ICONST_1 : Bytecode.ICONST_0, 1);
+                return JitType.BOOL;
+            case IDENTIFIER: {
+                int slot = read((Identifier) node);
+                body.u2op(Bytecode.GETSTATIC, fieldRef(slot), 1);
+                return types.get(slot);
+            }
+            case VARIABLEDECLARATION: {
+                VariableDeclaration declaration = (VariableDeclaration) node;
+                if (declaration.getValue() == null) {
+                    throw new Unsupported();
+                }
+                return compileStore(declaration.getIdentifier(), declaration.getValue());
+            }
+            case ASSIGNMENTEXPR: {
+                AssignmentExpr assignment = (AssignmentExpr) node;
+                if (!(assignment.getAssignee() instanceof Identifier)) {
+                    throw new Unsupported();
+                }
+                return compileStore((Identifier) assignment.getAssignee(), assignment.getValue());
+            }
+            case BINARYEXPR:
+                return compileBinaryExpr((BinaryExpr) node);
+            case UNARYEXPR:
+                return compileUnaryExpr((UnaryExpr) node);
+            default:
+                throw new Unsupported();
+        }
+    }
+
+    private JitType compileStore(Identifier target, Expr value) {
+        JitType type = compileStmt(value);
+        int slot = write(target, type);
+        body.op(Bytecode.DUP, 1);
+        body.u2op(Bytecode.PUTSTATIC, fieldRef(slot), -1);
+        return type;
+    }
+
+    private JitType compileUnaryExpr(UnaryExpr unary) {
+        JitType type = compileStmt(unary.getOperand());
+        if (unary.getOperator() == Operator.NOT) {
+            if (type != JitType.BOOL) {
+                throw new Unsupported();
+            }
+            body.op(Bytecode.ICONST_1, 1);
+            body.op(Bytecode.IXOR, -1);
+            return JitType.BOOL;
+        }
+        switch (type) {
+            case INT -> body.op(Bytecode.INEG, 0);
+            case FLOAT -> body.op(Bytecode.FNEG, 0);
+            default -> throw new Unsupported();
+        }
+        return type;
+    }
+
+    private JitType compileBinaryExpr(BinaryExpr binaryExpr) {
+        Operator operator = binaryExpr.getOperator();
+        JitType left = compileStmt(binaryExpr.getLeft());
+        //The right side goes to its own buffer, so a conversion of the left can still go in between
+        Bytecode leftCode = body;
+        body = new Bytecode();
+        JitType right = compileStmt(binaryExpr.getRight());
+        Bytecode rightCode = body;
+        body = leftCode;
+
+        if (left == JitType.BOOL || right == JitType.BOOL) {
+            if (left == right && (operator == Operator.EQUALS || operator == Operator.NOTEQUALS)) {
+                body.append(rightCode);
+                return callRuntime(operator == Operator.EQUALS ? "beq" : "bne", "(ZZ)Z", JitType.BOOL);
+            }
+            throw new Unsupported();
+        }
+        //A mixed int/float operation is done in float, like the Interpreter does
+        JitType type = left == right ? left : JitType.FLOAT;
+        if (left != type) {
+            body.op(Bytecode.I2F, 0);
+        }
+        body.append(rightCode);
+        if (right != type) {
+            body.op(Bytecode.I2F, 0);
+        }
+
+        boolean isFloat = type == JitType.FLOAT;
+        String signature = isFloat ? "(FF)" : "(II)";
+        String prefix = isFloat ? "f" : "i";
+        switch (operator) {
+            case ADD:
+                body.op(isFloat ? Bytecode.FADD : Bytecode.IADD, -1);
+                return type;
+            case SUBTRACT:
+                body.op(isFloat ? Bytecode.FSUB : Bytecode.ISUB, -1);
+                return type;
+            case MULTIPLY:
+                body.op(isFloat ? Bytecode.FMUL : Bytecode.IMUL, -1);
+                return type;
+            case DIVIDE:
+                return callRuntime(prefix + "div", signature + descriptor(type), type);
+            case MODULO:
+                return callRuntime(prefix + "rem", signature + descriptor(type), type);
+            case POWER:
+                return callRuntime(prefix + "pow", signature + descriptor(type), type);
+            case LESSER:
+                return callRuntime(prefix + "lt", signature + "Z", JitType.BOOL);
+            case GREATER:
+                return callRuntime(prefix + "gt", signature + "Z", JitType.BOOL);
+            case EQUALS:
+                return callRuntime(prefix + "eq", signature + "Z", JitType.BOOL);
+            case NOTEQUALS:
+                return callRuntime(prefix + "ne", signature + "Z", JitType.BOOL);
+            default:
+                //Logical operators need branches to short-circuit
+                throw new Unsupported();
+        }
+    }
+
+    private JitType callRuntime(String name, String descriptor, JitType result) {
+        body.u2op(Bytecode.INVOKESTATIC, classFile.methodRef("JitRuntime", name, descriptor), -1);
+        return result;
+    }
+}
+
+//A program compiled to a hidden class; runs directly against the global frame
+class CompiledProgram {
+    private final MethodHandle run;
+    private final int frameSize;
+
+    CompiledProgram(MethodHandle run, int frameSize) {
+        this.run = run;
+        this.frameSize = frameSize;
+    }
+
+    public RuntimeVal run(Environment env) {
+        try {
+            return (RuntimeVal) run.invokeExact(env.frame(frameSize));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
+
+/* =================================================================== //
+      HELPERS CALLED FROM COMPILED CODE. THEY MIRROR THE INTERPRETER'S
+      SEMANTICS AND ERROR MESSAGES EXACTLY, AND ARE SMALL ENOUGH FOR
+      C2 TO INLINE INTO THE CALLER.
+// =================================================================== */
+final class JitRuntime {
+    private JitRuntime() {
+    }
+
+    public static int idiv(int LHS, int RHS) {
+        if (RHS == 0) {
+            System.err.println("Arithmetic Error: Division by zero ==> " + LHS + " / 0");
+            System.exit(1);
+        }
+        return LHS / RHS;
+    }
+
+    public static int irem(int LHS, int RHS) {
+        if (RHS == 0) {
+            System.err.println("Arithmetic Error: Modulo by zero ==> " + LHS + " % 0");
+            System.exit(1);
+        }
+        return LHS % RHS;
+    }
+
+    public static int ipow(int LHS, int RHS) {
+        return (int) Math.pow(LHS, RHS);
+    }
+
+    public static float fdiv(float LHS, float RHS) {
+        if (RHS == 0) {
+            System.err.println("Arithmetic Error: Division by zero. " + LHS + " / 0");
+            System.exit(1);
+        }
+        return LHS / RHS;
+    }
+
+    public static float frem(float LHS, float RHS) {
+        return LHS % RHS;
+    }
+
+    public static float fpow(float LHS, float RHS) {
+        return (float) Math.pow(LHS, RHS);
+    }
+
+    public static boolean ilt(int LHS, int RHS) {
+        return LHS < RHS;
+    }
+
+    public static boolean igt(int LHS, int RHS) {
+        return LHS > RHS;
+    }
+
+    public static boolean ieq(int LHS, int RHS) {
+        return LHS == RHS;
+    }
+
+    public static boolean ine(int LHS, int RHS) {
+        return LHS != RHS;
+    }
+
+    public static boolean flt(float LHS, float RHS) {
+        return LHS < RHS;
+    }
+
+    public static boolean fgt(float LHS, float RHS) {
+        return LHS > RHS;
+    }
+
+    public static boolean feq(float LHS, float RHS) {
+        return LHS == RHS;
+    }
+
+    public static boolean fne(float LHS, float RHS) {
+        return LHS != RHS;
+    }
+
+    public static boolean beq(boolean LHS, boolean RHS) {
+        return LHS == RHS;
+    }
+
+    public static boolean bne(boolean LHS, boolean RHS) {
+        return LHS != RHS;
+    }
+}
+
+/* =================================================================== //
+                   MINIMAL CLASS FILE AND BYTECODE WRITERS
+// =================================================================== */
+class Bytecode {
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD_0 = 0x2a;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int FADD = 0x62;
+    static final int ISUB = 0x64;
+    static final int FSUB = 0x66;
+    static final int IMUL = 0x68;
+    static final int FMUL = 0x6a;
+    static final int INEG = 0x74;
+    static final int FNEG = 0x76;
+    static final int IXOR = 0x82;
+    static final int I2F = 0x86;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int CHECKCAST = 0xc0;
+
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private int depth;
+    private int maxStack;
+
+    private void track(int stackEffect) {
+        depth += stackEffect;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    void op(int opcode, int stackEffect) {
+        code.write(opcode);
+        track(stackEffect);
+    }
+
+    void u2op(int opcode, int operand, int stackEffect) {
+        code.write(opcode);
+        code.write(operand >>> 8);
+        code.write(operand);
+        track(stackEffect);
+    }
+
+    void sipush(int value) {
+        u2op(SIPUSH, value, 1);
+    }
+
+    //Appending code that starts and ends at stack depth 0 only adds its own peak on top of ours
+    void append(Bytecode other) {
+        maxStack = Math.max(maxStack, depth + other.maxStack);
+        depth += other.depth;
+        code.writeBytes(other.code.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        return code.toByteArray();
+    }
+
+    int size() {
+        return code.size();
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+}
+
+class ClassFileBuilder {
+    private static final int CLASS_VERSION = 61; //Java 17
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private int fieldCount;
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount;
+    private final int thisClass;
+    private final int superClass;
+
+    ClassFileBuilder(String name) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef("java/lang/Object");
+    }
+
+    private static void u2(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void u4(ByteArrayOutputStream out, int value) {
+        u2(out, value >>> 16);
+        u2(out, value);
+    }
+
+    //Constant pool entries are deduplicated by a key describing their contents; only misses build the entry
+    private int entry(String key, Supplier<byte[]> contents) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        pool.writeBytes(contents.get());
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private static byte[] bytes(int tag, int... u2s) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+        for (int value : u2s) {
+            u2(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    int poolSize() {
+        return poolCount;
+    }
+
+    int utf8(String value) {
+        return entry("Utf8:" + value, () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.write(1);
+            u2(out, encoded.length);
+            out.writeBytes(encoded);
+            return out.toByteArray();
+        });
+    }
+
+    int classRef(String name) {
+        return entry("Class:" + name, () -> bytes(7, utf8(name)));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return entry("NameAndType:" + name + ":" + descriptor, () -> bytes(12, utf8(name), utf8(descriptor)));
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return entry("Fieldref:" + owner + "." + name + ":" + descriptor,
+                () -> bytes(9, classRef(owner), nameAndType(name, descriptor)));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return entry("Methodref:" + owner + "." + name + descriptor,
+                () -> bytes(10, classRef(owner), nameAndType(name, descriptor)));
+    }
+
+    int intConstant(int value) {
+        return entry("Integer:" + value, () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(3);
+            u4(out, value);
+            return out.toByteArray();
+        });
+    }
+
+    int floatConstant(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        return entry("Float:" + bits, () -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(4);
+            u4(out, bits);
+            return out.toByteArray();
+        });
+    }
+
+    void addStaticField(String name, String descriptor) {
+        u2(fields, 0x000A); //ACC_PRIVATE | ACC_STATIC
+        u2(fields, utf8(name));
+        u2(fields, utf8(descriptor));
+        u2(fields, 0); //Attributes
+        fieldCount++;
+    }
+
+    void addStaticMethod(String name, String descriptor, Bytecode code, int maxLocals) {
+        int codeAttribute = utf8("Code");
+        byte[] instructions = code.toByteArray();
+        if (instructions.length > 65535) {
+            throw new IllegalStateException("Method " + name + " is too large for a class file");
+        }
+        u2(methods, 0x0009); //ACC_PUBLIC | ACC_STATIC
+        u2(methods, utf8(name));
+        u2(methods, utf8(descriptor));
+        u2(methods, 1);
+        u2(methods, codeAttribute);
+        u4(methods, 12 + instructions.length);
+        u2(methods, code.maxStack());
+        u2(methods, maxLocals);
+        u4(methods, instructions.length);
+        methods.writeBytes(instructions);
+        u2(methods, 0); //Exception table
+        u2(methods, 0); //Attributes
+        methodCount++;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        u4(out, 0xCAFEBABE);
+        u2(out, 0);
+        u2(out, CLASS_VERSION);
+        u2(out, poolCount);
+        out.writeBytes(pool.toByteArray());
+        u2(out, 0x0030); //ACC_FINAL | ACC_SUPER
+        u2(out, thisClass);
+        u2(out, superClass);
+        u2(out, 0); //Interfaces
+        u2(out, fieldCount);
+        out.writeBytes(fields.toByteArray());
+        u2(out, methodCount);
+        out.writeBytes(methods.toByteArray());
+        u2(out, 0); //Attributes
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,376 @@
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/* =================================================================== //
+     kdtree(points): A SPATIAL INDEX OVER 2D OR 3D POINTS FOR NEAREST
+     NEIGHBOUR, RADIUS AND BOX QUERIES. THE TREE IS IMPLICIT: IT IS ONE
+     double[] OF THE POINTS' COORDINATES, REORDERED SO THAT THE MIDDLE
+     POINT OF EVERY RANGE [lo, hi) SPLITS IT ON AXIS depth % dims, WITH
+     SMALLER COORDINATES BEFORE IT AND LARGER ONES AFTER. RANGES OF UP
+     TO LEAF POINTS ARE SCANNED, NOT SPLIT. THERE ARE NO NODE OBJECTS
+     AND NO POINTERS, AND A TREE NEVER CHANGES ONCE BUILT, SO PARALLEL
+     TASKS QUERY IT FREELY.
+
+         nearest(t, p, k)        THE k POINTS CLOSEST TO p, CLOSEST FIRST
+         within(t, p, r)         THE POINTS AT MOST r FROM p
+         inside(t, low, high)    THE POINTS WITH low <= COORDINATE <= high
+                                 ON EVERY AXIS
+         pnearest(t, ps, k), pwithin(t, ps, r)
+                                 ONE RESULT PER POINT OF ps, RUN IN PARALLEL
+
+     EVERY RESULT IS A PACKED POINT ARRAY. BUILDING PARTITIONS THE TWO
+     HALVES OF LARGE RANGES IN PARALLEL.
+// =================================================================== */
+final class KdTreeVal extends RuntimeVal {
+    //Ranges this short are leaves
+    private static final int LEAF = 8;
+    //Ranges this long are built as tasks of their own, and batches split into pieces of this many queries
+    private static final int GRAIN = 1 << 14;
+
+    private final int dims;
+    private final double[] coords;
+    private final int size;
+
+    private KdTreeVal(int dims, double[] coords, int size) {
+        super(ValueType.KDTREE);
+        this.dims = dims;
+        this.coords = coords;
+        this.size = size;
+    }
+
+    //A tree over a copy of the points' coordinates; an empty array gives an empty 2D tree
+    static KdTreeVal build(ArrayVal points) {
+        int dims = 2;
+        if (points.storage() instanceof PointStorage) {
+            dims = ((PointStorage) points.storage()).dims();
+        } else if (points.size() > 0 && points.get(0) instanceof PointVal) {
+            dims = ((PointVal) points.get(0)).dims;
+        }
+        int size = points.size();
+        double[] coords = Arrays.copyOf(Geometry.coordinates("kdtree", points, dims), size * dims);
+        KdTreeVal tree = new KdTreeVal(dims, coords, size);
+        if (size > GRAIN) {
+            Parallel.POOL.invoke(tree.new BuildTask(0, size, 0));
+        } else {
+            tree.split(0, size, 0);
+        }
+        return tree;
+    }
+
+    int dims() {
+        return dims;
+    }
+
+    @Override
+    public String toString() {
+        return "<kdtree of " + size + " " + dims + "D points>";
+    }
+
+    /* =================================================================== //
+                                   BUILDING
+    // =================================================================== */
+    private void split(int lo, int hi, int depth) {
+        while (hi - lo > LEAF) {
+            int middle = (lo + hi) >>> 1;
+            this.select(lo, hi, middle, depth % dims);
+            this.split(lo, middle, depth + 1);
+            lo = middle + 1;
+            depth++;
+        }
+    }
+
+    private final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int depth;
+
+        BuildTask(int lo, int hi, int depth) {
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= GRAIN) {
+                split(lo, hi, depth);
+                return;
+            }
+            int middle = (lo + hi) >>> 1;
+            select(lo, hi, middle, depth % dims);
+            BuildTask left = new BuildTask(lo, middle, depth + 1);
+            left.fork();
+            new BuildTask(middle + 1, hi, depth + 1).compute();
+            left.join();
+        }
+    }
+
+    //Quickselect: puts the point with the n-th smallest coordinate on 'axis' at n, smaller ones before it
+    private void select(int lo, int hi, int n, int axis) {
+        hi--;
+        while (hi > lo) {
+            //Median of three, so sorted input does not make this quadratic
+            int middle = (lo + hi) >>> 1;
+            if (this.at(middle, axis) < this.at(lo, axis)) {
+                this.swap(middle, lo);
+            }
+            if (this.at(hi, axis) < this.at(lo, axis)) {
+                this.swap(hi, lo);
+            }
+            if (this.at(hi, axis) < this.at(middle, axis)) {
+                this.swap(hi, middle);
+            }
+            double pivot = this.at(middle, axis);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (this.at(i, axis) < pivot) {
+                    i++;
+                }
+                while (this.at(j, axis) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    this.swap(i++, j--);
+                }
+            }
+            if (n <= j) {
+                hi = j;
+            } else if (n >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double at(int point, int axis) {
+        return coords[point * dims + axis];
+    }
+
+    private void swap(int a, int b) {
+        for (int axis = 0; axis < dims; axis++) {
+            double t = coords[a * dims + axis];
+            coords[a * dims + axis] = coords[b * dims + axis];
+            coords[b * dims + axis] = t;
+        }
+    }
+
+    private double distance2(int point, double[] q) {
+        double sum = 0;
+        for (int axis = 0; axis < dims; axis++) {
+            double d = coords[point * dims + axis] - q[axis];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    /* =================================================================== //
+                                    QUERIES
+    // =================================================================== */
+    ArrayVal nearest(double[] q, int k) {
+        Neighbours found = new Neighbours(Math.min(k, size));
+        if (found.capacity > 0) {
+            this.nearest(0, size, 0, q, found);
+        }
+        return this.points(found.sorted(), found.count);
+    }
+
+    ArrayVal within(double[] q, double radius) {
+        Found found = new Found();
+        this.within(0, size, 0, q, radius * radius, found);
+        return this.points(found.points, found.count);
+    }
+
+    ArrayVal inside(double[] low, double[] high) {
+        Found found = new Found();
+        this.inside(0, size, 0, low, high, found);
+        return this.points(found.points, found.count);
+    }
+
+    //Near side first; the far side only if the splitting plane is closer than the k-th point found so far
+    private void nearest(int lo, int hi, int depth, double[] q, Neighbours found) {
+        if (hi - lo <= LEAF) {
+            for (int i = lo; i < hi; i++) {
+                found.offer(this.distance2(i, q), i);
+            }
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        int axis = depth % dims;
+        found.offer(this.distance2(middle, q), middle);
+        double offset = q[axis] - this.at(middle, axis);
+        if (offset < 0) {
+            this.nearest(lo, middle, depth + 1, q, found);
+            if (offset * offset < found.bound()) {
+                this.nearest(middle + 1, hi, depth + 1, q, found);
+            }
+        } else {
+            this.nearest(middle + 1, hi, depth + 1, q, found);
+            if (offset * offset < found.bound()) {
+                this.nearest(lo, middle, depth + 1, q, found);
+            }
+        }
+    }
+
+    private void within(int lo, int hi, int depth, double[] q, double radius2, Found found) {
+        if (hi - lo <= LEAF) {
+            for (int i = lo; i < hi; i++) {
+                if (this.distance2(i, q) <= radius2) {
+                    found.add(i);
+                }
+            }
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        int axis = depth % dims;
+        if (this.distance2(middle, q) <= radius2) {
+            found.add(middle);
+        }
+        double offset = q[axis] - this.at(middle, axis);
+        if (offset <= 0 || offset * offset <= radius2) {
+            this.within(lo, middle, depth + 1, q, radius2, found);
+        }
+        if (offset >= 0 || offset * offset <= radius2) {
+            this.within(middle + 1, hi, depth + 1, q, radius2, found);
+        }
+    }
+
+    private void inside(int lo, int hi, int depth, double[] low, double[] high, Found found) {
+        if (hi - lo <= LEAF) {
+            for (int i = lo; i < hi; i++) {
+                if (this.inBox(i, low, high)) {
+                    found.add(i);
+                }
+            }
+            return;
+        }
+        int middle = (lo + hi) >>> 1;
+        int axis = depth % dims;
+        if (this.inBox(middle, low, high)) {
+            found.add(middle);
+        }
+        double split = this.at(middle, axis);
+        if (low[axis] <= split) {
+            this.inside(lo, middle, depth + 1, low, high, found);
+        }
+        if (high[axis] >= split) {
+            this.inside(middle + 1, hi, depth + 1, low, high, found);
+        }
+    }
+
+    private boolean inBox(int point, double[] low, double[] high) {
+        for (int axis = 0; axis < dims; axis++) {
+            double c = this.at(point, axis);
+            if (c < low[axis] || c > high[axis]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //The points at the first 'count' positions of 'points', packed
+    private ArrayVal points(int[] points, int count) {
+        double[] out = new double[count * dims];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(coords, points[i] * dims, out, i * dims, dims);
+        }
+        return new ArrayVal(new PointStorage(false, dims, out, count));
+    }
+
+    //One query per point of a batch, in pieces on the shared pool; results in the batch's order
+    interface Query {
+        ArrayVal run(double[] q);
+    }
+
+    ArrayVal batch(double[] queries, int count, Query query) {
+        ArrayVal[] results = new ArrayVal[count];
+        Parallel.inPieces(count, GRAIN / 16, (piece, from, to) -> {
+            for (int i = from; i < to; i++) {
+                results[i] = query.run(Arrays.copyOfRange(queries, i * dims, (i + 1) * dims));
+            }
+        });
+        return ArrayVal.of(Arrays.asList(results));
+    }
+
+    /* =================================================================== //
+                                QUERY RESULTS
+    // =================================================================== */
+    //Positions of the points a radius or box query found, in tree order
+    private static final class Found {
+        int[] points = new int[16];
+        int count;
+
+        void add(int point) {
+            if (count == points.length) {
+                points = Arrays.copyOf(points, count * 2);
+            }
+            points[count++] = point;
+        }
+    }
+
+    //The closest points seen so far: a max-heap on squared distance, so the farthest is replaced first
+    private static final class Neighbours {
+        final int capacity;
+        final double[] distances;
+        final int[] points;
+        int count;
+
+        Neighbours(int capacity) {
+            this.capacity = capacity;
+            this.distances = new double[capacity];
+            this.points = new int[capacity];
+        }
+
+        //Squared distance a point must beat to be kept
+        double bound() {
+            return count < capacity ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(double distance, int point) {
+            if (count < capacity) {
+                int i = count++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    distances[i] = distances[(i - 1) / 2];
+                    points[i] = points[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                distances[i] = distance;
+                points[i] = point;
+            } else if (distance < distances[0]) {
+                this.siftDown(0, count, distance, point);
+            }
+        }
+
+        private void siftDown(int i, int size, double distance, int point) {
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                distances[i] = distances[child];
+                points[i] = points[child];
+                i = child;
+            }
+            distances[i] = distance;
+            points[i] = point;
+        }
+
+        //Heap sort in place; the points closest first
+        int[] sorted() {
+            for (int end = count - 1; end > 0; end--) {
+                double distance = distances[end];
+                int point = points[end];
+                distances[end] = distances[0];
+                points[end] = points[0];
+                this.siftDown(0, end, distance, point);
+            }
+            return points;
+        }
+    }
+}
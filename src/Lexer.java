@@ -1,179 +1,363 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 class Lexer {
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    //Chars are read from 'in' in chunks into buf; an in-memory source is one chunk
+    private Reader in;
+    private char[] buf;
+    private int pos;
+    private int limit;
+    //Absolute source offset of buf[0]
+    private int bufOffset;
+    //Start of the lexeme being scanned; refills never discard chars from here on
+    private int mark;
+    //Absolute offset of the oldest char a caller still needs for lazy token text, or -1
+    private int retained = -1;
+
+    //The most recently scanned token: its absolute offset, length and interned symbol (identifiers and keywords only)
+    private int tokenStart;
+    private int tokenLength;
+    private String tokenSymbol;
+    private final SymbolTable symbols = new SymbolTable();
+
+    public Lexer() {
+        this("");
+    }
+
+    public Lexer(CharSequence sourceCode) {
+        reset(sourceCode);
+    }
+
+    public Lexer(Reader in) {
+        this.in = in;
+        this.buf = new char[CHUNK_SIZE];
+        this.pos = 0;
+        this.limit = 0;
+        this.bufOffset = 0;
+    }
+
+    private void reset(CharSequence sourceCode) {
+        this.in = null;
+        this.buf = sourceCode.toString().toCharArray();
+        this.pos = 0;
+        this.limit = buf.length;
+        this.bufOffset = 0;
+        this.retained = -1;
+    }
+
     //Determine if char is valid int
-    public static boolean isInt(String str) {
-        char c = str.charAt(0);
-        int lowerBound = '0';
-        int upperBound = '9';
-        return (int) c >= lowerBound && (int) c <= upperBound;
+    public static boolean isInt(char c) {
+        return c >= '0' && c <= '9';
     }
     //Determine if char is alphabetic
-    public static boolean isAlpha(String str) {
-        char c = str.charAt(0);
+    public static boolean isAlpha(char c) {
         return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
     }
     //Determine if a char is whitespace
-    public static boolean isSkippable(String str) {
-        return str.equals(" ") || str.equals("\n") || str.equals("\t") || str.equals("\r");
+    public static boolean isSkippable(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
     }
 
-    public List<Token> tokenize(String sourceCode)  {
-        List<Token> tokens = new ArrayList<>();
+    /* =================================================================== //
+                                 SOURCE WINDOW
+    // =================================================================== */
+    //Make sure the char 'ahead' positions past the cursor is buffered, if the source has one
+    private boolean available(int ahead) {
+        while (pos + ahead >= limit) {
+            if (in == null || !fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Drop everything before the mark (or the retained offset) and read the next chunk behind what is kept
+    private boolean fill() {
+        int from = retained < 0 ? mark : Math.min(mark, retained - bufOffset);
+        int keep = limit - from;
+        if (from > 0) {
+            System.arraycopy(buf, from, buf, 0, keep);
+            bufOffset += from;
+            pos -= from;
+            mark -= from;
+            limit = keep;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        try {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                in.close();
+                in = null;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read source", e);
+        }
+    }
+
+    //True if the char 'ahead' positions past the cursor exists and equals c
+    private boolean peekIs(int ahead, char c) {
+        return available(ahead) && buf[pos + ahead] == c;
+    }
 
-        ArrayList<String> src = new ArrayList<>();
+    private TokenType token(TokenType type) {
+        tokenStart = bufOffset + mark;
+        tokenLength = pos - mark;
+        return type;
+    }
 
-        //Split src into chars -> add into array
-        for (char ch : sourceCode.toCharArray()) {
-            src.add(String.valueOf(ch));
+    //Keep source chars from this absolute offset onwards buffered, so text(...) can still read them
+    public void retain(int offset) {
+        this.retained = offset;
+    }
+
+    //Materialize the text of a token that is still inside the retained window
+    public String text(int start, int length) {
+        return new String(buf, start - bufOffset, length);
+    }
+
+    public char charAt(int offset) {
+        return buf[offset - bufOffset];
+    }
+
+    public int tokenStart() {
+        return tokenStart;
+    }
+
+    public int tokenLength() {
+        return tokenLength;
+    }
+
+    public String tokenSymbol() {
+        return tokenSymbol;
+    }
+
+    /* =================================================================== //
+                                   TOKENIZING
+    // =================================================================== */
+    public List<Token> tokenize(CharSequence sourceCode) {
+        reset(sourceCode);
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
+        return tokens;
+    }
+
+    public Token nextToken() {
+        TokenType type = scan();
+        String value;
+        if (type == TokenType.EOF) {
+            value = "EndOfFile";
+        } else {
+            value = tokenSymbol != null ? tokenSymbol : text(tokenStart, tokenLength);
         }
-        while (!src.isEmpty()) {
-            //Get current char @index 0 from the array
-            String current = src.get(0);
-            TokenType type = TokenChars.getTokenType(current);
+        return new Token(type, value, tokenStart, tokenLength);
+    }
+
+    //Scan the next token from the source without building its text; returns EOF once the source is exhausted
+    public TokenType scan() {
+        tokenSymbol = null;
+        while (true) {
+            mark = pos;
+            if (!available(0)) {
+                return token(TokenType.EOF);
+            }
+            char current = buf[pos];
             //Check for int
             if (isInt(current)) {
-                StringBuilder num = new StringBuilder();
                 boolean isFloat = false;
 
-                while (!src.isEmpty() && (isInt(src.get(0)) || src.get(0).equals("."))) {
-                    if (src.get(0).equals(".")) {
+                while (available(0) && (isInt(buf[pos]) || buf[pos] == '.')) {
+                    if (buf[pos] == '.') {
                         if (isFloat) {
                             throw new RuntimeException("Invalid floating point number syntax");
                         }
                         isFloat = true;
                     }
-                    num.append(src.get(0));
-                    src.remove(0);
+                    pos++;
                 }
 
-                if (isFloat) {
-                    tokens.add(new Token(TokenType.FLOAT, num.toString()));
-                } else {
-                    tokens.add(new Token(TokenType.INT, num.toString()));
-                }
-                continue;
-            } else {
-                switch (current) {
-                    //Handle comments
-                    //***THIS BRANCH IS EXTREMELY MESSY***
-                    case ">":
-                        src.remove(0);
-                        if (!src.isEmpty() && src.get(0).equals(">")) {
-                            src.remove(0);
-                            //Check for multiline comment start
-                            if (!src.isEmpty() && src.get(0).equals(">")) {
-                                src.remove(0);
-                                boolean endFound = false;
-                                while (!src.isEmpty()) {
-                                    if (src.get(0).equals("<")) {
-                                        src.remove(0);
-                                        if (!src.isEmpty() && src.get(0).equals("<")) {
-                                            src.remove(0);
-                                            if (!src.isEmpty() && src.get(0).equals("<")) {
-                                                src.remove(0);
-                                                endFound = true;
-                                                break;
-                                            }
-                                        }
-                                    } else {
-                                        src.remove(0);
-                                    }
-                                }
-                                if (!endFound) {
-                                    //Handle error: unclosed multiline comment
-                                    throw new RuntimeException("Multiline comment not closed.");
-                                }
-                            } else {
-                                //Single-line comment
-                                while (!src.isEmpty() && !src.get(0).equals("\n")) {
-                                    src.remove(0);
+                return token(isFloat ? TokenType.FLOAT : TokenType.INT);
+            }
+            switch (current) {
+                //Handle comments
+                case '>':
+                    pos++;
+                    if (peekIs(0, '>')) {
+                        pos++;
+                        //Check for multiline comment start
+                        if (peekIs(0, '>')) {
+                            pos++;
+                            boolean endFound = false;
+                            while (available(0)) {
+                                //Comment text is never needed, so let refills discard it
+                                mark = pos;
+                                if (peekIs(0, '<') && peekIs(1, '<') && peekIs(2, '<')) {
+                                    pos += 3;
+                                    endFound = true;
+                                    break;
                                 }
+                                pos++;
+                            }
+                            if (!endFound) {
+                                //Handle error: unclosed multiline comment
+                                throw new RuntimeException("Multiline comment not closed.");
                             }
                         } else {
-                            tokens.add(new Token(TokenType.GREATER, current));
-                        }
-                        continue;
-                        //Check for subtraction binary operator or ternary
-                    case "-":
-                        src.remove(0);
-                        if (!src.get(0).equals(">")) {
-                            tokens.add(new Token(TokenType.BINARYOPERATOR, "-"));
-                        } else {
-                            tokens.add(new Token(TokenType.ARROW, "->"));
-                        }
-                        continue;
-                    case "=":
-                        src.remove(0);
-                        if (src.get(0).equals("=")) {
-                            src.remove(0);
-                            tokens.add(new Token(TokenType.EQUALSCOMPARE, "=="));
-                        } else {
-                            tokens.add(new Token(TokenType.EQUALS, "="));
-                        }
-                        continue;
-                    case "!":
-                        src.remove(0);
-                        if (src.get(0).equals("=")) {
-                            src.remove(0);
-                            tokens.add(new Token(TokenType.NOTEQUALSCOMPARE, "!="));
-                        } else {
-                            tokens.add(new Token(TokenType.FACTORIAL, "!"));
-                        }
-                        continue;
-                    case "|":
-                        src.remove(0);
-                        if (src.get(0).equals("|")) {
-                            src.remove(0);
-                            tokens.add(new Token(TokenType.OR, "||"));
-                        } else {
-                            tokens.add(new Token(TokenType.COMMA, "|"));
+                            //Single-line comment
+                            while (available(0) && buf[pos] != '\n') {
+                                mark = pos;
+                                pos++;
+                            }
                         }
                         continue;
-                    case "&":
-                        src.remove(0);
-                        if (src.get(0).equals("&")) {
-                            src.remove(0);
-                            tokens.add(new Token(TokenType.AND, "&&"));
-                        } else {
-                            tokens.add(new Token(TokenType.AMPERSAND, "&"));
-                        }
+                    }
+                    return token(TokenType.GREATER);
+                //Check for subtraction binary operator or arrow
+                case '-':
+                    pos++;
+                    if (peekIs(0, '>')) {
+                        pos++;
+                        return token(TokenType.ARROW);
+                    }
+                    return token(TokenType.BINARYOPERATOR);
+                case '=':
+                    pos++;
+                    if (peekIs(0, '=')) {
+                        pos++;
+                        return token(TokenType.EQUALSCOMPARE);
+                    }
+                    return token(TokenType.EQUALS);
+                case '!':
+                    pos++;
+                    if (peekIs(0, '=')) {
+                        pos++;
+                        return token(TokenType.NOTEQUALSCOMPARE);
+                    }
+                    return token(TokenType.FACTORIAL);
+                case '|':
+                    pos++;
+                    if (peekIs(0, '|')) {
+                        pos++;
+                        return token(TokenType.OR);
+                    }
+                    return token(TokenType.COMMA);
+                case '&':
+                    pos++;
+                    if (peekIs(0, '&')) {
+                        pos++;
+                        return token(TokenType.AND);
+                    }
+                    return token(TokenType.AMPERSAND);
+                //String literal; the token's text keeps its quotes
+                case '"':
+                    pos++;
+                    while (available(0) && buf[pos] != '"') {
+                        pos++;
+                    }
+                    if (!available(0)) {
+                        throw new RuntimeException("String literal not closed.");
+                    }
+                    pos++;
+                    return token(TokenType.STRING);
+                default:
+                    TokenType type = TokenChars.getTokenType(current);
+                    //Branch for individual character tokens
+                    if (type != null) {
+                        pos++;
+                        return token(type);
+                    }
+                    //Check for whitespace tokens
+                    if (isSkippable(current)) {
+                        pos++;
                         continue;
-                    default:
-                        //Branch for individual character tokens
-                        if (type != null) {
-                            tokens.add(new Token(type, current));
-                        }
-                        //Check for whitespace tokens
-                        else if (isSkippable(current)) {
-                            src.remove(0);
-                            continue;
-                        } else if (isAlpha(current)) {
-                            StringBuilder identifier = new StringBuilder();
-                            while (!src.isEmpty() && isAlpha(src.get(0))) {
-                                identifier.append(src.get(0));
-                                src.remove(0);
-                            }
-                            //Check for some reserved keywords
-                            String ident = identifier.toString().toLowerCase();
-                            TokenType reserved = Keywords.getTokenType(ident);
-                            if (reserved != null) {
-                                tokens.add(new Token(reserved, ident));
-                            } else {
-                                tokens.add(new Token(TokenType.IDENTIFIER, ident));
-                            }
-                            continue;
-                        } else {
-                            System.err.println("Unrecognized character found in the source: " + src.get(0));
-                            System.exit(1);
+                    }
+                    if (isAlpha(current)) {
+                        while (available(0) && isAlpha(buf[pos])) {
+                            pos++;
                         }
-                        break;
+                        //Check for some reserved keywords
+                        tokenSymbol = symbols.intern(buf, mark, pos - mark);
+                        TokenType reserved = Keywords.getTokenType(tokenSymbol);
+                        return token(reserved != null ? reserved : TokenType.IDENTIFIER);
+                    }
+                    System.err.println("Unrecognized character found in the source: " + current);
+                    System.exit(1);
+            }
+        }
+    }
+}
+
+/* =================================================================== //
+   INTERNS IDENTIFIERS STRAIGHT FROM THE LEXER'S CHAR WINDOW, SO EACH
+   DISTINCT NAME IS ALLOCATED ONCE NO MATTER HOW OFTEN IT APPEARS
+// =================================================================== */
+class SymbolTable {
+    private String[] table = new String[256];
+    private int size;
+
+    //Identifiers are case-insensitive and stored lowercased
+    private static char lower(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    public String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + lower(chars[offset + i]);
+        }
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != null) {
+            if (matches(table[slot], chars, offset, length)) {
+                return table[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String symbol = new String(chars, offset, length).toLowerCase();
+        table[slot] = symbol;
+        if (++size * 2 > table.length) {
+            rehash();
+        }
+        return symbol;
+    }
+
+    private static boolean matches(String symbol, char[] chars, int offset, int length) {
+        if (symbol.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (symbol.charAt(i) != lower(chars[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String symbol : old) {
+            if (symbol != null) {
+                //String.hashCode uses the same polynomial as intern, so slots line up
+                int slot = symbol.hashCode() & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
                 }
+                table[slot] = symbol;
             }
-            src.remove(0);
         }
-        //Push EOF and return token array
-        tokens.add(new Token(TokenType.EOF, "EndOfFile"));
-        return tokens;
     }
 }
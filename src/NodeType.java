@@ -17,8 +17,10 @@ enum NodeType {
     //EXPRESSIONS
     ASSIGNMENTEXPR, //          -X
     BINARYEXPR, //              -X
+    UNARYEXPR, //               -X
     MEMBEREXPR, //              -X
     CALLEXPR, //                -X
+    FUNCEXPR, //                -X
 
     //LITERALS
     IDENTIFIER, //              -X
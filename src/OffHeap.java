@@ -0,0 +1,333 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+/* =================================================================== //
+     ArrayVal STORAGE OUTSIDE THE JAVA HEAP. ELEMENTS LIVE IN A DIRECT
+     BUFFER OF INTS, FLOATS OR DOUBLES IN NATIVE BYTE ORDER, SO A LARGE
+     ARRAY COSTS THE GC ONE SMALL OBJECT NO MATTER HOW MANY ELEMENTS IT
+     HOLDS. A BINARY FILE CAN BE MAPPED AS A READ-ONLY ARRAY WITHOUT
+     COPYING IT.
+
+     FLOATS IN THIS LANGUAGE ARE 32 BIT, SO DOUBLE ARRAYS ARE NARROWED:
+     EVERY READ ROUNDS THE STORED DOUBLE TO THE NEAREST FLOAT, AND EVERY
+     WRITE STORES A FLOAT. THEY EXIST TO READ FILES OF DOUBLES WITHOUT
+     CONVERTING THEM FIRST, NOT FOR EXTRA PRECISION.
+
+     AN ARRAY IS FREED EXPLICITLY WITH free, OR WITH EVERYTHING ELSE FROM
+     THE SAME OffHeapArena WHEN THE ARENA IS CLOSED. FREEING RELEASES THE
+     MEMORY (OR UNMAPS THE FILE) AT ONCE, AND ANY USE AFTER THAT IS
+     REPORTED AS AN ERROR. EVERY ACCESS HOLDS A SHARED LOCK WHILE IT
+     TOUCHES THE BUFFER AND FREEING TAKES IT EXCLUSIVELY, SO A PARALLEL
+     TASK CAN NEVER READ MEMORY ANOTHER TASK HAS JUST RELEASED: free
+     WAITS FOR THE READS IN FLIGHT TO FINISH.
+// =================================================================== */
+final class OffHeapStorage extends ArrayStorage {
+    //Element layouts; floats in this language are 32 bit, so DOUBLE elements are narrowed when read
+    enum Layout {
+        INT(4), FLOAT(4), DOUBLE(8);
+
+        final int bytes;
+
+        Layout(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final Layout layout;
+    private final boolean readOnly;
+    //Shared by accesses, exclusive for free and for growing, which both release a buffer
+    private final StampedLock lock = new StampedLock();
+    private ByteBuffer buffer; //null once freed; read and written under the lock
+    private int size;
+
+    OffHeapStorage(Layout layout, ByteBuffer buffer, int size, boolean readOnly) {
+        this.layout = layout;
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    //A zeroed array of 'size' elements
+    static OffHeapStorage allocate(Layout layout, int size) {
+        return new OffHeapStorage(layout, ByteBuffer.allocateDirect(checkedBytes(layout, size)), size, false);
+    }
+
+    //The file's contents as a read-only array; the pages are read in by the OS as elements are touched
+    static OffHeapStorage map(Layout layout, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long bytes = channel.size();
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IOException("File is larger than the 2 GB an array can map");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+            //The mapping outlives the channel
+            return new OffHeapStorage(layout, buffer, (int) (bytes / layout.bytes), true);
+        }
+    }
+
+    private static int checkedBytes(Layout layout, long size) {
+        long bytes = size * layout.bytes;
+        if (size < 0 || bytes > Integer.MAX_VALUE) {
+            System.err.println("Memory Error: Cannot allocate an off-heap array of " + size + " elements");
+            System.exit(1);
+        }
+        return (int) bytes;
+    }
+
+    Layout layout() {
+        return layout;
+    }
+
+    //Bulk copies of 'count' elements from 'from' into the start of dst; DOUBLE elements are narrowed
+    void readInts(int from, int[] dst, int count) {
+        long stamp = lock.readLock();
+        try {
+            this.live().asIntBuffer().get(from, dst, 0, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void readFloats(int from, float[] dst, int count) {
+        long stamp = lock.readLock();
+        try {
+            ByteBuffer buffer = this.live();
+            if (layout == Layout.FLOAT) {
+                buffer.asFloatBuffer().get(from, dst, 0, count);
+            } else if (layout == Layout.INT) {
+                for (int i = 0; i < count; i++) {
+                    dst[i] = buffer.getInt((from + i) << 2);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    dst[i] = (float) buffer.getDouble((from + i) << 3);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //Release the memory now; waits for accesses in flight, and freeing twice does nothing
+    void free() {
+        long stamp = lock.writeLock();
+        try {
+            if (buffer != null) {
+                Cleaner.clean(buffer);
+                buffer = null;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //Only called with the lock held
+    private ByteBuffer live() {
+        if (buffer == null) {
+            usedAfterFree();
+        }
+        return buffer;
+    }
+
+    //Synchronized: when several tasks find the array freed at once, the first reports it and exits
+    private static synchronized void usedAfterFree() {
+        System.err.println("Memory Error: Off-heap array used after it was freed");
+        System.exit(1);
+    }
+
+    @Override
+    Kind kind() {
+        return Kind.OFFHEAP;
+    }
+
+    @Override
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            this.live();
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    RuntimeVal get(int index) {
+        long stamp = lock.readLock();
+        try {
+            ByteBuffer buffer = this.live();
+            return switch (layout) {
+                case INT -> IntVal.of(buffer.getInt(index << 2));
+                case FLOAT -> new FloatVal(buffer.getFloat(index << 2));
+                case DOUBLE -> new FloatVal((float) buffer.getDouble(index << 3));
+            };
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    ArrayStorage set(int index, RuntimeVal value) {
+        long stamp = lock.readLock();
+        try {
+            this.store(this.live(), index, value);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    ArrayStorage add(RuntimeVal value) {
+        long stamp = lock.writeLock();
+        try {
+            ByteBuffer current = this.live();
+            this.checkWritable();
+            if ((size + 1) * layout.bytes > current.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(checkedBytes(layout, grow(size)))
+                        .order(ByteOrder.nativeOrder());
+                grown.put(current.duplicate().clear().limit(size * layout.bytes));
+                Cleaner.clean(current);
+                buffer = grown;
+            }
+            this.store(buffer, size, value);
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    //Unlike heap storage this cannot generalize, since that would silently copy it back onto the heap
+    private void store(ByteBuffer buffer, int index, RuntimeVal value) {
+        this.checkWritable();
+        if (layout == Layout.INT) {
+            if (!(value instanceof IntVal)) {
+                this.wrongType(value);
+            }
+            buffer.putInt(index << 2, ((IntVal) value).getValue());
+            return;
+        }
+        float element;
+        if (value instanceof FloatVal) {
+            element = ((FloatVal) value).getValue();
+        } else if (value instanceof IntVal) {
+            element = ((IntVal) value).getValue();
+        } else {
+            this.wrongType(value);
+            return;
+        }
+        if (layout == Layout.FLOAT) {
+            buffer.putFloat(index << 2, element);
+        } else {
+            buffer.putDouble(index << 3, element);
+        }
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            System.err.println("Memory Error: Cannot modify a mapped array; it is read-only");
+            System.exit(1);
+        }
+    }
+
+    private void wrongType(RuntimeVal value) {
+        System.err.println("Type Error: Cannot store " + value.getClass().getSimpleName() + " in an off-heap "
+                + layout.name().toLowerCase() + " array");
+        System.exit(1);
+    }
+}
+
+/* =================================================================== //
+     OWNS EVERY OFF-HEAP ARRAY IT CREATES, AND FREES THE ONES STILL LIVE
+     WHEN CLOSED, SO A SCOPE'S MEMORY GOES AWAY WITH THE SCOPE:
+
+         try (OffHeapArena arena = new OffHeapArena()) {
+             ArrayVal points = arena.allocate(OffHeapStorage.Layout.FLOAT, n);
+             ...
+         }
+// =================================================================== */
+class OffHeapArena implements AutoCloseable {
+    //By identity, so freeing one array early is a constant-time removal
+    private final Set<OffHeapStorage> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public ArrayVal allocate(OffHeapStorage.Layout layout, int size) {
+        return this.own(OffHeapStorage.allocate(layout, size));
+    }
+
+    public ArrayVal map(OffHeapStorage.Layout layout, Path file) throws IOException {
+        return this.own(OffHeapStorage.map(layout, file));
+    }
+
+    //Synchronized, since functions run by the parallel builtins can allocate and free from several threads
+    private synchronized ArrayVal own(OffHeapStorage storage) {
+        owned.add(storage);
+        return new ArrayVal(storage);
+    }
+
+    //Free one array before the arena closes
+    public synchronized void free(OffHeapStorage storage) {
+        owned.remove(storage);
+        storage.free();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (OffHeapStorage storage : owned) {
+            storage.free();
+        }
+        owned.clear();
+    }
+}
+
+/* =================================================================== //
+     RELEASES A DIRECT OR MAPPED BUFFER'S MEMORY IMMEDIATELY, WHERE THE
+     JDK WOULD OTHERWISE WAIT FOR THE GC TO COLLECT THE BUFFER. THIS IS
+     sun.misc.Unsafe.invokeCleaner, LOOKED UP REFLECTIVELY SO THE BUILD
+     NEEDS NO INTERNAL API. ON A JVM WITHOUT IT, A FREED BUFFER IS LEFT
+     TO THE GC, WHICH STILL NEVER RELEASES MEMORY A READER CAN REACH.
+// =================================================================== */
+final class Cleaner {
+    private static final MethodHandle INVOKE_CLEANER = lookup();
+
+    private Cleaner() {
+    }
+
+    private static MethodHandle lookup() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    static void clean(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
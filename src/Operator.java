@@ -0,0 +1,88 @@
+import java.util.EnumMap;
+import java.util.Map;
+
+/* =================================================================== //
+      OPERATOR TABLE FOR THE PRATT PARSER. HIGHER PRECEDENCE BINDS
+      TIGHTER; PREFIX OPERATORS PARSE THEIR OPERAND AT THEIR OWN LEVEL.
+// =================================================================== */
+enum Operator {
+
+    //Infix
+    OR("||", 1, false),
+    AND("&&", 2, false),
+    EQUALS("==", 4, false),
+    NOTEQUALS("!=", 4, false),
+    LESSER("<", 5, false),
+    GREATER(">", 5, false),
+    ADD("+", 6, false),
+    SUBTRACT("-", 6, false),
+    MULTIPLY("*", 7, false),
+    DIVIDE("/", 7, false),
+    MODULO("%", 7, false),
+    POWER("^", 9, true),
+
+    //Prefix
+    NOT("not", 3, false),
+    NEGATE("-", 8, false);
+
+    private final String symbol;
+    private final int precedence;
+    private final boolean rightAssociative;
+
+    Operator(String symbol, int precedence, boolean rightAssociative) {
+        this.symbol = symbol;
+        this.precedence = precedence;
+        this.rightAssociative = rightAssociative;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public int getPrecedence() {
+        return precedence;
+    }
+
+    public boolean isRightAssociative() {
+        return rightAssociative;
+    }
+
+    //Every BINARYOPERATOR token is a single char, so those are keyed by char rather than by token type
+    private static final Map<TokenType, Operator> INFIX = new EnumMap<>(TokenType.class);
+    private static final Operator[] INFIX_CHARS = new Operator[128];
+    private static final Map<TokenType, Operator> PREFIX = new EnumMap<>(TokenType.class);
+    private static final Operator[] PREFIX_CHARS = new Operator[128];
+    static {
+        INFIX.put(TokenType.OR, OR);
+        INFIX.put(TokenType.AND, AND);
+        INFIX.put(TokenType.EQUALSCOMPARE, EQUALS);
+        INFIX.put(TokenType.NOTEQUALSCOMPARE, NOTEQUALS);
+        INFIX.put(TokenType.LESSER, LESSER);
+        INFIX.put(TokenType.GREATER, GREATER);
+        INFIX.put(TokenType.EXPONENTIAL, POWER);
+        INFIX_CHARS['+'] = ADD;
+        INFIX_CHARS['-'] = SUBTRACT;
+        INFIX_CHARS['*'] = MULTIPLY;
+        INFIX_CHARS['/'] = DIVIDE;
+        INFIX_CHARS['%'] = MODULO;
+
+        PREFIX.put(TokenType.NOT, NOT);
+        PREFIX_CHARS['-'] = NEGATE;
+    }
+
+    //Operator for a token in infix position, or null if the token does not continue an expression
+    public static Operator infix(TokenType type, char firstChar) {
+        if (type == TokenType.BINARYOPERATOR) {
+            return firstChar < INFIX_CHARS.length ? INFIX_CHARS[firstChar] : null;
+        }
+        return INFIX.get(type);
+    }
+
+    //Operator for a token in prefix position, or null if the token does not start a unary expression
+    public static Operator prefix(TokenType type, char firstChar) {
+        if (type == TokenType.BINARYOPERATOR) {
+            return firstChar < PREFIX_CHARS.length ? PREFIX_CHARS[firstChar] : null;
+        }
+        return PREFIX.get(type);
+    }
+}
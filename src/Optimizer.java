@@ -0,0 +1,367 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* =================================================================== //
+     AST REWRITES RUN AFTER THE Resolver AND BEFORE EXECUTION:
+       - CONSTANT FOLDING OF LITERAL UNARY AND BINARY SUBTREES
+       - PROPAGATION OF const BINDINGS WHOSE VALUE FOLDS TO A LITERAL
+       - REMOVAL OF DECLARATIONS WHOSE VARIABLE IS NEVER READ
+
+     FOLDING GOES THROUGH THE Interpreter'S OWN OPERATORS, SO A FOLDED
+     RESULT IS EXACTLY WHAT EVALUATION WOULD HAVE PRODUCED. ANYTHING
+     THAT WOULD FAIL AT RUNTIME (DIVISION BY ZERO, TYPE ERRORS) IS LEFT
+     IN PLACE SO IT STILL FAILS WHEN AND WHERE IT USED TO.
+
+     ONLY GLOBALS ARE TRACKED; FUNCTION BODIES ARE FOLDED, BUT THEIR OWN
+     VARIABLES ARE LEFT ALONE. PROPAGATED constS PERSIST ACROSS optimize
+     CALLS, LIKE THE Resolver'S GLOBAL SCOPE.
+// =================================================================== */
+public class Optimizer {
+
+    private final Interpreter interpreter = new Interpreter();
+    //Global slot -> literal value of a const bound to one
+    private final Map<Integer, Expr> constants = new HashMap<>();
+    //Nodes removed by the last optimize call
+    private int removed;
+    //Function bodies around the node being folded, which is also the depth a global is read at
+    private int depth;
+
+    /*
+     * Optimized copy of a resolved program. With wholeProgram set, no later program can read its globals,
+     * so every declaration it never reads is removed; otherwise only propagated consts are.
+     */
+    public Program optimize(Program program, boolean wholeProgram) {
+        int before = countNodes(program);
+        List<Stmt> folded = new ArrayList<>();
+        for (Stmt statement : program.getBody()) {
+            folded.add(fold(statement));
+        }
+
+        Set<Integer> used = new HashSet<>();
+        for (Stmt statement : folded) {
+            collectUses(statement, used, 0);
+        }
+
+        List<Stmt> body = new ArrayList<>();
+        for (int i = 0; i < folded.size(); i++) {
+            Stmt statement = folded.get(i);
+            boolean last = i == folded.size() - 1;
+            if (statement.kind == NodeType.VARIABLEDECLARATION) {
+                VariableDeclaration declaration = (VariableDeclaration) statement;
+                int slot = declaration.getIdentifier().getSlot();
+                if (!used.contains(slot) && (wholeProgram || constants.containsKey(slot))) {
+                    Expr value = declaration.getValue() != null ? declaration.getValue() : new NullLiteral("null");
+                    //The initializer still runs if it can fail, and the last statement's value is the result
+                    if (last || !isPure(value)) {
+                        body.add(value);
+                    }
+                    continue;
+                }
+            }
+            body.add(statement);
+        }
+
+        Program optimized = new Program(body);
+        removed = before - countNodes(optimized);
+        return optimized;
+    }
+
+    public int removedNodes() {
+        return removed;
+    }
+
+    /* =================================================================== //
+                                   FOLDING
+    // =================================================================== */
+    private Stmt fold(Stmt node) {
+        switch (node.kind) {
+            case VARIABLEDECLARATION: {
+                VariableDeclaration declaration = (VariableDeclaration) node;
+                if (declaration.getValue() == null) {
+                    return node;
+                }
+                Expr value = foldExpr(declaration.getValue());
+                if (declaration.isConstant() && isLiteral(value) && depth == 0) {
+                    constants.put(declaration.getIdentifier().getSlot(), value);
+                }
+                return new VariableDeclaration(declaration.isConstant(), declaration.getIdentifier(), value);
+            }
+            default:
+                return node instanceof Expr ? foldExpr((Expr) node) : node;
+        }
+    }
+
+    private Expr foldExpr(Expr node) {
+        switch (node.kind) {
+            case IDENTIFIER: {
+                Identifier identifier = (Identifier) node;
+                Expr constant = identifier.getDepth() == depth ? constants.get(identifier.getSlot()) : null;
+                return constant != null ? constant : identifier;
+            }
+            case BINARYEXPR:
+                return foldBinaryExpr((BinaryExpr) node);
+            case UNARYEXPR: {
+                UnaryExpr unary = (UnaryExpr) node;
+                Expr operand = foldExpr(unary.getOperand());
+                boolean foldable = unary.getOperator() == Operator.NOT
+                        ? operand.kind == NodeType.BOOLLITERAL
+                        : operand.kind == NodeType.INTLITERAL || operand.kind == NodeType.FLOATLITERAL;
+                if (foldable) {
+                    return toLiteral(interpreter.applyUnary(valueOf(operand), unary.getOperator()));
+                }
+                return operand == unary.getOperand() ? unary : new UnaryExpr(operand, unary.getOperator());
+            }
+            case ASSIGNMENTEXPR: {
+                AssignmentExpr assignment = (AssignmentExpr) node;
+                Expr value = foldExpr(assignment.getValue());
+                return value == assignment.getValue() ? assignment : new AssignmentExpr(assignment.getAssignee(), value);
+            }
+            case ARRAYLITERAL: {
+                List<Expr> values = new ArrayList<>();
+                for (Expr value : ((ArrayLiteral) node).getValues()) {
+                    values.add(foldExpr(value));
+                }
+                return new ArrayLiteral(values);
+            }
+            case OBJLITERAL: {
+                List<Property> properties = new ArrayList<>();
+                for (Property property : ((ObjLiteral) node).getProperties()) {
+                    //A shorthand property reads the variable with its key's name
+                    Expr value = property.getValue() != null ? foldExpr(property.getValue()) : null;
+                    properties.add(new Property(property.getKey(), value));
+                }
+                return new ObjLiteral(properties);
+            }
+            case MEMBEREXPR: {
+                MemberExpr member = (MemberExpr) node;
+                //A non-computed property is a key name, not a variable
+                Expr property = member.isComputed() ? foldExpr(member.getProperty()) : member.getProperty();
+                return new MemberExpr(foldExpr(member.getObject()), property, member.isComputed());
+            }
+            case CALLEXPR: {
+                CallExpr call = (CallExpr) node;
+                List<Expr> args = new ArrayList<>();
+                for (Expr arg : call.getArgs()) {
+                    args.add(foldExpr(arg));
+                }
+                return new CallExpr(args, foldExpr(call.getCaller()));
+            }
+            case FUNCEXPR: {
+                FuncExpr function = (FuncExpr) node;
+                List<Stmt> body = new ArrayList<>();
+                depth++;
+                for (Stmt statement : function.getBody()) {
+                    body.add(fold(statement));
+                }
+                depth--;
+                FuncExpr folded = new FuncExpr(function.getParameters(), body);
+                folded.setFrameSize(function.getFrameSize());
+                return folded;
+            }
+            default:
+                return node;
+        }
+    }
+
+    private Expr foldBinaryExpr(BinaryExpr binaryExpr) {
+        Operator operator = binaryExpr.getOperator();
+        Expr left = foldExpr(binaryExpr.getLeft());
+        Expr right = foldExpr(binaryExpr.getRight());
+
+        if (operator == Operator.AND || operator == Operator.OR) {
+            if (left.kind == NodeType.BOOLLITERAL) {
+                //A short-circuiting left side is the result without evaluating the right
+                if (((BoolLiteral) left).getValue() != (operator == Operator.AND)) {
+                    return left;
+                }
+                if (right.kind == NodeType.BOOLLITERAL) {
+                    return right;
+                }
+            }
+        } else if (isNumber(left) && isNumber(right)) {
+            //Division and modulo by zero are runtime errors, so they stay unfolded
+            boolean byZero = (operator == Operator.DIVIDE || operator == Operator.MODULO) && isZero(right);
+            if (!byZero) {
+                return toLiteral(interpreter.applyBinary(valueOf(left), valueOf(right), operator));
+            }
+        } else if (isLiteral(left) && isLiteral(right)
+                && (operator == Operator.EQUALS || operator == Operator.NOTEQUALS)) {
+            return toLiteral(interpreter.applyBinary(valueOf(left), valueOf(right), operator));
+        }
+
+        if (left == binaryExpr.getLeft() && right == binaryExpr.getRight()) {
+            return binaryExpr;
+        }
+        return new BinaryExpr(left, right, operator);
+    }
+
+    //Literals evaluate without touching an Environment
+    private RuntimeVal valueOf(Expr literal) {
+        return interpreter.evaluate(literal, null);
+    }
+
+    private static boolean isZero(Expr node) {
+        return node.kind == NodeType.INTLITERAL
+                ? ((IntLiteral) node).getValue() == 0
+                : ((FloatLiteral) node).getValue() == 0;
+    }
+
+    private static boolean isNumber(Expr node) {
+        return node.kind == NodeType.INTLITERAL || node.kind == NodeType.FLOATLITERAL;
+    }
+
+    private static boolean isLiteral(Expr node) {
+        return isNumber(node) || node.kind == NodeType.BOOLLITERAL;
+    }
+
+    private static Expr toLiteral(RuntimeVal value) {
+        if (value instanceof IntVal) {
+            return new IntLiteral(((IntVal) value).getValue());
+        } else if (value instanceof FloatVal) {
+            return new FloatLiteral(((FloatVal) value).getValue());
+        }
+        return new BoolLiteral(((BoolVal) value).getValue());
+    }
+
+    /* =================================================================== //
+                              DEAD DECLARATIONS
+    // =================================================================== */
+    //Global slots the statement reads or assigns, from 'depth' function bodies deep; an assigned slot keeps its declaration so the frame holds it
+    private static void collectUses(Stmt node, Set<Integer> used, int depth) {
+        if (node == null) {
+            return;
+        }
+        switch (node.kind) {
+            case IDENTIFIER -> {
+                Identifier identifier = (Identifier) node;
+                if (identifier.getDepth() == depth) {
+                    used.add(identifier.getSlot());
+                }
+            }
+            case VARIABLEDECLARATION -> collectUses(((VariableDeclaration) node).getValue(), used, depth);
+            case ASSIGNMENTEXPR -> {
+                collectUses(((AssignmentExpr) node).getAssignee(), used, depth);
+                collectUses(((AssignmentExpr) node).getValue(), used, depth);
+            }
+            case BINARYEXPR -> {
+                collectUses(((BinaryExpr) node).getLeft(), used, depth);
+                collectUses(((BinaryExpr) node).getRight(), used, depth);
+            }
+            case UNARYEXPR -> collectUses(((UnaryExpr) node).getOperand(), used, depth);
+            case ARRAYLITERAL -> {
+                for (Expr value : ((ArrayLiteral) node).getValues()) {
+                    collectUses(value, used, depth);
+                }
+            }
+            case OBJLITERAL -> {
+                for (Property property : ((ObjLiteral) node).getProperties()) {
+                    collectUses(property.getValue(), used, depth);
+                }
+            }
+            case MEMBEREXPR -> {
+                MemberExpr member = (MemberExpr) node;
+                collectUses(member.getObject(), used, depth);
+                if (member.isComputed()) {
+                    collectUses(member.getProperty(), used, depth);
+                }
+            }
+            case CALLEXPR -> {
+                collectUses(((CallExpr) node).getCaller(), used, depth);
+                for (Expr arg : ((CallExpr) node).getArgs()) {
+                    collectUses(arg, used, depth);
+                }
+            }
+            case FUNCEXPR -> {
+                //Inside the body, globals are one frame further out
+                for (Stmt statement : ((FuncExpr) node).getBody()) {
+                    collectUses(statement, used, depth + 1);
+                }
+            }
+            default -> {
+                //Literals use no variables
+            }
+        }
+    }
+
+    //True if evaluating the expression can neither fail nor change anything
+    private static boolean isPure(Expr node) {
+        switch (node.kind) {
+            case INTLITERAL:
+            case FLOATLITERAL:
+            case BOOLLITERAL:
+            case NULLLITERAL:
+            case STRINGLITERAL:
+            case IDENTIFIER:
+            case FUNCEXPR:
+                return true;
+            case ARRAYLITERAL:
+                return ((ArrayLiteral) node).getValues().stream().allMatch(Optimizer::isPure);
+            default:
+                return false;
+        }
+    }
+
+    /* =================================================================== //
+                                 STATISTICS
+    // =================================================================== */
+    static int countNodes(Stmt node) {
+        if (node == null) {
+            return 0;
+        }
+        switch (node.kind) {
+            case PROGRAM: {
+                int count = 1;
+                for (Stmt statement : ((Program) node).getBody()) {
+                    count += countNodes(statement);
+                }
+                return count;
+            }
+            case VARIABLEDECLARATION:
+                return 1 + countNodes(((VariableDeclaration) node).getIdentifier())
+                        + countNodes(((VariableDeclaration) node).getValue());
+            case ASSIGNMENTEXPR:
+                return 1 + countNodes(((AssignmentExpr) node).getAssignee()) + countNodes(((AssignmentExpr) node).getValue());
+            case BINARYEXPR:
+                return 1 + countNodes(((BinaryExpr) node).getLeft()) + countNodes(((BinaryExpr) node).getRight());
+            case UNARYEXPR:
+                return 1 + countNodes(((UnaryExpr) node).getOperand());
+            case ARRAYLITERAL: {
+                int count = 1;
+                for (Expr value : ((ArrayLiteral) node).getValues()) {
+                    count += countNodes(value);
+                }
+                return count;
+            }
+            case OBJLITERAL: {
+                int count = 1;
+                for (Property property : ((ObjLiteral) node).getProperties()) {
+                    count += 1 + countNodes(property.getValue());
+                }
+                return count;
+            }
+            case MEMBEREXPR:
+                return 1 + countNodes(((MemberExpr) node).getObject()) + countNodes(((MemberExpr) node).getProperty());
+            case CALLEXPR: {
+                int count = 1 + countNodes(((CallExpr) node).getCaller());
+                for (Expr arg : ((CallExpr) node).getArgs()) {
+                    count += countNodes(arg);
+                }
+                return count;
+            }
+            case FUNCEXPR: {
+                FuncExpr function = (FuncExpr) node;
+                int count = 1 + function.getParameters().size();
+                for (Stmt statement : function.getBody()) {
+                    count += countNodes(statement);
+                }
+                return count;
+            }
+            default:
+                return 1;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/* =================================================================== //
+     pmap, pfilter, preduce AND psort. THE ARRAY IS SPLIT IN HALVES
+     UNTIL A PIECE HAS NO MORE THAN GRAIN ELEMENTS; THE PIECES RUN AS
+     TASKS ON ONE SHARED ForkJoinPool AND THEIR RESULTS ARE COMBINED IN
+     ARRAY ORDER, SO EVERY RESULT IS THE SAME ON ANY NUMBER OF CORES.
+     ARRAYS SHORTER THAN THRESHOLD RUN AS ONE PIECE ON THE CALLING
+     THREAD, WHERE SPLITTING WOULD COST MORE THAN IT SAVES.
+
+     EACH TASK HAS ITS OWN Interpreter, AND THE FUNCTIONS IT CALLS SEE
+     THE VARIABLES AROUND THEM THROUGH READ-ONLY VIEWS, SO TASKS CANNOT
+     RACE ON THEM. ARRAYS AND OBJECTS ARE NOT COPIED: A FUNCTION THAT
+     CHANGES ONE THE OTHER TASKS CAN SEE RACES WITH THEM.
+
+     TUNING:
+         -Dtwofive.parallelism=N         WORKER THREADS (DEFAULT: CORES)
+         -Dtwofive.parallel.threshold=N  SMALLEST ARRAY SPLIT (4096)
+         -Dtwofive.parallel.grain=N      LARGEST PIECE (1024)
+// =================================================================== */
+final class Parallel {
+    static final int PARALLELISM = Math.max(1,
+            Integer.getInteger("twofive.parallelism", Runtime.getRuntime().availableProcessors()));
+    static final int THRESHOLD = Integer.getInteger("twofive.parallel.threshold", 4096);
+    static final int GRAIN = Math.max(1, Integer.getInteger("twofive.parallel.grain", 1024));
+
+    //Workers are daemon threads, started as tasks arrive, so scripts that never go parallel pay nothing.
+    //Native builtins (Hull, KdTree) run their own tasks here too
+    static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+
+    private Parallel() {
+    }
+
+    //The result of one piece, elements [from, to)
+    private interface Piece<T> {
+        T run(Interpreter interpreter, int from, int to);
+    }
+
+    //Two adjacent pieces' results as one, the left one first
+    private interface Combiner<T> {
+        T combine(Interpreter interpreter, T left, T right);
+    }
+
+    private static <T> T split(int size, Piece<T> piece, Combiner<T> combiner) {
+        if (size < THRESHOLD) {
+            return piece.run(Interpreter.forTask(), 0, size);
+        }
+        return POOL.invoke(new Task<>(piece, combiner, 0, size));
+    }
+
+    private static final class Task<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final Piece<T> piece;
+        private final Combiner<T> combiner;
+        private final int from;
+        private final int to;
+
+        Task(Piece<T> piece, Combiner<T> combiner, int from, int to) {
+            this.piece = piece;
+            this.combiner = combiner;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= GRAIN) {
+                return piece.run(Interpreter.forTask(), from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Task<T> left = new Task<>(piece, combiner, from, middle);
+            left.fork();
+            T right = new Task<>(piece, combiner, middle, to).compute();
+            return combiner.combine(Interpreter.forTask(), left.join(), right);
+        }
+    }
+
+    /* =================================================================== //
+         NATIVE LOOPS: BUILTINS THAT CALL NO SCRIPT FUNCTIONS SPLIT THEIR
+         OWN WORK INTO A FEW NUMBERED PIECES, EACH OF WHICH WRITES ITS
+         RESULT TO ITS OWN SLOT.
+    // =================================================================== */
+    //The work for elements [from, to), which is piece number 'piece'
+    interface Range {
+        void run(int piece, int from, int to);
+    }
+
+    //Enough pieces to keep every worker busy, but none with fewer than 'smallest' elements
+    static int pieces(int size, int smallest) {
+        return Math.max(1, Math.min(PARALLELISM * 4, size / smallest));
+    }
+
+    static void inPieces(int size, int smallest, Range range) {
+        int pieces = pieces(size, smallest);
+        if (pieces == 1) {
+            range.run(0, 0, size);
+            return;
+        }
+        POOL.invoke(new RangeTask(range, size, pieces, 0, pieces));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Range range;
+        private final int size;
+        private final int pieces;
+        private final int first;
+        private final int last;
+
+        RangeTask(Range range, int size, int pieces, int first, int last) {
+            this.range = range;
+            this.size = size;
+            this.pieces = pieces;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                range.run(first, (int) ((long) first * size / pieces), (int) ((long) last * size / pieces));
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            RangeTask left = new RangeTask(range, size, pieces, first, middle);
+            left.fork();
+            new RangeTask(range, size, pieces, middle, last).compute();
+            left.join();
+        }
+    }
+
+    /* =================================================================== //
+                                   BUILTINS
+    // =================================================================== */
+    static ArrayVal map(ArrayVal array, RuntimeVal function) {
+        RuntimeVal[] results = new RuntimeVal[array.size()];
+        //Each piece fills its own range of the results, so there is nothing to combine
+        split(array.size(), (interpreter, from, to) -> {
+            RuntimeVal[] args = new RuntimeVal[1];
+            for (int i = from; i < to; i++) {
+                args[0] = array.get(i);
+                results[i] = interpreter.call(function, args);
+            }
+            return null;
+        }, (interpreter, left, right) -> null);
+        return ArrayVal.of(Arrays.asList(results));
+    }
+
+    static ArrayVal filter(ArrayVal array, RuntimeVal predicate) {
+        List<RuntimeVal> kept = split(array.size(), (interpreter, from, to) -> {
+            List<RuntimeVal> values = new ArrayList<>();
+            RuntimeVal[] args = new RuntimeVal[1];
+            for (int i = from; i < to; i++) {
+                args[0] = array.get(i);
+                if (test(interpreter, "pfilter", predicate, args)) {
+                    values.add(array.get(i));
+                }
+            }
+            return values;
+        }, (interpreter, left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+        return ArrayVal.of(kept);
+    }
+
+    //Folds each piece on its own and then the pieces' results, so 'function' must be associative
+    static RuntimeVal reduce(ArrayVal array, RuntimeVal function, RuntimeVal initial) {
+        if (array.size() == 0) {
+            return initial;
+        }
+        RuntimeVal total = split(array.size(), (interpreter, from, to) -> {
+            RuntimeVal result = array.get(from);
+            for (int i = from + 1; i < to; i++) {
+                result = interpreter.call(function, new RuntimeVal[]{result, array.get(i)});
+            }
+            return result;
+        }, (interpreter, left, right) -> interpreter.call(function, new RuntimeVal[]{left, right}));
+        return Interpreter.forTask().call(function, new RuntimeVal[]{initial, total});
+    }
+
+    //Stable merge sort; 'less' decides whether its first argument goes first, or "<" does if it is null
+    static ArrayVal sort(ArrayVal array, RuntimeVal less) {
+        RuntimeVal[] sorted = split(array.size(), (interpreter, from, to) -> {
+            RuntimeVal[] values = new RuntimeVal[to - from];
+            for (int i = from; i < to; i++) {
+                values[i - from] = array.get(i);
+            }
+            return sortPiece(interpreter, less, values);
+        }, (interpreter, left, right) -> merge(interpreter, less, left, 0, left.length, right, 0, right.length,
+                new RuntimeVal[left.length + right.length], 0));
+        return ArrayVal.of(Arrays.asList(sorted));
+    }
+
+    //Bottom-up merge sort of one piece, on the calling thread
+    private static RuntimeVal[] sortPiece(Interpreter interpreter, RuntimeVal less, RuntimeVal[] values) {
+        RuntimeVal[] buffer = new RuntimeVal[values.length];
+        for (int width = 1; width < values.length; width *= 2) {
+            for (int start = 0; start < values.length; start += 2 * width) {
+                int middle = Math.min(start + width, values.length);
+                int end = Math.min(start + 2 * width, values.length);
+                merge(interpreter, less, values, start, middle, values, middle, end, buffer, start);
+            }
+            RuntimeVal[] swap = values;
+            values = buffer;
+            buffer = swap;
+        }
+        return values;
+    }
+
+    //Merges a[aFrom, aTo) and b[bFrom, bTo) into out from 'at'; ties keep a's element first
+    private static RuntimeVal[] merge(Interpreter interpreter, RuntimeVal less, RuntimeVal[] a, int aFrom, int aTo,
+                                      RuntimeVal[] b, int bFrom, int bTo, RuntimeVal[] out, int at) {
+        RuntimeVal[] args = new RuntimeVal[2];
+        int i = aFrom;
+        int j = bFrom;
+        while (i < aTo && j < bTo) {
+            args[0] = b[j];
+            args[1] = a[i];
+            boolean takeB = less == null
+                    ? interpreter.expectBool(interpreter.applyBinary(b[j], a[i], Operator.LESSER), Operator.LESSER)
+                    : test(interpreter, "psort", less, args);
+            out[at++] = takeB ? b[j++] : a[i++];
+        }
+        while (i < aTo) {
+            out[at++] = a[i++];
+        }
+        while (j < bTo) {
+            out[at++] = b[j++];
+        }
+        return out;
+    }
+
+    private static boolean test(Interpreter interpreter, String name, RuntimeVal function, RuntimeVal[] args) {
+        RuntimeVal result = interpreter.call(function, args);
+        if (!(result instanceof BoolVal)) {
+            System.err.println("Type Error: " + name + " expects its function to return a BoolVal, got "
+                    + result.getClass().getSimpleName());
+            System.exit(1);
+        }
+        return ((BoolVal) result).getValue();
+    }
+}
@@ -1,26 +1,56 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
 import java.util.*;
 
 public class Parser {
 
-    private List<Token> tokens;
-    private final Lexer lexer = new Lexer();
+    private TokenStream tokens;
 
-    private Token eat() {
-        Token prev = this.tokens.get(0);
-        this.tokens.remove(0);
+    private TokenType eat() {
+        TokenType prev = this.tokens.type(0);
+        this.tokens.advance();
         return prev;
     }
 
     private boolean notEOF() {
-        return this.tokens.get(0).type != TokenType.EOF;
+        return this.tokens.type(0) != TokenType.EOF;
     }
 
-    private Token at() {
-        return this.tokens.get(0);
+    private TokenType at() {
+        return this.tokens.type(0);
+    }
+
+    //Text of the current token, built on demand
+    private String value() {
+        return this.tokens.text(0);
+    }
+
+    private Operator infixOperator() {
+        return Operator.infix(this.at(), this.tokens.firstChar(0));
+    }
+
+    private Operator prefixOperator() {
+        return Operator.prefix(this.at(), this.tokens.firstChar(0));
     }
 
     public Program produceAST(String sourceCode) {
-        this.tokens = lexer.tokenize(sourceCode);
+        return produceAST(new TokenStream(new Lexer(sourceCode)));
+    }
+
+    //Tokens are lexed from the reader on demand, so the source text is never held in full
+    public Program produceAST(Reader source) {
+        return produceAST(new TokenStream(new Lexer(source)));
+    }
+
+    public Program produceAST(Path file) throws IOException {
+        try (Reader source = new MappedFileReader(file)) {
+            return produceAST(source);
+        }
+    }
+
+    private Program produceAST(TokenStream tokens) {
+        this.tokens = tokens;
         List<Stmt> statements = new ArrayList<>();
 
         while (this.notEOF()) {
@@ -30,44 +60,44 @@ public class Parser {
         return new Program(statements);
     }
 
-    private Token expect(TokenType type, String err) {
-        if (tokens.isEmpty()) {
-            handleError(err, null, type);
-            return null;
-        }
-        Token prev = tokens.remove(0);
-        if (prev == null || !prev.getType().equals(type)) {
-            handleError(err, prev, type);
+    //Consume a token of the given type and return its text
+    private String expect(TokenType type, String err) {
+        if (this.at() != type) {
+            handleError(err, this.tokens.token(0), type);
         }
+        String prev = this.value();
+        this.tokens.advance();
         return prev;
     }
 
     private Stmt parseStmt() {
-        return switch (this.at().type) {
-            case VAR, CONST -> this.parseVarDeclaration();
-            default -> this.parseExpr();
-        };
+        if (this.at() == TokenType.VAR || this.at() == TokenType.CONST) {
+            return this.parseVarDeclaration();
+        }
+        Expr expr = this.parseExpr();
+        //The terminating semicolon is optional after an expression statement
+        if (this.at() == TokenType.SEMICOLON) {
+            this.eat();
+        }
+        return expr;
     }
 
     private Expr parseObjExpr() {
-        if (this.at().type != TokenType.OPENBRACE) {
-            return this.parseArrayExpr();
-        }
         this.eat();
 
         ArrayList<Property> properties = new ArrayList<>();
 
-        while (this.notEOF() && this.at().type != TokenType.CLOSEBRACE) {
+        while (this.notEOF() && this.at() != TokenType.CLOSEBRACE) {
 
-            String key = this.expect(TokenType.IDENTIFIER, "Expected object literal key.").value;
+            String key = this.expect(TokenType.IDENTIFIER, "Expected object literal key.");
 
-            // key : -> { key, ... } No value specified
-            if (this.at().type == TokenType.COMMA) {
+            // key : -> { key, ... } No value specified, so the value is the variable of that name
+            if (this.at() == TokenType.COMMA) {
                 this.eat();
-                properties.add(new Property(key));
+                properties.add(new Property(key, new Identifier(key)));
                 continue;
-            } else if (this.at().type == TokenType.CLOSEBRACE) {
-                properties.add(new Property(key));
+            } else if (this.at() == TokenType.CLOSEBRACE) {
+                properties.add(new Property(key, new Identifier(key)));
                 continue;
             }
             // represents {key : value} structure
@@ -77,7 +107,7 @@ public class Parser {
             );
             Expr value = this.parseExpr();
             properties.add(new Property(key, value));
-            if (this.at().type != TokenType.CLOSEBRACE) {
+            if (this.at() != TokenType.CLOSEBRACE) {
                 this.expect(
                         TokenType.COMMA,
                         "Expected comma or closing bracket following previous property."
@@ -89,16 +119,13 @@ public class Parser {
     }
 
     private Expr parseArrayExpr() {
-        if (this.at().type != TokenType.OPENBRACKET) {
-            return this.parseTryCatchExpr();
-        }
         this.eat();
 
         ArrayList<Expr> values = new ArrayList<>();
 
-        while (this.notEOF() && this.at().type != TokenType.CLOSEBRACKET) {
+        while (this.notEOF() && this.at() != TokenType.CLOSEBRACKET) {
             values.add(this.parseExpr());
-            if (this.at().type != TokenType.CLOSEBRACKET) {
+            if (this.at() != TokenType.CLOSEBRACKET) {
                 this.expect(TokenType.COMMA, "Expected comma (\",\") or closing bracket (\"]\") after array element.");
             }
         }
@@ -106,18 +133,37 @@ public class Parser {
         return new ArrayLiteral(values);
     }
 
-    private Expr parseTryCatchExpr() {
-        return null;
+    //func(a, b) { statements }
+    private Expr parseFuncExpr() {
+        this.eat();
+        this.expect(TokenType.OPENPAREN, "Expected opening parenthesis (\"(\") after func.");
+
+        List<Identifier> parameters = new ArrayList<>();
+        while (this.notEOF() && this.at() != TokenType.CLOSEPAREN) {
+            parameters.add(this.parseIdentifier());
+            if (this.at() != TokenType.CLOSEPAREN) {
+                this.expect(TokenType.COMMA, "Expected comma (\",\") or closing parenthesis (\")\") after parameter.");
+            }
+        }
+        this.expect(TokenType.CLOSEPAREN, "Expected closing parenthesis (\")\") at the end of parameter list.");
+        this.expect(TokenType.OPENBRACE, "Expected opening brace (\"{\") before function body.");
+
+        List<Stmt> body = new ArrayList<>();
+        while (this.notEOF() && this.at() != TokenType.CLOSEBRACE) {
+            body.add(this.parseStmt());
+        }
+        this.expect(TokenType.CLOSEBRACE, "Expected closing brace (\"}\") at the end of function body.");
+        return new FuncExpr(parameters, body);
     }
 
     private Stmt parseVarDeclaration() {
-        boolean isConstant = this.eat().type == TokenType.CONST;
-        String identifier = Objects.requireNonNull(this.expect(
+        boolean isConstant = this.eat() == TokenType.CONST;
+        String identifier = this.expect(
                 TokenType.IDENTIFIER,
                 "Expected identifier name following variable declaration expression (VAR, CONST)."
-        )).value;
+        );
 
-        if (this.at().type == TokenType.SEMICOLON) {
+        if (this.at() == TokenType.SEMICOLON) {
             this.eat();
             if (isConstant) {
                 System.err.println("Error: Constant variable " + identifier + " must be initialized with a value.");
@@ -125,14 +171,14 @@ public class Parser {
             }
             return new VariableDeclaration(false, new Identifier(identifier), null);
         }
-        if (this.at().type == TokenType.EQUALS) {
+        if (this.at() == TokenType.EQUALS) {
             this.eat();
             Expr initializer = this.parseExpr();
             if (initializer == null) {
                 System.err.println("Error: Missing expression after equals sign for variable initialization.");
                 System.exit(1);
             }
-            this.expect(TokenType.SEMICOLON, "Expected \";\", got \"" + this.tokens.get(0) + "\".");
+            this.expect(TokenType.SEMICOLON, "Expected \";\", got \"" + this.tokens.token(0) + "\".");
             return new VariableDeclaration(isConstant, new Identifier(identifier), initializer);
         }
         System.err.println("Error: Unexpected token after variable declaration.");
@@ -145,9 +191,9 @@ public class Parser {
     }
 
     private Expr parseAssignmentExpr() {
-        Expr left = this.parseAdditiveExpr();
+        Expr left = this.parseBinaryExpr(0);
 
-        if (this.at().type == TokenType.EQUALS) {
+        if (this.at() == TokenType.EQUALS) {
             this.eat();
             Expr value = this.parseAssignmentExpr();
             return new AssignmentExpr(left, value);
@@ -156,30 +202,75 @@ public class Parser {
         return left;
     }
 
-    private Expr parseAdditiveExpr() {
-        Expr left = this.parseMultiplicitaveExpr();
-
-        while (this.at().value.equals("+") || this.at().value.equals("-")) {
-            String operator = this.eat().value;
-            Expr right = this.parseMultiplicitaveExpr();
+    /*
+     * Precedence climbing: keep folding infix operators into 'left' for as long as
+     * they bind at least as tightly as minPrecedence. Right associative operators
+     * parse their right operand at their own level, the rest one level above.
+     */
+    private Expr parseBinaryExpr(int minPrecedence) {
+        Expr left = this.parseUnaryExpr();
+
+        while (true) {
+            Operator operator = this.infixOperator();
+            if (operator == null || operator.getPrecedence() < minPrecedence) {
+                return left;
+            }
+            this.eat();
+            int next = operator.isRightAssociative() ? operator.getPrecedence() : operator.getPrecedence() + 1;
+            Expr right = this.parseBinaryExpr(next);
             left = new BinaryExpr(left, right, operator);
         }
-        return left;
     }
 
-    private Expr parseMultiplicitaveExpr() {
-        Expr left = this.parsePrimaryExpr();
+    private Expr parseUnaryExpr() {
+        Operator operator = this.prefixOperator();
+        if (operator == null) {
+            return this.parseCallMemberExpr();
+        }
+        this.eat();
+        Expr operand = this.parseBinaryExpr(operator.getPrecedence());
+        return new UnaryExpr(operand, operator);
+    }
 
-        while (this.at().value.equals("*") || this.at().value.equals("/") || this.at().value.equals("%")) {
-            String operator = this.eat().value;
-            Expr right = this.parsePrimaryExpr();
-            left = new BinaryExpr(left, right, operator);
+    //Calls f(a, b), indexing a[i] and property access a.b, in any order, on the same line as what they follow
+    private Expr parseCallMemberExpr() {
+        Expr expr = this.parsePrimaryExpr();
+
+        while (!this.tokens.lineBreakBefore(0)) {
+            if (this.at() == TokenType.OPENPAREN) {
+                expr = new CallExpr(this.parseArgs(), expr);
+            } else if (this.at() == TokenType.OPENBRACKET) {
+                this.eat();
+                Expr index = this.parseExpr();
+                this.expect(TokenType.CLOSEBRACKET, "Expected closing bracket (\"]\") after index.");
+                expr = new MemberExpr(expr, index, true);
+            } else if (this.at() == TokenType.DOT) {
+                this.eat();
+                expr = new MemberExpr(expr, this.parseIdentifier(), false);
+            } else {
+                return expr;
+            }
         }
-        return left;
+        return expr;
+    }
+
+    private List<Expr> parseArgs() {
+        this.eat();
+
+        List<Expr> args = new ArrayList<>();
+
+        while (this.notEOF() && this.at() != TokenType.CLOSEPAREN) {
+            args.add(this.parseExpr());
+            if (this.at() != TokenType.CLOSEPAREN) {
+                this.expect(TokenType.COMMA, "Expected comma (\",\") or closing parenthesis (\")\") after argument.");
+            }
+        }
+        this.expect(TokenType.CLOSEPAREN, "Expected closing parenthesis (\")\") at the end of argument list.");
+        return args;
     }
 
     private Expr parsePrimaryExpr() {
-        TokenType token = this.at().type;
+        TokenType token = this.at();
 
         switch (token) {
             //User defined values
@@ -197,6 +288,17 @@ public class Parser {
                 return new NullLiteral("null");
             case BOOL:
                 return parseBool();
+            case STRING:
+                return parseString();
+
+            case FUNC:
+                return parseFuncExpr();
+
+            //Compound literals
+            case OPENBRACE:
+                return parseObjExpr();
+            case OPENBRACKET:
+                return parseArrayExpr();
 
             //Expressions
             case OPENPAREN:
@@ -210,7 +312,7 @@ public class Parser {
             case EOF:
                 System.exit(0);
             default:
-                System.err.println("Error: Unexpected token, " + this.at());
+                System.err.println("Error: Unexpected token, " + this.tokens.token(0));
                 System.exit(1);
         }
         return null;
@@ -220,35 +322,45 @@ public class Parser {
                                    PARSE CASES
     // =================================================================== */
     private Identifier parseIdentifier() {
-        Token token = eat();
-        if (token.getType() != TokenType.IDENTIFIER) {
-            handleError("Expected identifier, found: ", token, token.getType());
+        if (this.at() != TokenType.IDENTIFIER) {
+            handleError("Expected identifier, found: ", this.tokens.token(0), TokenType.IDENTIFIER);
         }
-        return new Identifier(token.getValue());
+        String token = this.value();
+        this.eat();
+        return new Identifier(token);
     }
 
     private IntLiteral parseInt() {
-        Token token = eat();
-        if (token.getType() != TokenType.INT) {
-            handleError("Expected integer literal, found: ", token, token.getType());
+        if (this.at() != TokenType.INT) {
+            handleError("Expected integer literal, found: ", this.tokens.token(0), TokenType.INT);
         }
-        return new IntLiteral(Integer.parseInt(token.getValue()));
+        String token = this.value();
+        this.eat();
+        return new IntLiteral(Integer.parseInt(token));
     }
 
     private FloatLiteral parseFloat() {
-        Token token = eat();
-        if (token.getType() != TokenType.FLOAT) {
-            handleError("Expected float literal, found: ", token, token.getType());
+        if (this.at() != TokenType.FLOAT) {
+            handleError("Expected float literal, found: ", this.tokens.token(0), TokenType.FLOAT);
         }
-        return new FloatLiteral(Float.parseFloat(token.getValue()));
+        String token = this.value();
+        this.eat();
+        return new FloatLiteral(Float.parseFloat(token));
     }
 
     private BoolLiteral parseBool() {
-        Token token = eat();
-        if (token.getType() != TokenType.BOOL) {
-            handleError("Expected boolean literal, found: ", token, token.getType());
+        if (this.at() != TokenType.BOOL) {
+            handleError("Expected boolean literal, found: ", this.tokens.token(0), TokenType.BOOL);
         }
-        return new BoolLiteral(Boolean.parseBoolean(token.getValue()));
+        String token = this.value();
+        this.eat();
+        return new BoolLiteral(Boolean.parseBoolean(token));
+    }
+
+    private StringLiteral parseString() {
+        String token = this.value();
+        this.eat();
+        return new StringLiteral(token.substring(1, token.length() - 1));
     }
 
     // =================================================================== //
@@ -0,0 +1,253 @@
+import java.util.Arrays;
+
+/* =================================================================== //
+     IMMUTABLE ArrayVal STORAGE FOR const ARRAYS AND FOR THE RESULTS OF
+     push, update, slice AND concat. ELEMENTS LIVE IN A 32-WAY TRIE WITH
+     A SEPARATE TAIL, SO A CHANGED COPY ONLY REBUILDS THE PATH TO ONE
+     LEAF AND SHARES EVERYTHING ELSE WITH THE ORIGINAL:
+
+         update, push   O(log32 n), effectively constant
+         slice          O(1); a view of [start, end) of the same trie
+
+     A SLICE KEEPS ITS WHOLE TRIE REACHABLE. set AND add, THE IN-PLACE
+     OPERATIONS EVERY OTHER STORAGE HAS, ARE ERRORS HERE.
+// =================================================================== */
+final class PersistentStorage extends ArrayStorage {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    static final PersistentStorage EMPTY_VECTOR = new PersistentStorage(Trie.EMPTY, 0, 0);
+
+    private final Trie trie;
+    private final int start;
+    private final int end;
+
+    private PersistentStorage(Trie trie, int start, int end) {
+        this.trie = trie;
+        this.start = start;
+        this.end = end;
+    }
+
+    //The value with any mutable array replaced by an immutable copy, as const declarations store it
+    static RuntimeVal freeze(RuntimeVal value) {
+        if (value instanceof ArrayVal && !(((ArrayVal) value).storage() instanceof PersistentStorage)) {
+            return new ArrayVal(of((ArrayVal) value));
+        }
+        return value;
+    }
+
+    //The array's elements as persistent storage; copies unless they already are
+    static PersistentStorage of(ArrayVal array) {
+        if (array.storage() instanceof PersistentStorage) {
+            return (PersistentStorage) array.storage();
+        }
+        Builder builder = new Builder();
+        for (int i = 0; i < array.size(); i++) {
+            builder.add(array.get(i));
+        }
+        return builder.build();
+    }
+
+    @Override
+    Kind kind() {
+        return Kind.PERSISTENT;
+    }
+
+    @Override
+    int size() {
+        return end - start;
+    }
+
+    @Override
+    RuntimeVal get(int index) {
+        return trie.get(start + index);
+    }
+
+    @Override
+    ArrayStorage set(int index, RuntimeVal value) {
+        return immutable();
+    }
+
+    @Override
+    ArrayStorage add(RuntimeVal value) {
+        return immutable();
+    }
+
+    private ArrayStorage immutable() {
+        System.err.println("Type Error: Cannot modify a const array; update(a, i, value) and push(a, value) "
+                + "return changed copies");
+        System.exit(1);
+        return this;
+    }
+
+    /* =================================================================== //
+                              PERSISTENT UPDATES
+    // =================================================================== */
+    PersistentStorage update(int index, RuntimeVal value) {
+        return new PersistentStorage(trie.assoc(start + index, value), start, end);
+    }
+
+    PersistentStorage push(RuntimeVal value) {
+        //Past the end of a slice the trie may still hold elements, which the view never showed
+        Trie next = end == trie.count ? trie.cons(value) : trie.assoc(end, value);
+        return new PersistentStorage(next, start, end + 1);
+    }
+
+    PersistentStorage slice(int from, int to) {
+        return new PersistentStorage(trie, start + from, start + to);
+    }
+
+    /* =================================================================== //
+         THE TRIE ITSELF. LEAVES AND INNER NODES ARE Object[WIDTH]; THE
+         LAST 1 TO 32 ELEMENTS ARE KEPT IN 'tail' SO APPENDS RARELY
+         TOUCH THE TREE. 'shift' IS BITS TIMES THE NUMBER OF LEVELS
+         ABOVE THE LEAVES.
+    // =================================================================== */
+    private static final class Trie {
+        static final Trie EMPTY = new Trie(0, BITS, new Object[WIDTH], new Object[0]);
+
+        final int count;
+        final int shift;
+        final Object[] root;
+        final Object[] tail;
+
+        Trie(int count, int shift, Object[] root, Object[] tail) {
+            this.count = count;
+            this.shift = shift;
+            this.root = root;
+            this.tail = tail;
+        }
+
+        //Index of the first element in the tail
+        private int tailOffset() {
+            return count < WIDTH ? 0 : ((count - 1) >>> BITS) << BITS;
+        }
+
+        private Object[] leafFor(int index) {
+            if (index >= tailOffset()) {
+                return tail;
+            }
+            Object[] node = root;
+            for (int level = shift; level > 0; level -= BITS) {
+                node = (Object[]) node[(index >>> level) & MASK];
+            }
+            return node;
+        }
+
+        RuntimeVal get(int index) {
+            return (RuntimeVal) leafFor(index)[index & MASK];
+        }
+
+        Trie assoc(int index, RuntimeVal value) {
+            if (index >= tailOffset()) {
+                Object[] newTail = tail.clone();
+                newTail[index & MASK] = value;
+                return new Trie(count, shift, root, newTail);
+            }
+            return new Trie(count, shift, assoc(shift, root, index, value), tail);
+        }
+
+        private static Object[] assoc(int level, Object[] node, int index, RuntimeVal value) {
+            Object[] copy = node.clone();
+            if (level == 0) {
+                copy[index & MASK] = value;
+            } else {
+                int child = (index >>> level) & MASK;
+                copy[child] = assoc(level - BITS, (Object[]) node[child], index, value);
+            }
+            return copy;
+        }
+
+        Trie cons(RuntimeVal value) {
+            if (count - tailOffset() < WIDTH) {
+                Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+                newTail[tail.length] = value;
+                return new Trie(count + 1, shift, root, newTail);
+            }
+            //The tail is full: it becomes a leaf, and the value starts a new tail
+            Object[] newRoot;
+            int newShift = shift;
+            if ((count >>> BITS) > (1 << shift)) {
+                //No room under the root, so the tree grows a level
+                newRoot = new Object[WIDTH];
+                newRoot[0] = root;
+                newRoot[1] = newPath(shift, tail);
+                newShift += BITS;
+            } else {
+                newRoot = pushTail(shift, root, tail);
+            }
+            return new Trie(count + 1, newShift, newRoot, new Object[]{value});
+        }
+
+        private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+            int child = ((count - 1) >>> level) & MASK;
+            Object[] copy = parent.clone();
+            if (level == BITS) {
+                copy[child] = leaf;
+            } else {
+                Object[] next = (Object[]) parent[child];
+                copy[child] = next != null ? pushTail(level - BITS, next, leaf) : newPath(level - BITS, leaf);
+            }
+            return copy;
+        }
+
+        private static Object[] newPath(int level, Object[] leaf) {
+            if (level == 0) {
+                return leaf;
+            }
+            Object[] node = new Object[WIDTH];
+            node[0] = newPath(level - BITS, leaf);
+            return node;
+        }
+    }
+
+    /* =================================================================== //
+         TRANSIENT BUILDER: COLLECTS ELEMENTS IN A PLAIN ARRAY AND BUILDS
+         THE TRIE BOTTOM UP IN ONE PASS, SO BULK CONSTRUCTION COPIES NO
+         PATHS AT ALL. SINGLE USE.
+    // =================================================================== */
+    static final class Builder {
+        private Object[] values = new Object[WIDTH];
+        private int size;
+
+        void add(RuntimeVal value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = value;
+        }
+
+        PersistentStorage build() {
+            if (size == 0) {
+                return EMPTY_VECTOR;
+            }
+            Trie shape = new Trie(size, BITS, null, null);
+            int tailOffset = shape.tailOffset();
+            Object[] tail = Arrays.copyOfRange(values, tailOffset, size);
+
+            //Full leaves, then each level above them, until one level fits under the root
+            int nodes = tailOffset / WIDTH;
+            Object[] level = new Object[nodes];
+            for (int i = 0; i < nodes; i++) {
+                level[i] = Arrays.copyOfRange(values, i * WIDTH, (i + 1) * WIDTH);
+            }
+            int shift = BITS;
+            while (nodes > WIDTH) {
+                int parents = (nodes + WIDTH - 1) / WIDTH;
+                Object[] above = new Object[parents];
+                for (int i = 0; i < parents; i++) {
+                    Object[] node = new Object[WIDTH];
+                    System.arraycopy(level, i * WIDTH, node, 0, Math.min(WIDTH, nodes - i * WIDTH));
+                    above[i] = node;
+                }
+                level = above;
+                nodes = parents;
+                shift += BITS;
+            }
+            Object[] root = Arrays.copyOf(level, WIDTH);
+            values = null;
+            return new PersistentStorage(new Trie(size, shift, root, tail), 0, size);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+/* =================================================================== //
+     ROBUST GEOMETRIC PREDICATES, AFTER SHEWCHUK. EACH ONE EVALUATES A
+     DETERMINANT WHOSE SIGN IS THE ANSWER:
+
+         orient2d(a, b, c)         > 0 IF a, b, c TURN COUNTER-CLOCKWISE
+         orient3d(a, b, c, d)      > 0 IF d IS BELOW THE PLANE OF a, b, c,
+                                   WHICH TURN COUNTER-CLOCKWISE SEEN FROM
+                                   ABOVE
+         incircle(a, b, c, d)      > 0 IF d IS INSIDE THE CIRCLE THROUGH
+                                   a, b, c, COUNTER-CLOCKWISE
+         insphere(a, b, c, d, e)   > 0 IF e IS INSIDE THE SPHERE THROUGH
+                                   a, b, c, d, WITH orient3d(a, b, c, d) > 0
+
+     AND 0 IF THE POINTS ARE DEGENERATE (COLLINEAR, COPLANAR, COCIRCULAR
+     OR COSPHERICAL). THE DETERMINANT IS FIRST EVALUATED IN PLAIN
+     DOUBLES ALONG WITH A BOUND ON ITS ROUNDING ERROR; ONLY WHEN THE
+     RESULT IS SMALLER THAN THAT BOUND IS IT EVALUATED AGAIN EXACTLY,
+     WITH EXPANSION ARITHMETIC. THE SIGN IS ALWAYS EXACT, AND INPUT THAT
+     IS NOT NEARLY DEGENERATE COSTS A FEW MORE OPERATIONS THAN A NAIVE
+     DETERMINANT.
+
+     AN EXPANSION IS A double[] OF NONOVERLAPPING COMPONENTS IN ORDER OF
+     INCREASING MAGNITUDE, WITHOUT ZEROS, WHOSE EXACT SUM IS ITS VALUE;
+     THE LAST COMPONENT HAS THE VALUE'S SIGN. OVERFLOW AND UNDERFLOW ARE
+     NOT ACCOUNTED FOR.
+// =================================================================== */
+final class Predicates {
+    //Half an ulp of 1, the largest relative error of one rounding
+    private static final double EPSILON = 0x1p-53;
+    private static final double ORIENT2D_BOUND = (3.0 + 16.0 * EPSILON) * EPSILON;
+    private static final double ORIENT3D_BOUND = (7.0 + 56.0 * EPSILON) * EPSILON;
+    private static final double INCIRCLE_BOUND = (10.0 + 96.0 * EPSILON) * EPSILON;
+    private static final double INSPHERE_BOUND = (16.0 + 224.0 * EPSILON) * EPSILON;
+
+    private Predicates() {
+    }
+
+    static double orient2d(double ax, double ay, double bx, double by, double cx, double cy) {
+        double left = (ax - cx) * (by - cy);
+        double right = (ay - cy) * (bx - cx);
+        double det = left - right;
+        double bound = ORIENT2D_BOUND * (Math.abs(left) + Math.abs(right));
+        if (det > bound || -det > bound) {
+            return det;
+        }
+        return value(subtract(multiply(difference(ax, cx), difference(by, cy)),
+                multiply(difference(ay, cy), difference(bx, cx))));
+    }
+
+    static double orient3d(double ax, double ay, double az, double bx, double by, double bz,
+                           double cx, double cy, double cz, double dx, double dy, double dz) {
+        double adx = ax - dx;
+        double bdx = bx - dx;
+        double cdx = cx - dx;
+        double ady = ay - dy;
+        double bdy = by - dy;
+        double cdy = cy - dy;
+        double adz = az - dz;
+        double bdz = bz - dz;
+        double cdz = cz - dz;
+
+        double bdxcdy = bdx * cdy;
+        double cdxbdy = cdx * bdy;
+        double cdxady = cdx * ady;
+        double adxcdy = adx * cdy;
+        double adxbdy = adx * bdy;
+        double bdxady = bdx * ady;
+        double det = adz * (bdxcdy - cdxbdy) + bdz * (cdxady - adxcdy) + cdz * (adxbdy - bdxady);
+        double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * Math.abs(adz)
+                + (Math.abs(cdxady) + Math.abs(adxcdy)) * Math.abs(bdz)
+                + (Math.abs(adxbdy) + Math.abs(bdxady)) * Math.abs(cdz);
+        double bound = ORIENT3D_BOUND * permanent;
+        if (det > bound || -det > bound) {
+            return det;
+        }
+
+        double[] eadx = difference(ax, dx);
+        double[] ebdx = difference(bx, dx);
+        double[] ecdx = difference(cx, dx);
+        double[] eady = difference(ay, dy);
+        double[] ebdy = difference(by, dy);
+        double[] ecdy = difference(cy, dy);
+        double[] bc = subtract(multiply(ebdx, ecdy), multiply(ecdx, ebdy));
+        double[] ca = subtract(multiply(ecdx, eady), multiply(eadx, ecdy));
+        double[] ab = subtract(multiply(eadx, ebdy), multiply(ebdx, eady));
+        return value(add(add(multiply(difference(az, dz), bc), multiply(difference(bz, dz), ca)),
+                multiply(difference(cz, dz), ab)));
+    }
+
+    static double incircle(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double adx = ax - dx;
+        double bdx = bx - dx;
+        double cdx = cx - dx;
+        double ady = ay - dy;
+        double bdy = by - dy;
+        double cdy = cy - dy;
+
+        double bdxcdy = bdx * cdy;
+        double cdxbdy = cdx * bdy;
+        double alift = adx * adx + ady * ady;
+        double cdxady = cdx * ady;
+        double adxcdy = adx * cdy;
+        double blift = bdx * bdx + bdy * bdy;
+        double adxbdy = adx * bdy;
+        double bdxady = bdx * ady;
+        double clift = cdx * cdx + cdy * cdy;
+        double det = alift * (bdxcdy - cdxbdy) + blift * (cdxady - adxcdy) + clift * (adxbdy - bdxady);
+        double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+                + (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+                + (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+        double bound = INCIRCLE_BOUND * permanent;
+        if (det > bound || -det > bound) {
+            return det;
+        }
+
+        double[] eadx = difference(ax, dx);
+        double[] ebdx = difference(bx, dx);
+        double[] ecdx = difference(cx, dx);
+        double[] eady = difference(ay, dy);
+        double[] ebdy = difference(by, dy);
+        double[] ecdy = difference(cy, dy);
+        double[] bc = subtract(multiply(ebdx, ecdy), multiply(ecdx, ebdy));
+        double[] ca = subtract(multiply(ecdx, eady), multiply(eadx, ecdy));
+        double[] ab = subtract(multiply(eadx, ebdy), multiply(ebdx, eady));
+        return value(add(add(multiply(lift(eadx, eady), bc), multiply(lift(ebdx, ebdy), ca)),
+                multiply(lift(ecdx, ecdy), ab)));
+    }
+
+    static double insphere(double ax, double ay, double az, double bx, double by, double bz,
+                           double cx, double cy, double cz, double dx, double dy, double dz,
+                           double ex, double ey, double ez) {
+        double aex = ax - ex;
+        double bex = bx - ex;
+        double cex = cx - ex;
+        double dex = dx - ex;
+        double aey = ay - ey;
+        double bey = by - ey;
+        double cey = cy - ey;
+        double dey = dy - ey;
+        double aez = az - ez;
+        double bez = bz - ez;
+        double cez = cz - ez;
+        double dez = dz - ez;
+
+        double aexbey = aex * bey;
+        double bexaey = bex * aey;
+        double bexcey = bex * cey;
+        double cexbey = cex * bey;
+        double cexdey = cex * dey;
+        double dexcey = dex * cey;
+        double dexaey = dex * aey;
+        double aexdey = aex * dey;
+        double aexcey = aex * cey;
+        double cexaey = cex * aey;
+        double bexdey = bex * dey;
+        double dexbey = dex * bey;
+        double ab = aexbey - bexaey;
+        double bc = bexcey - cexbey;
+        double cd = cexdey - dexcey;
+        double da = dexaey - aexdey;
+        double ac = aexcey - cexaey;
+        double bd = bexdey - dexbey;
+
+        double abc = aez * bc - bez * ac + cez * ab;
+        double bcd = bez * cd - cez * bd + dez * bc;
+        double cda = cez * da + dez * ac + aez * cd;
+        double dab = dez * ab + aez * bd + bez * da;
+        double alift = aex * aex + aey * aey + aez * aez;
+        double blift = bex * bex + bey * bey + bez * bez;
+        double clift = cex * cex + cey * cey + cez * cez;
+        double dlift = dex * dex + dey * dey + dez * dez;
+        double det = (dlift * abc - clift * dab) + (blift * cda - alift * bcd);
+
+        double aezplus = Math.abs(aez);
+        double bezplus = Math.abs(bez);
+        double cezplus = Math.abs(cez);
+        double dezplus = Math.abs(dez);
+        double abplus = Math.abs(aexbey) + Math.abs(bexaey);
+        double bcplus = Math.abs(bexcey) + Math.abs(cexbey);
+        double cdplus = Math.abs(cexdey) + Math.abs(dexcey);
+        double daplus = Math.abs(dexaey) + Math.abs(aexdey);
+        double acplus = Math.abs(aexcey) + Math.abs(cexaey);
+        double bdplus = Math.abs(bexdey) + Math.abs(dexbey);
+        double permanent = (cdplus * bezplus + bdplus * cezplus + bcplus * dezplus) * alift
+                + (daplus * cezplus + acplus * dezplus + cdplus * aezplus) * blift
+                + (abplus * dezplus + bdplus * aezplus + daplus * bezplus) * clift
+                + (bcplus * aezplus + acplus * bezplus + abplus * cezplus) * dlift;
+        double bound = INSPHERE_BOUND * permanent;
+        if (det > bound || -det > bound) {
+            return det;
+        }
+
+        double[] eaex = difference(ax, ex);
+        double[] ebex = difference(bx, ex);
+        double[] ecex = difference(cx, ex);
+        double[] edex = difference(dx, ex);
+        double[] eaey = difference(ay, ey);
+        double[] ebey = difference(by, ey);
+        double[] ecey = difference(cy, ey);
+        double[] edey = difference(dy, ey);
+        double[] eaez = difference(az, ez);
+        double[] ebez = difference(bz, ez);
+        double[] ecez = difference(cz, ez);
+        double[] edez = difference(dz, ez);
+        double[] eab = subtract(multiply(eaex, ebey), multiply(ebex, eaey));
+        double[] ebc = subtract(multiply(ebex, ecey), multiply(ecex, ebey));
+        double[] ecd = subtract(multiply(ecex, edey), multiply(edex, ecey));
+        double[] eda = subtract(multiply(edex, eaey), multiply(eaex, edey));
+        double[] eac = subtract(multiply(eaex, ecey), multiply(ecex, eaey));
+        double[] ebd = subtract(multiply(ebex, edey), multiply(edex, ebey));
+        double[] eabc = add(subtract(multiply(eaez, ebc), multiply(ebez, eac)), multiply(ecez, eab));
+        double[] ebcd = add(subtract(multiply(ebez, ecd), multiply(ecez, ebd)), multiply(edez, ebc));
+        double[] ecda = add(add(multiply(ecez, eda), multiply(edez, eac)), multiply(eaez, ecd));
+        double[] edab = add(add(multiply(edez, eab), multiply(eaez, ebd)), multiply(ebez, eda));
+        double[] ealift = add(lift(eaex, eaey), multiply(eaez, eaez));
+        double[] eblift = add(lift(ebex, ebey), multiply(ebez, ebez));
+        double[] eclift = add(lift(ecex, ecey), multiply(ecez, ecez));
+        double[] edlift = add(lift(edex, edey), multiply(edez, edez));
+        return value(add(subtract(multiply(edlift, eabc), multiply(eclift, edab)),
+                subtract(multiply(eblift, ecda), multiply(ealift, ebcd))));
+    }
+
+    /* =================================================================== //
+                             EXPANSION ARITHMETIC
+    // =================================================================== */
+    //a - b, exactly
+    private static double[] difference(double a, double b) {
+        double x = a - b;
+        double bvirt = a - x;
+        double avirt = x + bvirt;
+        double y = (a - avirt) + (bvirt - b);
+        return y != 0 ? new double[]{y, x} : new double[]{x};
+    }
+
+    //x * x + y * y
+    private static double[] lift(double[] x, double[] y) {
+        return add(multiply(x, x), multiply(y, y));
+    }
+
+    private static double[] add(double[] e, double[] f) {
+        double[] h = e;
+        for (double component : f) {
+            h = grow(h, component);
+        }
+        return h;
+    }
+
+    private static double[] subtract(double[] e, double[] f) {
+        double[] h = e;
+        for (double component : f) {
+            h = grow(h, -component);
+        }
+        return h;
+    }
+
+    private static double[] multiply(double[] e, double[] f) {
+        double[] h = scale(e, f[0]);
+        for (int i = 1; i < f.length; i++) {
+            h = add(h, scale(e, f[i]));
+        }
+        return h;
+    }
+
+    //e + b
+    private static double[] grow(double[] e, double b) {
+        double[] h = new double[e.length + 1];
+        int count = 0;
+        double q = b;
+        for (double component : e) {
+            double sum = q + component;
+            double bvirt = sum - q;
+            double avirt = sum - bvirt;
+            double error = (q - avirt) + (component - bvirt);
+            q = sum;
+            if (error != 0) {
+                h[count++] = error;
+            }
+        }
+        if (q != 0 || count == 0) {
+            h[count++] = q;
+        }
+        return trim(h, count);
+    }
+
+    //e * b; Math.fma gives each product's rounding error exactly
+    private static double[] scale(double[] e, double b) {
+        double[] h = new double[2 * e.length];
+        int count = 0;
+        double q = e[0] * b;
+        double error = Math.fma(e[0], b, -q);
+        if (error != 0) {
+            h[count++] = error;
+        }
+        for (int i = 1; i < e.length; i++) {
+            double high = e[i] * b;
+            double low = Math.fma(e[i], b, -high);
+            //q + low, exactly
+            double sum = q + low;
+            double bvirt = sum - q;
+            double avirt = sum - bvirt;
+            error = (q - avirt) + (low - bvirt);
+            if (error != 0) {
+                h[count++] = error;
+            }
+            //high + sum, exactly; |high| >= |sum|
+            q = high + sum;
+            error = sum - (q - high);
+            if (error != 0) {
+                h[count++] = error;
+            }
+        }
+        if (q != 0 || count == 0) {
+            h[count++] = q;
+        }
+        return trim(h, count);
+    }
+
+    private static double[] trim(double[] h, int count) {
+        return count == h.length ? h : Arrays.copyOf(h, count);
+    }
+
+    //The largest component, which has the sign of the whole expansion and approximates its value
+    private static double value(double[] e) {
+        return e[e.length - 1];
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* =================================================================== //
+     STATIC PASS RUN BEFORE EXECUTION: BINDS EVERY VARIABLE REFERENCE
+     TO A (DEPTH, SLOT) ADDRESS SO ENVIRONMENTS CAN BE PLAIN ARRAYS,
+     AND REPORTS UNDEFINED NAMES AND CONSTANT REASSIGNMENT UP FRONT.
+// =================================================================== */
+public class Resolver {
+
+    private static class Scope {
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final Set<String> constants = new HashSet<>();
+    }
+
+    //Innermost scope last. The global scope persists across resolve calls, like the global Environment
+    private final List<Scope> scopes = new ArrayList<>();
+
+    public Resolver() {
+        scopes.add(new Scope());
+    }
+
+    public void resolve(Program program) {
+        for (Stmt statement : program.getBody()) {
+            resolveStmt(statement);
+        }
+    }
+
+    public void beginScope() {
+        scopes.add(new Scope());
+    }
+
+    public void endScope() {
+        scopes.remove(scopes.size() - 1);
+    }
+
+    //Number of slots the innermost scope needs in its frame
+    public int scopeSize() {
+        return scopes.get(scopes.size() - 1).slots.size();
+    }
+
+    public void declare(Identifier identifier, boolean constant) {
+        Scope scope = scopes.get(scopes.size() - 1);
+        String name = identifier.getSymbol();
+        if (scope.slots.containsKey(name)) {
+            System.err.println("Cannot declare variable with name: "
+                    + name + ". It is already defined.");
+            System.exit(1);
+        }
+        int slot = scope.slots.size();
+        scope.slots.put(name, slot);
+        if (constant) {
+            scope.constants.add(name);
+        }
+        identifier.resolve(0, slot);
+    }
+
+    private void resolveStmt(Stmt node) {
+        if (node == null) {
+            return;
+        }
+        switch (node.kind) {
+            case VARIABLEDECLARATION -> {
+                VariableDeclaration declaration = (VariableDeclaration) node;
+                //The initializer is resolved first, so it cannot see the name it is initializing
+                resolveStmt(declaration.getValue());
+                declare(declaration.getIdentifier(), declaration.isConstant());
+            }
+            case ASSIGNMENTEXPR -> {
+                AssignmentExpr assignment = (AssignmentExpr) node;
+                resolveStmt(assignment.getValue());
+                if (assignment.getAssignee() instanceof Identifier) {
+                    Identifier target = (Identifier) assignment.getAssignee();
+                    resolveIdentifier(target);
+                    if (isConstant(target)) {
+                        System.err.println("Error: Unable to reassign variable " + target.getSymbol()
+                                + "; variable a constant value.");
+                        System.exit(1);
+                    }
+                } else {
+                    resolveStmt(assignment.getAssignee());
+                }
+            }
+            case IDENTIFIER -> resolveIdentifier((Identifier) node);
+            case BINARYEXPR -> {
+                resolveStmt(((BinaryExpr) node).getLeft());
+                resolveStmt(((BinaryExpr) node).getRight());
+            }
+            case UNARYEXPR -> resolveStmt(((UnaryExpr) node).getOperand());
+            case ARRAYLITERAL -> {
+                for (Expr value : ((ArrayLiteral) node).getValues()) {
+                    resolveStmt(value);
+                }
+            }
+            case OBJLITERAL -> {
+                for (Property property : ((ObjLiteral) node).getProperties()) {
+                    resolveStmt(property.getValue());
+                }
+            }
+            case MEMBEREXPR -> {
+                MemberExpr member = (MemberExpr) node;
+                resolveStmt(member.getObject());
+                if (member.isComputed()) {
+                    resolveStmt(member.getProperty());
+                }
+            }
+            case CALLEXPR -> {
+                CallExpr call = (CallExpr) node;
+                resolveStmt(call.getCaller());
+                for (Expr arg : call.getArgs()) {
+                    resolveStmt(arg);
+                }
+            }
+            case FUNCEXPR -> {
+                //Parameters and the body's declarations share one frame per call, whose parent is the closure's
+                FuncExpr function = (FuncExpr) node;
+                beginScope();
+                for (Identifier parameter : function.getParameters()) {
+                    declare(parameter, false);
+                }
+                for (Stmt statement : function.getBody()) {
+                    resolveStmt(statement);
+                }
+                function.setFrameSize(scopeSize());
+                endScope();
+            }
+            case PROGRAM -> resolve((Program) node);
+            default -> {
+                //Literals reference no variables
+            }
+        }
+    }
+
+    private void resolveIdentifier(Identifier identifier) {
+        String name = identifier.getSymbol();
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).slots.get(name);
+            if (slot != null) {
+                identifier.resolve(scopes.size() - 1 - i, slot);
+                return;
+            }
+        }
+        System.err.println("Could not resolve " + name + "; a variable with this name does not exist.");
+        System.exit(1);
+    }
+
+    private boolean isConstant(Identifier identifier) {
+        Scope scope = scopes.get(scopes.size() - 1 - identifier.getDepth());
+        return scope.constants.contains(identifier.getSymbol());
+    }
+}
@@ -0,0 +1,278 @@
+/* =================================================================== //
+     LAZY SEQUENCES: range, map, filter, zip AND take BUILD A CHAIN OF
+     STAGES WITHOUT COMPUTING ANY ELEMENT. CONSUMING THE CHAIN PULLS ONE
+     ELEMENT AT A TIME THROUGH EVERY STAGE, SO A WHOLE PIPELINE RUNS AS
+     ONE PASS, NEVER BUILDS AN INTERMEDIATE ARRAY, AND NEEDS THE SAME
+     MEMORY FOR A HUNDRED ELEMENTS AS FOR A BILLION.
+
+     len, sum, min AND max CONSUME A SEQUENCE AS IT STREAMS, AND EACH
+     CONSUMER RUNS THE STAGES (AND THEIR FUNCTIONS) AGAIN. INDEXING OR
+     PRINTING ONE MATERIALIZES IT INTO AN ArrayVal, ONCE, WHICH EVERY
+     LATER CONSUMER THEN READS INSTEAD.
+
+     STAGE FUNCTIONS ARE CALLED THROUGH THE Interpreter CONSUMING THE
+     SEQUENCE, NOT THE ONE THAT BUILT IT, SO A SEQUENCE CONSUMED INSIDE A
+     PARALLEL TASK CANNOT ASSIGN THE VARIABLES AROUND IT.
+// =================================================================== */
+final class SeqVal extends RuntimeVal {
+    private final Seq seq;
+    //Volatile so a sequence materialized by one parallel task is read whole by the others
+    private volatile ArrayVal materialized;
+
+    SeqVal(Seq seq) {
+        super(ValueType.SEQUENCE);
+        this.seq = seq;
+    }
+
+    //The stages to pull elements through, or the array they already produced
+    Seq seq() {
+        return materialized != null ? new ArraySeq(materialized) : seq;
+    }
+
+    //Number of elements; counts them by running the stages if no stage knows
+    int size(Interpreter interpreter) {
+        int size = this.seq().size();
+        if (size >= 0) {
+            return size;
+        }
+        Cursor cursor = seq.cursor(interpreter);
+        int count = 0;
+        while (cursor.next() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    ArrayVal materialize(Interpreter interpreter) {
+        if (materialized == null) {
+            ArrayVal array = new ArrayVal();
+            Cursor cursor = seq.cursor(interpreter);
+            for (RuntimeVal value = cursor.next(); value != null; value = cursor.next()) {
+                array.add(value);
+            }
+            materialized = array;
+        }
+        return materialized;
+    }
+
+    @Override
+    public String toString() {
+        //Printed once the program has run, when no task is left to race with
+        return this.materialize(new Interpreter()).toString();
+    }
+}
+
+//One pass over a sequence's elements
+interface Cursor {
+    //The next element, or null once there are no more
+    RuntimeVal next();
+}
+
+abstract class Seq {
+    //A new pass; stage functions are called through the given interpreter
+    abstract Cursor cursor(Interpreter interpreter);
+
+    //Number of elements if it is known without running the stages, otherwise -1
+    int size() {
+        return -1;
+    }
+}
+
+/* =================================================================== //
+                                   SOURCES
+// =================================================================== */
+//start, start + step, ... up to but excluding end
+final class RangeSeq extends Seq {
+    private final int start;
+    private final int end;
+    private final int step;
+
+    RangeSeq(int start, int end, int step) {
+        this.start = start;
+        this.end = end;
+        this.step = step;
+    }
+
+    @Override
+    Cursor cursor(Interpreter interpreter) {
+        return new Cursor() {
+            private long next = start;
+
+            @Override
+            public RuntimeVal next() {
+                if (step > 0 ? next >= end : next <= end) {
+                    return null;
+                }
+                int value = (int) next;
+                next += step;
+                return IntVal.of(value);
+            }
+        };
+    }
+
+    @Override
+    int size() {
+        long span = step > 0 ? (long) end - start : (long) start - end;
+        long stride = Math.abs((long) step);
+        return span <= 0 ? 0 : (int) Math.min((span + stride - 1) / stride, Integer.MAX_VALUE);
+    }
+}
+
+//The elements of an array, read as they are reached; the array is not copied
+final class ArraySeq extends Seq {
+    private final ArrayVal array;
+
+    ArraySeq(ArrayVal array) {
+        this.array = array;
+    }
+
+    @Override
+    Cursor cursor(Interpreter interpreter) {
+        return new Cursor() {
+            private int index;
+
+            @Override
+            public RuntimeVal next() {
+                return index < array.size() ? array.get(index++) : null;
+            }
+        };
+    }
+
+    @Override
+    int size() {
+        return array.size();
+    }
+}
+
+/* =================================================================== //
+                                    STAGES
+// =================================================================== */
+final class MapSeq extends Seq {
+    private final Seq source;
+    private final RuntimeVal function;
+
+    MapSeq(Seq source, RuntimeVal function) {
+        this.source = source;
+        this.function = function;
+    }
+
+    @Override
+    Cursor cursor(Interpreter interpreter) {
+        Cursor upstream = source.cursor(interpreter);
+        RuntimeVal[] args = new RuntimeVal[1];
+        return () -> {
+            RuntimeVal value = upstream.next();
+            if (value == null) {
+                return null;
+            }
+            args[0] = value;
+            return interpreter.call(function, args);
+        };
+    }
+
+    @Override
+    int size() {
+        return source.size();
+    }
+}
+
+//Elements for which the function returns true; anything but a BoolVal is a type error
+final class FilterSeq extends Seq {
+    private final Seq source;
+    private final RuntimeVal predicate;
+
+    FilterSeq(Seq source, RuntimeVal predicate) {
+        this.source = source;
+        this.predicate = predicate;
+    }
+
+    @Override
+    Cursor cursor(Interpreter interpreter) {
+        Cursor upstream = source.cursor(interpreter);
+        RuntimeVal[] args = new RuntimeVal[1];
+        return () -> {
+            for (RuntimeVal value = upstream.next(); value != null; value = upstream.next()) {
+                args[0] = value;
+                RuntimeVal keep = interpreter.call(predicate, args);
+                if (!(keep instanceof BoolVal)) {
+                    System.err.println("Type Error: filter expects its function to return a BoolVal, got "
+                            + keep.getClass().getSimpleName());
+                    System.exit(1);
+                }
+                if (((BoolVal) keep).getValue()) {
+                    return value;
+                }
+            }
+            return null;
+        };
+    }
+}
+
+//[a, b] pairs, as long as the shorter side lasts
+final class ZipSeq extends Seq {
+    private final Seq left;
+    private final Seq right;
+
+    ZipSeq(Seq left, Seq right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    Cursor cursor(Interpreter interpreter) {
+        Cursor first = left.cursor(interpreter);
+        Cursor second = right.cursor(interpreter);
+        return () -> {
+            RuntimeVal a = first.next();
+            RuntimeVal b = a != null ? second.next() : null;
+            if (b == null) {
+                return null;
+            }
+            ArrayVal pair = new ArrayVal();
+            pair.add(a);
+            pair.add(b);
+            return pair;
+        };
+    }
+
+    @Override
+    int size() {
+        int a = left.size();
+        int b = right.size();
+        return a < 0 || b < 0 ? -1 : Math.min(a, b);
+    }
+}
+
+//At most the first 'count' elements; upstream stages stop running once they are taken
+final class TakeSeq extends Seq {
+    private final Seq source;
+    private final int count;
+
+    TakeSeq(Seq source, int count) {
+        this.source = source;
+        this.count = count;
+    }
+
+    @Override
+    Cursor cursor(Interpreter interpreter) {
+        Cursor upstream = source.cursor(interpreter);
+        return new Cursor() {
+            private int taken;
+
+            @Override
+            public RuntimeVal next() {
+                if (taken == count) {
+                    return null;
+                }
+                taken++;
+                return upstream.next();
+            }
+        };
+    }
+
+    @Override
+    int size() {
+        int size = source.size();
+        return size < 0 ? -1 : Math.min(size, count);
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* =================================================================== //
+     HIDDEN CLASSES FOR ObjectVal. A Shape MAPS EACH PROPERTY NAME TO A
+     SLOT IN AN OBJECT'S VALUE ARRAY. ADDING A PROPERTY FOLLOWS A
+     TRANSITION TO THE NEXT SHAPE, WHICH IS CREATED ONCE AND REUSED, SO
+     OBJECTS THAT GAIN THE SAME PROPERTIES IN THE SAME ORDER SHARE ONE
+     SHAPE. AN OBJECT THEN CARRIES NOTHING BUT ITS SHAPE AND VALUES,
+     AND AN ACCESS SITE CAN REMEMBER WHICH SLOT A KEY HAS IN A SHAPE.
+// =================================================================== */
+final class Shape {
+    static final Shape EMPTY = new Shape(new String[0]);
+    //Shapes with more keys than this look keys up in a map instead of scanning them
+    private static final int LINEAR_LIMIT = 8;
+
+    private final String[] keys; //In slot order
+    private final Map<String, Integer> index;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    private Shape(String[] keys) {
+        this.keys = keys;
+        if (keys.length > LINEAR_LIMIT) {
+            index = new HashMap<>();
+            for (int slot = 0; slot < keys.length; slot++) {
+                index.put(keys[slot], slot);
+            }
+        } else {
+            index = null;
+        }
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    String key(int slot) {
+        return keys[slot];
+    }
+
+    //Slot of the key, or -1 if objects of this shape do not have it
+    int slotOf(String key) {
+        if (index != null) {
+            Integer slot = index.get(key);
+            return slot != null ? slot : -1;
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            //Keys are interned by the lexer, so the identity check almost always decides
+            if (keys[slot] == key || keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    //The shape of an object of this shape after the key is added; the key takes the next slot
+    Shape with(String key) {
+        return transitions.computeIfAbsent(key, added -> {
+            String[] next = Arrays.copyOf(keys, keys.length + 1);
+            next[keys.length] = added;
+            return new Shape(next);
+        });
+    }
+}
+
+/* =================================================================== //
+     INLINE CACHE FOR ONE PROPERTY ACCESS SITE. THE FIRST FEW SHAPES SEEN
+     THERE ARE REMEMBERED WITH THE KEY'S SLOT IN EACH, SO A MONOMORPHIC
+     OR POLYMORPHIC SITE FINDS ITS SLOT WITH ONE OR A FEW REFERENCE
+     COMPARISONS. PAST THE LIMIT THE SITE IS MEGAMORPHIC AND EVERY
+     ACCESS ASKS THE SHAPE.
+
+     PARALLEL TASKS SHARE THE SITE WITHOUT LOCKING. EACH ENTRY IS AN
+     IMMUTABLE PAIR, SO A RACE CAN ONLY LOSE OR REPEAT AN ENTRY, NEVER
+     PAIR A SHAPE WITH ANOTHER SHAPE'S SLOT.
+// =================================================================== */
+final class PropertyCache {
+    private static final int LIMIT = 4;
+
+    private final Entry[] entries = new Entry[LIMIT];
+    private int size;
+
+    int slot(Shape shape, String key) {
+        for (int i = 0; i < size; i++) {
+            Entry entry = entries[i];
+            if (entry != null && entry.shape == shape) {
+                return entry.slot;
+            }
+        }
+        int slot = shape.slotOf(key);
+        int count = size;
+        //A miss is an error, so it is not worth a cache entry
+        if (slot >= 0 && count < LIMIT) {
+            entries[count] = new Entry(shape, slot);
+            size = count + 1;
+        }
+        return slot;
+    }
+
+    private static final class Entry {
+        final Shape shape;
+        final int slot;
+
+        Entry(Shape shape, int slot) {
+            this.shape = shape;
+            this.slot = slot;
+        }
+    }
+}
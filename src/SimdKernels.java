@@ -0,0 +1,215 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/* =================================================================== //
+     THE VECTOR API LOOPS BEHIND ArrayKernels. ONLY LOADED WHEN THE
+     jdk.incubator.vector MODULE IS ENABLED, SO NOTHING ELSE MAY REFER
+     TO A VECTOR TYPE. LANES ARE THE PLATFORM'S WIDEST BY DEFAULT; PICK
+     ANOTHER WIDTH WITH -Dtwofive.simd.bits=64|128|256|512.
+
+     EACH LOOP RUNS WHOLE VECTORS AND FINISHES THE REMAINDER WITH THE
+     SCALAR LOOP. FLOAT REDUCTIONS ADD LANE BY LANE, SO THEIR ROUNDING
+     CAN DIFFER FROM A SEQUENTIAL SUM IN THE LAST BITS.
+// =================================================================== */
+final class SimdKernels {
+    private static final VectorSpecies<Integer> INTS;
+    private static final VectorSpecies<Float> FLOATS;
+    static {
+        int bits = Integer.getInteger("twofive.simd.bits", 0);
+        if (bits == 0) {
+            INTS = IntVector.SPECIES_PREFERRED;
+            FLOATS = FloatVector.SPECIES_PREFERRED;
+        } else {
+            VectorShape shape = VectorShape.forBitSize(bits);
+            INTS = VectorSpecies.of(int.class, shape);
+            FLOATS = VectorSpecies.of(float.class, shape);
+        }
+    }
+
+    private SimdKernels() {
+    }
+
+    //out[i] = a[i] op b[i] as in ArrayKernels.scalarInts; never DIVIDE, which has no int vector form
+    static void ints(Operator operator, int[] a, int as, int[] b, int bs, int[] out, int count) {
+        IntVector left = IntVector.broadcast(INTS, as);
+        IntVector right = IntVector.broadcast(INTS, bs);
+        int upper = INTS.loopBound(count);
+        int i = 0;
+        switch (operator) {
+            case ADD -> {
+                for (; i < upper; i += INTS.length()) {
+                    load(a, left, i).add(load(b, right, i)).intoArray(out, i);
+                }
+            }
+            case SUBTRACT -> {
+                for (; i < upper; i += INTS.length()) {
+                    load(a, left, i).sub(load(b, right, i)).intoArray(out, i);
+                }
+            }
+            default -> {
+                for (; i < upper; i += INTS.length()) {
+                    load(a, left, i).mul(load(b, right, i)).intoArray(out, i);
+                }
+            }
+        }
+        ArrayKernels.scalarInts(operator, a, as, b, bs, out, i, count);
+    }
+
+    //Returns the index of the first zero divisor, or -1
+    static int floats(Operator operator, float[] a, float as, float[] b, float bs, float[] out, int count) {
+        FloatVector left = FloatVector.broadcast(FLOATS, as);
+        FloatVector right = FloatVector.broadcast(FLOATS, bs);
+        int upper = FLOATS.loopBound(count);
+        int i = 0;
+        switch (operator) {
+            case ADD -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    load(a, left, i).add(load(b, right, i)).intoArray(out, i);
+                }
+            }
+            case SUBTRACT -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    load(a, left, i).sub(load(b, right, i)).intoArray(out, i);
+                }
+            }
+            case MULTIPLY -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    load(a, left, i).mul(load(b, right, i)).intoArray(out, i);
+                }
+            }
+            default -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    FloatVector divisor = load(b, right, i);
+                    VectorMask<Float> zero = divisor.eq(0f);
+                    if (zero.anyTrue()) {
+                        return i + zero.firstTrue();
+                    }
+                    load(a, left, i).div(divisor).intoArray(out, i);
+                }
+            }
+        }
+        return ArrayKernels.scalarFloats(operator, a, as, b, bs, out, i, count);
+    }
+
+    static int reduceInts(ArrayKernels.Reduction reduction, int[] values, int count) {
+        int upper = INTS.loopBound(count);
+        if (upper == 0) {
+            return ArrayKernels.scalarReduceInts(reduction, values, count);
+        }
+        IntVector acc = IntVector.fromArray(INTS, values, 0);
+        int i = INTS.length();
+        int result;
+        switch (reduction) {
+            case SUM -> {
+                for (; i < upper; i += INTS.length()) {
+                    acc = acc.add(IntVector.fromArray(INTS, values, i));
+                }
+                result = acc.reduceLanes(VectorOperators.ADD);
+                for (; i < count; i++) {
+                    result += values[i];
+                }
+            }
+            case MIN -> {
+                for (; i < upper; i += INTS.length()) {
+                    acc = acc.min(IntVector.fromArray(INTS, values, i));
+                }
+                result = acc.reduceLanes(VectorOperators.MIN);
+                for (; i < count; i++) {
+                    result = Math.min(result, values[i]);
+                }
+            }
+            default -> {
+                for (; i < upper; i += INTS.length()) {
+                    acc = acc.max(IntVector.fromArray(INTS, values, i));
+                }
+                result = acc.reduceLanes(VectorOperators.MAX);
+                for (; i < count; i++) {
+                    result = Math.max(result, values[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    static float reduceFloats(ArrayKernels.Reduction reduction, float[] values, int count) {
+        int upper = FLOATS.loopBound(count);
+        if (upper == 0) {
+            return ArrayKernels.scalarReduceFloats(reduction, values, count);
+        }
+        FloatVector acc = FloatVector.fromArray(FLOATS, values, 0);
+        int i = FLOATS.length();
+        float result;
+        switch (reduction) {
+            case SUM -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    acc = acc.add(FloatVector.fromArray(FLOATS, values, i));
+                }
+                result = acc.reduceLanes(VectorOperators.ADD);
+                for (; i < count; i++) {
+                    result += values[i];
+                }
+            }
+            case MIN -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    acc = acc.min(FloatVector.fromArray(FLOATS, values, i));
+                }
+                result = acc.reduceLanes(VectorOperators.MIN);
+                for (; i < count; i++) {
+                    result = Math.min(result, values[i]);
+                }
+            }
+            default -> {
+                for (; i < upper; i += FLOATS.length()) {
+                    acc = acc.max(FloatVector.fromArray(FLOATS, values, i));
+                }
+                result = acc.reduceLanes(VectorOperators.MAX);
+                for (; i < count; i++) {
+                    result = Math.max(result, values[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    static int dotInts(int[] a, int[] b, int count) {
+        IntVector acc = IntVector.zero(INTS);
+        int upper = INTS.loopBound(count);
+        int i = 0;
+        for (; i < upper; i += INTS.length()) {
+            acc = IntVector.fromArray(INTS, a, i).mul(IntVector.fromArray(INTS, b, i)).add(acc);
+        }
+        int result = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    static float dotFloats(float[] a, float[] b, int count) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int upper = FLOATS.loopBound(count);
+        int i = 0;
+        //Multiply then add rather than fma, so each product rounds as in the scalar loop
+        for (; i < upper; i += FLOATS.length()) {
+            acc = FloatVector.fromArray(FLOATS, a, i).mul(FloatVector.fromArray(FLOATS, b, i)).add(acc);
+        }
+        float result = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    //The operand's lanes at i, or its broadcast scalar if it has no array
+    private static IntVector load(int[] values, IntVector scalar, int i) {
+        return values != null ? IntVector.fromArray(INTS, values, i) : scalar;
+    }
+
+    private static FloatVector load(float[] values, FloatVector scalar, int i) {
+        return values != null ? FloatVector.fromArray(FLOATS, values, i) : scalar;
+    }
+}
@@ -0,0 +1,199 @@
+/* =================================================================== //
+     SELF-SPECIALIZING BINARY OPERATIONS. EVERY BinaryExpr STARTS OUT
+     UNINITIALIZED; ITS FIRST EVALUATION REWRITES IT TO A NODE FOR THE
+     OPERAND TYPES IT SAW (E.G. INT + INT). IF A LATER EVALUATION BREAKS
+     THAT NODE'S GUARD, THE EXPRESSION IS REWRITTEN TO THE GENERIC NODE
+     FOR GOOD, SO A POLYMORPHIC SITE NEVER FLIP-FLOPS BETWEEN NODES.
+// =================================================================== */
+abstract class BinarySpecialization {
+    static final BinarySpecialization UNINITIALIZED = new Uninitialized();
+
+    //Result of the operation, or null if the operands fail this node's type guard. Nodes live on
+    //the shared AST, so the evaluating Interpreter is passed in rather than kept
+    abstract RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter);
+
+    //Pick the node for the operand types seen on the first evaluation
+    static BinarySpecialization specialize(Operator operator, RuntimeVal LHS, RuntimeVal RHS) {
+        if (LHS instanceof IntVal && RHS instanceof IntVal) {
+            switch (operator) {
+                case ADD: return new IntAdd();
+                case SUBTRACT: return new IntSubtract();
+                case MULTIPLY: return new IntMultiply();
+                case DIVIDE: return new IntDivide();
+                case LESSER: return new IntLesser();
+                case GREATER: return new IntGreater();
+                case EQUALS: return new IntEquals();
+                default: break;
+            }
+        } else if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
+            switch (operator) {
+                case ADD: return new FloatAdd();
+                case SUBTRACT: return new FloatSubtract();
+                case MULTIPLY: return new FloatMultiply();
+                case DIVIDE: return new FloatDivide();
+                case LESSER: return new FloatLesser();
+                case GREATER: return new FloatGreater();
+                default: break;
+            }
+        }
+        return new Generic(operator);
+    }
+
+    private static final class Uninitialized extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            return null;
+        }
+    }
+
+    //Handles every type combination through the Interpreter; never fails its guard
+    static final class Generic extends BinarySpecialization {
+        private final Operator operator;
+
+        Generic(Operator operator) {
+            this.operator = operator;
+        }
+
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            return interpreter.applyBinary(LHS, RHS, operator);
+        }
+    }
+
+    /* =================================================================== //
+                                  INT NODES
+    // =================================================================== */
+    private static final class IntAdd extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal) {
+                return IntVal.of(((IntVal) LHS).getValue() + ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class IntSubtract extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal) {
+                return IntVal.of(((IntVal) LHS).getValue() - ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class IntMultiply extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal) {
+                return IntVal.of(((IntVal) LHS).getValue() * ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    //Division by zero fails the guard, so the generic node reports the error
+    private static final class IntDivide extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal && ((IntVal) RHS).getValue() != 0) {
+                return IntVal.of(((IntVal) LHS).getValue() / ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class IntLesser extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal) {
+                return BoolVal.of(((IntVal) LHS).getValue() < ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class IntGreater extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal) {
+                return BoolVal.of(((IntVal) LHS).getValue() > ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class IntEquals extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof IntVal && RHS instanceof IntVal) {
+                return BoolVal.of(((IntVal) LHS).getValue() == ((IntVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    /* =================================================================== //
+                                 FLOAT NODES
+    // =================================================================== */
+    private static final class FloatAdd extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
+                return new FloatVal(((FloatVal) LHS).getValue() + ((FloatVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class FloatSubtract extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
+                return new FloatVal(((FloatVal) LHS).getValue() - ((FloatVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class FloatMultiply extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
+                return new FloatVal(((FloatVal) LHS).getValue() * ((FloatVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class FloatDivide extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof FloatVal && RHS instanceof FloatVal && ((FloatVal) RHS).getValue() != 0) {
+                return new FloatVal(((FloatVal) LHS).getValue() / ((FloatVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class FloatLesser extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
+                return BoolVal.of(((FloatVal) LHS).getValue() < ((FloatVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+
+    private static final class FloatGreater extends BinarySpecialization {
+        @Override
+        RuntimeVal execute(RuntimeVal LHS, RuntimeVal RHS, Interpreter interpreter) {
+            if (LHS instanceof FloatVal && RHS instanceof FloatVal) {
+                return BoolVal.of(((FloatVal) LHS).getValue() > ((FloatVal) RHS).getValue());
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/* =================================================================== //
+     VARIANT OF THE VM THAT KEEPS INTS AND FLOATS UNBOXED. EVERY OPERAND
+     STACK ENTRY AND FRAME SLOT IS A TAG PLUS A RAW long, AND ONLY REF
+     ENTRIES POINT AT A RuntimeVal. A NUMBER IS BOXED ONLY WHEN IT
+     ESCAPES: INTO A MIXED-TYPE ArrayVal, TO THE Interpreter FOR AN
+     OPERATION THE FAST PATHS DO NOT COVER, OR AS THE PROGRAM'S RESULT.
+
+     RUNS THE SAME Chunks AS THE VM, WITH THE SAME RESULTS AND ERRORS.
+// =================================================================== */
+public class TaggedVM {
+    private static final byte REF = Environment.REF;
+    private static final byte INT = Environment.INT;
+    private static final byte FLOAT = Environment.FLOAT;
+
+    private final Interpreter interpreter = new Interpreter();
+
+    //Operand stack, as three parallel arrays; rebuilt for each run
+    private byte[] tags;
+    private long[] raw;
+    private RuntimeVal[] refs;
+
+    public RuntimeVal run(Chunk chunk, Environment env) {
+        final int[] code = chunk.code;
+        final RuntimeVal[] constants = chunk.constants;
+        int size = Math.max(chunk.maxStack, 1);
+        final byte[] tags = this.tags = new byte[size];
+        final long[] raw = this.raw = new long[size];
+        final RuntimeVal[] refs = this.refs = new RuntimeVal[size];
+        int sp = 0; //Next free stack slot
+        int ip = 0;
+
+        while (true) {
+            int op = code[ip++];
+            switch (op) {
+                case Opcodes.CONST:
+                    this.put(sp++, constants[code[ip++]]);
+                    break;
+                case Opcodes.LOAD: {
+                    Environment frame = env.ancestor(code[ip]);
+                    int slot = code[ip + 1];
+                    ip += 2;
+                    byte tag = frame.tag(slot);
+                    if (tag == REF) {
+                        this.put(sp++, frame.get(slot));
+                    } else {
+                        tags[sp] = tag;
+                        raw[sp] = frame.raw(slot);
+                        refs[sp++] = null;
+                    }
+                    break;
+                }
+                case Opcodes.STORE: {
+                    Environment frame = env.ancestor(code[ip]);
+                    int slot = code[ip + 1];
+                    ip += 2;
+                    if (tags[sp - 1] == REF) {
+                        frame.set(slot, refs[sp - 1]);
+                    } else {
+                        frame.setRaw(slot, tags[sp - 1], raw[sp - 1], 0);
+                    }
+                    break;
+                }
+                case Opcodes.DEFINE: {
+                    int slot = code[ip++];
+                    if (tags[sp - 1] == REF) {
+                        env.declareVar(slot, refs[sp - 1]);
+                    } else {
+                        env.setRaw(slot, tags[sp - 1], raw[sp - 1], slot + 1);
+                    }
+                    break;
+                }
+                case Opcodes.POP:
+                    refs[--sp] = null;
+                    break;
+                case Opcodes.ADD:
+                case Opcodes.SUBTRACT:
+                case Opcodes.MULTIPLY:
+                case Opcodes.DIVIDE:
+                case Opcodes.MODULO:
+                case Opcodes.POWER:
+                case Opcodes.EQUALS:
+                case Opcodes.NOTEQUALS:
+                case Opcodes.LESSER:
+                case Opcodes.GREATER: {
+                    int right = --sp;
+                    int left = sp - 1;
+                    byte leftTag = tags[left];
+                    byte rightTag = tags[right];
+                    boolean done = false;
+                    if (leftTag == INT && rightTag == INT) {
+                        done = this.intOp(op, left, (int) raw[left], (int) raw[right]);
+                    } else if (leftTag != REF && rightTag != REF) {
+                        done = this.floatOp(op, left, this.asFloat(left), this.asFloat(right));
+                    }
+                    //Anything else, including the error cases, gets the Interpreter's exact semantics
+                    if (!done) {
+                        this.put(left, interpreter.applyBinary(this.box(left), this.box(right), Opcodes.OPERATORS[op]));
+                    }
+                    refs[right] = null;
+                    break;
+                }
+                case Opcodes.NEGATE: {
+                    int top = sp - 1;
+                    if (tags[top] == INT) {
+                        raw[top] = -(int) raw[top];
+                    } else if (tags[top] == FLOAT) {
+                        raw[top] = Float.floatToRawIntBits(-this.asFloat(top));
+                    } else {
+                        this.put(top, interpreter.applyUnary(refs[top], Operator.NEGATE));
+                    }
+                    break;
+                }
+                case Opcodes.NOT:
+                    this.put(sp - 1, interpreter.applyUnary(this.box(sp - 1), Operator.NOT));
+                    break;
+                case Opcodes.JUMP_IF_FALSE:
+                    if (!interpreter.expectBool(this.box(sp - 1), Operator.AND)) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                case Opcodes.JUMP_IF_TRUE:
+                    if (interpreter.expectBool(this.box(sp - 1), Operator.OR)) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                case Opcodes.CHECK_BOOL:
+                    interpreter.expectBool(this.box(sp - 1), code[ip++] == 1 ? Operator.AND : Operator.OR);
+                    break;
+                case Opcodes.ARRAY: {
+                    int count = code[ip++];
+                    ArrayVal array = this.array(sp - count, count);
+                    for (int i = sp - count; i < sp; i++) {
+                        refs[i] = null;
+                    }
+                    sp -= count;
+                    this.put(sp++, array);
+                    break;
+                }
+                case Opcodes.FREEZE:
+                    if (tags[sp - 1] == REF) {
+                        refs[sp - 1] = PersistentStorage.freeze(refs[sp - 1]);
+                    }
+                    break;
+                case Opcodes.RETURN:
+                    return this.box(sp - 1);
+                default:
+                    System.err.println("VM Error: Unknown opcode " + op + " at " + (ip - 1));
+                    System.exit(1);
+            }
+        }
+    }
+
+    /* =================================================================== //
+                               STACK ENTRIES
+    // =================================================================== */
+    //Store a boxed value, unboxing numbers
+    private void put(int index, RuntimeVal value) {
+        if (value instanceof IntVal) {
+            tags[index] = INT;
+            raw[index] = ((IntVal) value).getValue();
+            refs[index] = null;
+        } else if (value instanceof FloatVal) {
+            tags[index] = FLOAT;
+            raw[index] = Float.floatToRawIntBits(((FloatVal) value).getValue());
+            refs[index] = null;
+        } else {
+            tags[index] = REF;
+            refs[index] = value;
+        }
+    }
+
+    private RuntimeVal box(int index) {
+        switch (tags[index]) {
+            case INT:
+                return IntVal.of((int) raw[index]);
+            case FLOAT:
+                return new FloatVal(Float.intBitsToFloat((int) raw[index]));
+            default:
+                return refs[index];
+        }
+    }
+
+    //Array of 'count' entries from 'start'; all-int and all-float arrays go straight into primitive storage
+    private ArrayVal array(int start, int count) {
+        byte tag = count > 0 ? tags[start] : REF;
+        for (int i = start; i < start + count && tag != REF; i++) {
+            if (tags[i] != tag) {
+                tag = REF;
+            }
+        }
+        if (tag == INT) {
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = (int) raw[start + i];
+            }
+            return new ArrayVal(new IntStorage(values, count));
+        } else if (tag == FLOAT) {
+            float[] values = new float[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = Float.intBitsToFloat((int) raw[start + i]);
+            }
+            return new ArrayVal(new FloatStorage(values, count));
+        }
+        ArrayVal array = new ArrayVal();
+        for (int i = start; i < start + count; i++) {
+            array.add(this.box(i));
+        }
+        return array;
+    }
+
+    //An INT or FLOAT entry as a float, like the Interpreter promotes mixed operands
+    private float asFloat(int index) {
+        return tags[index] == INT ? (float) (int) raw[index] : Float.intBitsToFloat((int) raw[index]);
+    }
+
+    /* =================================================================== //
+                                 ARITHMETIC
+    // =================================================================== */
+    //Result into entry 'at'; false for division or modulo by zero, which the Interpreter reports
+    private boolean intOp(int op, int at, int LHS, int RHS) {
+        long result;
+        switch (op) {
+            case Opcodes.ADD -> result = LHS + RHS;
+            case Opcodes.SUBTRACT -> result = LHS - RHS;
+            case Opcodes.MULTIPLY -> result = LHS * RHS;
+            case Opcodes.DIVIDE -> {
+                if (RHS == 0) {
+                    return false;
+                }
+                result = LHS / RHS;
+            }
+            case Opcodes.MODULO -> {
+                if (RHS == 0) {
+                    return false;
+                }
+                result = LHS % RHS;
+            }
+            case Opcodes.POWER -> result = (int) Math.pow(LHS, RHS);
+            default -> {
+                return this.compare(op, at, Integer.compare(LHS, RHS), LHS == RHS);
+            }
+        }
+        raw[at] = result;
+        return true;
+    }
+
+    private boolean floatOp(int op, int at, float LHS, float RHS) {
+        float result;
+        switch (op) {
+            case Opcodes.ADD -> result = LHS + RHS;
+            case Opcodes.SUBTRACT -> result = LHS - RHS;
+            case Opcodes.MULTIPLY -> result = LHS * RHS;
+            case Opcodes.DIVIDE -> {
+                if (RHS == 0) {
+                    return false;
+                }
+                result = LHS / RHS;
+            }
+            case Opcodes.MODULO -> result = LHS % RHS;
+            case Opcodes.POWER -> result = (float) Math.pow(LHS, RHS);
+            default -> {
+                //NaN compares false to everything, so only the primitive operators are right here
+                boolean lesser = LHS < RHS;
+                boolean greater = LHS > RHS;
+                return this.compare(op, at, lesser ? -1 : (greater ? 1 : 0), LHS == RHS);
+            }
+        }
+        tags[at] = FLOAT;
+        raw[at] = Float.floatToRawIntBits(result);
+        return true;
+    }
+
+    private boolean compare(int op, int at, int order, boolean equal) {
+        boolean result = switch (op) {
+            case Opcodes.LESSER -> order < 0;
+            case Opcodes.GREATER -> order > 0;
+            case Opcodes.EQUALS -> equal;
+            default -> !equal;
+        };
+        tags[at] = REF;
+        refs[at] = BoolVal.of(result);
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* =================================================================== //
+       LAZY TOKEN SOURCE: THE LEXER IS ONLY RUN AS FAR AS THE PARSER
+       HAS LOOKED, SO NO MORE THAN A FEW TOKENS ARE EVER HELD AT ONCE.
+       TOKENS ARE PACKED INTO PARALLEL ARRAYS RATHER THAN TOKEN OBJECTS,
+       AND THEIR TEXT IS ONLY BUILT WHEN THE PARSER ASKS FOR IT.
+// =================================================================== */
+class TokenStream {
+    //Lookahead capacity; must be a power of two
+    private static final int LOOKAHEAD = 4;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Lexer lexer;
+    private final byte[] kinds = new byte[LOOKAHEAD];
+    private final int[] starts = new int[LOOKAHEAD];
+    private final int[] lengths = new int[LOOKAHEAD];
+    //Interned text for identifiers and keywords; null where the text is read lazily from the source
+    private final String[] symbols = new String[LOOKAHEAD];
+    //Whether a line break came before the token
+    private final boolean[] breaks = new boolean[LOOKAHEAD];
+    private int head; //Index of the current token in the ring
+    private int count; //Number of tokens buffered from head onwards
+
+    public TokenStream(Lexer lexer) {
+        this.lexer = lexer;
+    }
+
+    //Ring slot of the token 'ahead' positions past the current one, lexing up to it if needed
+    private int slot(int ahead) {
+        if (ahead >= LOOKAHEAD) {
+            throw new IllegalArgumentException("Lookahead of " + ahead + " exceeds " + (LOOKAHEAD - 1));
+        }
+        while (count <= ahead) {
+            pull((head + count) & (LOOKAHEAD - 1));
+            count++;
+        }
+        return (head + ahead) & (LOOKAHEAD - 1);
+    }
+
+    public TokenType type(int ahead) {
+        return TYPES[kinds[slot(ahead)]];
+    }
+
+    public String text(int ahead) {
+        int i = slot(ahead);
+        if (symbols[i] != null) {
+            return symbols[i];
+        }
+        if (kinds[i] == TokenType.EOF.ordinal()) {
+            return "EndOfFile";
+        }
+        return lexer.text(starts[i], lengths[i]);
+    }
+
+    //First char of the token's text, read without materializing the text
+    public char firstChar(int ahead) {
+        int i = slot(ahead);
+        if (symbols[i] != null) {
+            return symbols[i].charAt(0);
+        }
+        return lengths[i] > 0 ? lexer.charAt(starts[i]) : '\0';
+    }
+
+    //Postfix calls and indexing only continue an expression on the same line
+    public boolean lineBreakBefore(int ahead) {
+        return breaks[slot(ahead)];
+    }
+
+    //Materialize the token as an object; only meant for error messages
+    public Token token(int ahead) {
+        int i = slot(ahead);
+        return new Token(TYPES[kinds[i]], text(ahead), starts[i], lengths[i]);
+    }
+
+    //Consume the current token. EOF stays current forever, so running off the end is harmless
+    public void advance() {
+        int i = slot(0);
+        if (kinds[i] != TokenType.EOF.ordinal()) {
+            head = (head + 1) & (LOOKAHEAD - 1);
+            count--;
+        }
+    }
+
+    private void pull(int i) {
+        //Tokens still in the ring may need their text later, so the lexer must keep their chars
+        lexer.retain(count > 0 ? starts[head] : -1);
+        TokenType type = lexer.scan();
+        //Statements are terminated by ';', so line breaks carry no meaning to the parser beyond lineBreakBefore
+        breaks[i] = false;
+        while (type == TokenType.NEWLINE) {
+            breaks[i] = true;
+            type = lexer.scan();
+        }
+        kinds[i] = (byte) type.ordinal();
+        starts[i] = lexer.tokenStart();
+        lengths[i] = lexer.tokenLength();
+        symbols[i] = lexer.tokenSymbol();
+    }
+}
+
+/* =================================================================== //
+   READS A FILE THROUGH A MEMORY MAPPING, DECODING ONE WINDOW AT A TIME
+// =================================================================== */
+class MappedFileReader extends Reader {
+    private static final long WINDOW_SIZE = 1L << 24;
+
+    private final FileChannel channel;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private boolean finished;
+
+    public MappedFileReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowStart = 0;
+        mapWindow(0);
+    }
+
+    private void mapWindow(long start) throws IOException {
+        this.windowStart = start;
+        this.window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (finished) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.position() == off) {
+            long windowEnd = windowStart + window.limit();
+            boolean lastWindow = windowEnd == size;
+            CoderResult result = decoder.decode(window, out, lastWindow);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (window.hasRemaining() && result.isOverflow()) {
+                break;
+            }
+            if (lastWindow) {
+                decoder.flush(out);
+                finished = true;
+                break;
+            }
+            //A multibyte char may straddle the window edge, so the next window starts at the first unread byte
+            mapWindow(windowStart + window.position());
+        }
+        int read = out.position() - off;
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
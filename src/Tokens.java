@@ -7,12 +7,22 @@ import java.util.Map;
 class Token {
     TokenType type;
     String value;
+    //Offset of the first char of this token in the source, and its length in chars
+    int start;
+    int length;
 
     public Token(TokenType type, String value) {
         this.type = type;
         this.value = value;
     }
 
+    public Token(TokenType type, String value, int start, int length) {
+        this.type = type;
+        this.value = value;
+        this.start = start;
+        this.length = length;
+    }
+
     @Override
     public String toString() {
         return String.format("Token(%s, %s)", type, value);
@@ -31,6 +41,14 @@ class Token {
     public String getValue() {
         return value;
     }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getLength() {
+        return length;
+    }
 }
 // =================================================================== //
 
@@ -59,6 +77,7 @@ enum TokenType {
     OPENBRACKET, // [           -X
     CLOSEBRACKET, // ]          -X
     QUOTATION, // "             -X
+    STRING, // "text"           -X
     GREATER, // >               -X
     LESSER, // <                -X
     EQUALSCOMPARE, // ==        -X
@@ -108,6 +127,8 @@ enum TokenType {
 
 class TokenChars {
     private static Map<String, TokenType> TOKEN_CHARS = new HashMap<>();
+    //Same table indexed by char, so the lexer can classify without allocating
+    private static final TokenType[] ASCII_TOKEN_CHARS = new TokenType[128];
     static {
         TOKEN_CHARS.put("(", TokenType.OPENPAREN);
         TOKEN_CHARS.put(")", TokenType.CLOSEPAREN);
@@ -119,6 +140,7 @@ class TokenChars {
         TOKEN_CHARS.put("*", TokenType.BINARYOPERATOR);
         TOKEN_CHARS.put("/", TokenType.BINARYOPERATOR);
         TOKEN_CHARS.put("%", TokenType.BINARYOPERATOR);
+        TOKEN_CHARS.put("^", TokenType.EXPONENTIAL);
         TOKEN_CHARS.put("<", TokenType.LESSER);
         TOKEN_CHARS.put(".", TokenType.DOT);
         TOKEN_CHARS.put(":", TokenType.COLON);
@@ -126,8 +148,15 @@ class TokenChars {
         TOKEN_CHARS.put(",", TokenType.COMMA);
         TOKEN_CHARS.put("\"", TokenType.QUOTATION);
         TOKEN_CHARS.put("\n", TokenType.NEWLINE);
+
+        for (Map.Entry<String, TokenType> entry : TOKEN_CHARS.entrySet()) {
+            ASCII_TOKEN_CHARS[entry.getKey().charAt(0)] = entry.getValue();
+        }
     }
     public static TokenType getTokenType(String chr) {
         return TOKEN_CHARS.get(chr);
     }
+    public static TokenType getTokenType(char chr) {
+        return chr < ASCII_TOKEN_CHARS.length ? ASCII_TOKEN_CHARS[chr] : null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+/* =================================================================== //
+     STACK MACHINE FOR Chunks PRODUCED BY THE Compiler. +, -, *, < AND
+     > ON TWO INTS ARE HANDLED INLINE; EVERYTHING ELSE, FLOATS INCLUDED,
+     DEFERS TO THE SAME Interpreter METHODS THE TREE-WALKER USES, SO
+     RESULTS ARE IDENTICAL.
+// =================================================================== */
+public class VM {
+    private final Interpreter interpreter = new Interpreter();
+
+    public RuntimeVal run(Chunk chunk, Environment env) {
+        final int[] code = chunk.code;
+        final RuntimeVal[] constants = chunk.constants;
+        final RuntimeVal[] stack = new RuntimeVal[Math.max(chunk.maxStack, 1)];
+        int sp = 0; //Next free stack slot
+        int ip = 0;
+
+        while (true) {
+            int op = code[ip++];
+            switch (op) {
+                case Opcodes.CONST:
+                    stack[sp++] = constants[code[ip++]];
+                    break;
+                case Opcodes.LOAD:
+                    stack[sp++] = env.lookupVar(code[ip], code[ip + 1]);
+                    ip += 2;
+                    break;
+                case Opcodes.STORE:
+                    env.assignVar(code[ip], code[ip + 1], stack[sp - 1]);
+                    ip += 2;
+                    break;
+                case Opcodes.DEFINE:
+                    env.declareVar(code[ip++], stack[sp - 1]);
+                    break;
+                case Opcodes.POP:
+                    stack[--sp] = null;
+                    break;
+                case Opcodes.ADD:
+                case Opcodes.SUBTRACT:
+                case Opcodes.MULTIPLY:
+                case Opcodes.LESSER:
+                case Opcodes.GREATER: {
+                    RuntimeVal RHS = stack[--sp];
+                    RuntimeVal LHS = stack[sp - 1];
+                    stack[sp - 1] = (LHS instanceof IntVal && RHS instanceof IntVal)
+                            ? intArithmetic(op, ((IntVal) LHS).getValue(), ((IntVal) RHS).getValue())
+                            : interpreter.applyBinary(LHS, RHS, Opcodes.OPERATORS[op]);
+                    break;
+                }
+                case Opcodes.DIVIDE:
+                case Opcodes.MODULO:
+                case Opcodes.POWER:
+                case Opcodes.EQUALS:
+                case Opcodes.NOTEQUALS: {
+                    RuntimeVal RHS = stack[--sp];
+                    stack[sp - 1] = interpreter.applyBinary(stack[sp - 1], RHS, Opcodes.OPERATORS[op]);
+                    break;
+                }
+                case Opcodes.NEGATE:
+                case Opcodes.NOT:
+                    stack[sp - 1] = interpreter.applyUnary(stack[sp - 1], Opcodes.OPERATORS[op]);
+                    break;
+                case Opcodes.JUMP_IF_FALSE:
+                    if (!interpreter.expectBool(stack[sp - 1], Operator.AND)) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                case Opcodes.JUMP_IF_TRUE:
+                    if (interpreter.expectBool(stack[sp - 1], Operator.OR)) {
+                        ip = code[ip];
+                    } else {
+                        ip++;
+                    }
+                    break;
+                case Opcodes.CHECK_BOOL:
+                    interpreter.expectBool(stack[sp - 1], code[ip++] == 1 ? Operator.AND : Operator.OR);
+                    break;
+                case Opcodes.ARRAY: {
+                    int count = code[ip++];
+                    ArrayVal array = new ArrayVal();
+                    for (int i = sp - count; i < sp; i++) {
+                        array.add(stack[i]);
+                        stack[i] = null;
+                    }
+                    sp -= count;
+                    stack[sp++] = array;
+                    break;
+                }
+                case Opcodes.FREEZE:
+                    stack[sp - 1] = PersistentStorage.freeze(stack[sp - 1]);
+                    break;
+                case Opcodes.RETURN:
+                    return stack[sp - 1];
+                default:
+                    System.err.println("VM Error: Unknown opcode " + op + " at " + (ip - 1));
+                    System.exit(1);
+            }
+        }
+    }
+
+    private static RuntimeVal intArithmetic(int op, int LHS, int RHS) {
+        switch (op) {
+            case Opcodes.ADD:
+                return IntVal.of(LHS + RHS);
+            case Opcodes.SUBTRACT:
+                return IntVal.of(LHS - RHS);
+            case Opcodes.MULTIPLY:
+                return IntVal.of(LHS * RHS);
+            case Opcodes.LESSER:
+                return BoolVal.of(LHS < RHS);
+            default:
+                return BoolVal.of(LHS > RHS);
+        }
+    }
+}
@@ -1,6 +1,6 @@
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 enum ValueType {
@@ -10,6 +10,12 @@ enum ValueType {
     BOOL,
     OBJ,
     ARRAY,
+    STRING,
+    FUNCTION,
+    SEQUENCE,
+    POINT,
+    VECTOR,
+    KDTREE,
 }
 
 abstract class RuntimeVal {
@@ -25,19 +31,53 @@ abstract class RuntimeVal {
 }
 
 class ArrayVal extends RuntimeVal {
-    ArrayList<RuntimeVal> values;
+    //Homogeneous int or float arrays are stored unboxed; see ArrayStorage.java
+    private ArrayStorage storage;
 
-    public ArrayVal(ArrayList<RuntimeVal> values) {
+    public ArrayVal() {
+        this(ArrayStorage.EMPTY);
+    }
+
+    public ArrayVal(ArrayStorage storage) {
         super(ValueType.ARRAY);
-        this.values = values;
+        this.storage = storage;
+    }
+
+    //An array of these values, in the narrowest storage that holds them all
+    public static ArrayVal of(List<RuntimeVal> values) {
+        ArrayVal array = new ArrayVal();
+        for (RuntimeVal value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+
+    public int size() {
+        return storage.size();
+    }
+
+    public RuntimeVal get(int index) {
+        return storage.get(index);
+    }
+
+    public void set(int index, RuntimeVal value) {
+        storage = storage.set(index, value);
+    }
+
+    public void add(RuntimeVal value) {
+        storage = storage.add(value);
+    }
+
+    ArrayStorage storage() {
+        return storage;
     }
 
     @Override
     public String toString() {
         StringBuilder arrToString = new StringBuilder();
-        for (int i = 0; i < values.size(); i++) {
-            arrToString.append(values.get(i));
-            if (i < values.size() - 1) {
+        for (int i = 0; i < this.size(); i++) {
+            arrToString.append(this.get(i));
+            if (i < this.size() - 1) {
                 arrToString.append(", ");
             }
         }
@@ -45,35 +85,127 @@ class ArrayVal extends RuntimeVal {
     }
 }
 
+//Properties live in a RuntimeVal[] laid out by a Shape shared with similar objects; see Shapes.java
 class ObjectVal extends RuntimeVal {
-    Map<String, RuntimeVal> values;
+    private Shape shape;
+    private RuntimeVal[] values;
 
-    public ObjectVal(Map<String, RuntimeVal> values) {
+    public ObjectVal(Shape shape, RuntimeVal[] values) {
         super(ValueType.OBJ);
+        this.shape = shape;
         this.values = values;
     }
 
+    public Shape getShape() {
+        return shape;
+    }
+
+    public RuntimeVal getSlot(int slot) {
+        return values[slot];
+    }
+
+    public void setSlot(int slot, RuntimeVal value) {
+        values[slot] = value;
+    }
+
+    //Value of the property, or null if the object does not have it
+    public RuntimeVal get(String key) {
+        int slot = shape.slotOf(key);
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    public void put(String key, RuntimeVal value) {
+        int slot = shape.slotOf(key);
+        if (slot < 0) {
+            shape = shape.with(key);
+            slot = shape.size() - 1;
+            if (slot == values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, 4));
+            }
+        }
+        values[slot] = value;
+    }
+
     @Override
     public String toString() {
         StringBuilder objToString = new StringBuilder();
         objToString.append("{");
-        int i = 0;
-        for (Map.Entry<String, RuntimeVal> entry : values.entrySet()) {
-            objToString.append(entry.getKey()).append(": ").append(entry.getValue().toString());
-            if (i < values.size() - 1) {
+        for (int slot = 0; slot < shape.size(); slot++) {
+            objToString.append(shape.key(slot)).append(": ").append(values[slot].toString());
+            if (slot < shape.size() - 1) {
                 objToString.append(", ");
             }
-            i++;
         }
         objToString.append("}");
         return objToString.toString();
     }
 }
 
+//A function implemented in Java; see Builtins.java
+class NativeFnVal extends RuntimeVal {
+    private final String name;
+    private final NativeFn function;
+
+    public NativeFnVal(String name, NativeFn function) {
+        super(ValueType.FUNCTION);
+        this.name = name;
+        this.function = function;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public RuntimeVal call(Interpreter interpreter, RuntimeVal[] args) {
+        return function.call(interpreter, args);
+    }
+
+    @Override
+    public String toString() {
+        return "<builtin " + name + ">";
+    }
+}
 
+interface NativeFn {
+    //interpreter is the one making the call; functions passed in must be called through it
+    RuntimeVal call(Interpreter interpreter, RuntimeVal[] args);
+}
 
+//A func expression with the frame it was evaluated in, which its calls' frames extend
+class FunctionVal extends RuntimeVal {
+    private final FuncExpr function;
+    private final Environment closure;
+
+    public FunctionVal(FuncExpr function, Environment closure) {
+        super(ValueType.FUNCTION);
+        this.function = function;
+        this.closure = closure;
+    }
+
+    public FuncExpr getFunction() {
+        return function;
+    }
+
+    public Environment getClosure() {
+        return closure;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("<func(");
+        List<Identifier> parameters = function.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            text.append(i > 0 ? ", " : "").append(parameters.get(i).getSymbol());
+        }
+        return text.append(")>").toString();
+    }
+}
+
+//Values below are immutable, so every occurrence of the same value can share one instance
 class NullVal extends RuntimeVal {
-    public NullVal() {
+    static final NullVal NULL = new NullVal();
+
+    private NullVal() {
         super(ValueType.NULL);
     }
 
@@ -84,17 +216,20 @@ class NullVal extends RuntimeVal {
 }
 
 class BoolVal extends RuntimeVal {
-    //Value will default to false
-    private boolean value = false;
+    static final BoolVal TRUE = new BoolVal(true);
+    static final BoolVal FALSE = new BoolVal(false);
 
-    public BoolVal() {
-        super(ValueType.BOOL);
-    }
-    public BoolVal(boolean value) {
+    private final boolean value;
+
+    private BoolVal(boolean value) {
         super(ValueType.BOOL);
         this.value = value;
     }
 
+    public static BoolVal of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
     public boolean getValue() {
         return value;
     }
@@ -107,6 +242,16 @@ class BoolVal extends RuntimeVal {
 
 
 class IntVal extends RuntimeVal {
+    //Ints in [CACHE_LOW, CACHE_HIGH] are shared; raise the bound with -Dtwofive.intcache.high=N
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = Math.max(127, Integer.getInteger("twofive.intcache.high", 1023));
+    private static final IntVal[] CACHE = new IntVal[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IntVal(CACHE_LOW + i);
+        }
+    }
+
     private final int value;
 
     public IntVal(int value) {
@@ -114,6 +259,13 @@ class IntVal extends RuntimeVal {
         this.value = value;
     }
 
+    public static IntVal of(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new IntVal(value);
+    }
+
     public int getValue() {
         return value;
     }
@@ -130,7 +282,7 @@ class IntVal extends RuntimeVal {
 }
 
 class FloatVal extends RuntimeVal {
-    private float value;
+    private final float value;
 
     public FloatVal(float value) {
         super(ValueType.FLOAT);
@@ -150,4 +302,22 @@ class FloatVal extends RuntimeVal {
     public String toString() {
         return "" + value;
     }
-}
\ No newline at end of file
+}
+
+class StringVal extends RuntimeVal {
+    private final String value;
+
+    public StringVal(String value) {
+        super(ValueType.STRING);
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
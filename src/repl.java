@@ -1,11 +1,86 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 public class repl {
+    /*
+     * Execution engines, picked with --engine=NAME:
+     *  tree  - the tree-walking Interpreter (default)
+     *  vm    - compile to bytecode and run it on the VM
+     *  tagged - run the bytecode with ints and floats kept unboxed
+     *  jit   - compile to a JVM hidden class, so HotSpot optimizes the program itself
+     *  check - run every program on all engines and fail loudly if their results differ; reports
+     *          on stderr which engines ran it and which fell back to the interpreter unchecked
+     */
+    private static final List<String> ENGINES = List.of("tree", "vm", "tagged", "jit", "check");
+    private static String engine = "tree";
+    private static boolean optimize = true;
+    //Print the tree before and after the Optimizer, and how many nodes it removed
+    private static boolean dumpAst = false;
+    //A script is a whole program; REPL lines may read each other's globals
+    private static boolean wholeProgram = false;
+
+    private static final Parser parser = new Parser();
+    private static final Resolver resolver = new Resolver();
+    private static final Optimizer optimizer = new Optimizer();
+    private static final Interpreter interpreter = new Interpreter();
+    private static final Compiler compiler = new Compiler();
+    private static final VM vm = new VM();
+    private static final TaggedVM taggedVm = new TaggedVM();
+    private static final JitCompiler jit = new JitCompiler();
+    //Holds the builtins, which are constants, so every engine's global frame can share it
+    private static final Environment builtins = new Environment();
+    private static final Environment env = new Environment(builtins);
+    //Extra global frames for --engine=check, so no engine sees another's side effects
+    private static final Environment checkEnv = new Environment(builtins);
+    private static final Environment jitCheckEnv = new Environment(builtins);
+    private static final Environment taggedCheckEnv = new Environment(builtins);
+    //Off-heap arrays allocated by the program; a script's are freed when it ends
+    private static final OffHeapArena arena = new OffHeapArena();
+    static {
+        new Builtins(arena).install(resolver, builtins);
+    }
+
     public static void main(String[] args) {
+        String script = null;
+        boolean useCache = true;
+        for (String arg : args) {
+            if (arg.equals("--no-cache")) {
+                useCache = false;
+            } else if (arg.equals("--no-optimize")) {
+                optimize = false;
+            } else if (arg.equals("--dump-ast")) {
+                dumpAst = true;
+            } else if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+                if (!ENGINES.contains(engine)) {
+                    System.err.println("Unknown engine " + engine + "; expected one of " + String.join(", ", ENGINES));
+                    System.exit(1);
+                }
+            } else {
+                script = arg;
+            }
+        }
+
+        //Run a script file instead of the interactive prompt
+        if (script != null) {
+            wholeProgram = true;
+            try {
+                Program program = useCache
+                        ? new AstCache().load(Path.of(script), parser)
+                        : parser.produceAST(Path.of(script));
+                System.out.println(run(program));
+                arena.close();
+            } catch (IOException e) {
+                System.err.println("Unable to read script " + script + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
         Scanner kbd = new Scanner(System.in);
-        Parser parser = new Parser();
-        Interpreter interpreter = new Interpreter();
-        Environment env = new Environment();
         System.out.println("25 Repl v0.1");
         System.out.println("Input \"EXIT\" to stop the REPL.");
 
@@ -16,8 +91,71 @@ public class repl {
                 System.exit(1);
             }
             Program program = parser.produceAST(input);
-            RuntimeVal result = interpreter.evaluate(program, env);
+            RuntimeVal result = run(program);
             System.out.println(result);
         }
     }
+
+    private static RuntimeVal run(Program program) {
+        resolver.resolve(program);
+        if (optimize) {
+            Program optimized = optimizer.optimize(program, wholeProgram);
+            if (dumpAst) {
+                System.out.println("Before optimization:\n" + program);
+                System.out.println("After optimization:\n" + optimized);
+                System.out.println("Optimizer removed " + optimizer.removedNodes() + " of "
+                        + Optimizer.countNodes(program) + " nodes");
+            }
+            program = optimized;
+        }
+        switch (engine) {
+            case "vm": {
+                Chunk chunk = compiler.compile(program);
+                //Programs using nodes the compiler does not support yet run on the interpreter
+                return chunk != null ? vm.run(chunk, env) : interpreter.evaluate(program, env);
+            }
+            case "tagged": {
+                Chunk chunk = compiler.compile(program);
+                return chunk != null ? taggedVm.run(chunk, env) : interpreter.evaluate(program, env);
+            }
+            case "jit": {
+                CompiledProgram compiled = jit.compile(program, env);
+                //Programs the JIT cannot type statically run on the interpreter
+                return compiled != null ? compiled.run(env) : interpreter.evaluate(program, env);
+            }
+            case "check": {
+                RuntimeVal expected = interpreter.evaluate(program, env);
+                //An engine that cannot take the program falls back to the interpreter, which proves nothing
+                List<String> checked = new ArrayList<>();
+                List<String> fellBack = new ArrayList<>();
+                Chunk chunk = compiler.compile(program);
+                if (chunk != null) {
+                    checkResult(expected, vm.run(chunk, checkEnv), "vm");
+                    checkResult(expected, taggedVm.run(chunk, taggedCheckEnv), "tagged");
+                    checked.addAll(List.of("vm", "tagged"));
+                } else {
+                    fellBack.addAll(List.of("vm", "tagged"));
+                }
+                CompiledProgram compiled = jit.compile(program, jitCheckEnv);
+                if (compiled != null) {
+                    checkResult(expected, compiled.run(jitCheckEnv), "jit");
+                    checked.add("jit");
+                } else {
+                    fellBack.add("jit");
+                }
+                System.err.println("Checked against " + (checked.isEmpty() ? "no engine" : String.join(", ", checked))
+                        + (fellBack.isEmpty() ? "" : "; not checked, fell back to the interpreter: " + String.join(", ", fellBack)));
+                return expected;
+            }
+            default:
+                return interpreter.evaluate(program, env);
+        }
+    }
+
+    private static void checkResult(RuntimeVal expected, RuntimeVal actual, String engine) {
+        if (!String.valueOf(expected).equals(String.valueOf(actual))) {
+            System.err.println("Engine mismatch: interpreter gave " + expected + ", " + engine + " gave " + actual);
+            System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+#!/bin/sh
+# Conformance suite. Every tests/NAME.25 is run with --engine=check, which runs it on the
+# tree-walking interpreter, the VM, the tagged VM and the JIT and stops if their results
+# differ, once optimized and once with --no-optimize. What it prints, errors included, must
+# match tests/NAME.expected, including the line naming which engines really ran the program
+# and which fell back to the interpreter; engines*.25 stay within what every engine compiles.
+# Parallel builtins run on 4 workers and split small arrays, so their tasks really run
+# concurrently. Direct memory is capped at 64 MB with explicit GC off,
+# so off-heap arrays a program frees must really be released, not left to the collector.
+#
+#   tests/run.sh          compile src/ and run every program
+#   tests/run.sh NAME...  run only the named programs
+#
+# To record a new program's expected output, check it by hand, then:
+#   java -cp bin repl --engine=check --no-cache tests/NAME.25 > tests/NAME.expected 2>&1
+cd "$(dirname "$0")/.." || exit 1
+bin=$(mktemp -d)
+trap 'rm -rf "$bin"' EXIT
+javac --add-modules jdk.incubator.vector -d "$bin" src/*.java || exit 1
+
+if [ $# -eq 0 ]; then
+    set -- $(ls tests/*.25 | sed 's|tests/||; s|\.25$||')
+fi
+failed=0
+for name in "$@"; do
+    for optimize in "" --no-optimize; do
+        actual=$(java -XX:MaxDirectMemorySize=64m -XX:+DisableExplicitGC -Dtwofive.parallelism=4 -Dtwofive.parallel.threshold=64 -Dtwofive.parallel.grain=16 \
+            -cp "$bin" repl --engine=check --no-cache $optimize "tests/$name.25" 2>&1)
+        if [ "$actual" = "$(cat "tests/$name.expected")" ]; then
+            echo "ok    $name $optimize"
+        else
+            echo "FAIL  $name $optimize"
+            echo "$actual" | diff "tests/$name.expected" - | sed 's/^/      /'
+            failed=$((failed + 1))
+        fi
+    done
+done
+[ $failed -eq 0 ] || { echo "$failed failed"; exit 1; }
+echo "all passed"